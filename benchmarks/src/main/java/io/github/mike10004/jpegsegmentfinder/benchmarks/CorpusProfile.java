@@ -0,0 +1,94 @@
+package io.github.mike10004.jpegsegmentfinder.benchmarks;
+
+/**
+ * Shapes of synthetic JPEG files used as benchmark inputs.
+ */
+public enum CorpusProfile {
+
+    /**
+     * No APPn segments; tables, frame and scan headers only.
+     */
+    MINIMAL {
+        @Override
+        public SyntheticJpeg generator(long seed) {
+            return new SyntheticJpeg(seed).appSegments(0);
+        }
+    },
+
+    /**
+     * A few APPn segments of moderate size, as written by most cameras.
+     */
+    TYPICAL {
+        @Override
+        public SyntheticJpeg generator(long seed) {
+            return new SyntheticJpeg(seed).appSegments(4).appSegmentSize(4096).entropyDataSize(512 * 1024);
+        }
+    },
+
+    /**
+     * Many small APPn segments.
+     */
+    MANY_SEGMENTS {
+        @Override
+        public SyntheticJpeg generator(long seed) {
+            return new SyntheticJpeg(seed).appSegments(128).appSegmentSize(128);
+        }
+    },
+
+    /**
+     * A few APPn segments close to the maximum segment length.
+     */
+    LARGE_SEGMENTS {
+        @Override
+        public SyntheticJpeg generator(long seed) {
+            return new SyntheticJpeg(seed).appSegments(8).appSegmentSize(60000);
+        }
+    },
+
+    /**
+     * Fill bytes before every marker.
+     */
+    PADDED {
+        @Override
+        public SyntheticJpeg generator(long seed) {
+            return new SyntheticJpeg(seed).appSegments(4).appSegmentSize(4096).fillBytes(32);
+        }
+    },
+
+    /**
+     * A large file, to show that scan cost does not depend on the amount of image data.
+     */
+    LARGE_FILE {
+        @Override
+        public SyntheticJpeg generator(long seed) {
+            return new SyntheticJpeg(seed).appSegments(4).appSegmentSize(4096).entropyDataSize(16 * 1024 * 1024);
+        }
+    },
+
+    /**
+     * A file cut off inside the entropy-coded data, as with an interrupted download.
+     */
+    TRUNCATED {
+        @Override
+        public SyntheticJpeg generator(long seed) {
+            return new SyntheticJpeg(seed).appSegments(4).appSegmentSize(4096).entropyDataSize(512 * 1024).truncateTo(64 * 1024);
+        }
+    },
+
+    /**
+     * A file cut off inside an APPn segment; scans end with an exception.
+     */
+    TRUNCATED_HEADER {
+        @Override
+        public SyntheticJpeg generator(long seed) {
+            return new SyntheticJpeg(seed).appSegments(4).appSegmentSize(4096).truncateTo(6000);
+        }
+    };
+
+    /**
+     * Returns a generator of files of this shape.
+     * @param seed random seed
+     * @return a generator
+     */
+    public abstract SyntheticJpeg generator(long seed);
+}
@@ -0,0 +1,40 @@
+package io.github.mike10004.jpegsegmentfinder.benchmarks;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that counts the bytes read from the underlying stream.
+ * Skipped bytes are not counted.
+ */
+class CountingInputStream extends FilterInputStream {
+
+    private long bytesRead;
+
+    public CountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            bytesRead++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            bytesRead += n;
+        }
+        return n;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+}
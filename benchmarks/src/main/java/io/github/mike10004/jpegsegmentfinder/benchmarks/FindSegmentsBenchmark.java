@@ -0,0 +1,182 @@
+package io.github.mike10004.jpegsegmentfinder.benchmarks;
+
+import io.github.mike10004.jpegsegmentfinder.JpegSegmentFinder;
+import io.github.mike10004.jpegsegmentfinder.MarkerSet;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of segment scanning over each kind of input the finder accepts.
+ * Each benchmark scans a synthetic file for all APPn segments.
+ *
+ * <p>Benchmarks that read through a stream or channel report the number of
+ * bytes read from the underlying file by the last scan as the
+ * {@code bytesReadPerScan} secondary result. Run with {@code -prof gc}
+ * to report allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FindSegmentsBenchmark {
+
+    private static final long SEED = 0x4A504547L;
+
+    @Param({"MINIMAL", "TYPICAL", "MANY_SEGMENTS", "LARGE_SEGMENTS", "PADDED", "LARGE_FILE", "TRUNCATED", "TRUNCATED_HEADER"})
+    public CorpusProfile profile;
+
+    private final JpegSegmentFinder finder = new JpegSegmentFinder();
+    private final MarkerSet markers = MarkerSet.allAppn();
+    private byte[] jpeg;
+    private Path jpegFile;
+    private FileChannel mappedChannel;
+    private ByteBuffer mapped;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        jpeg = profile.generator(SEED).generate();
+        jpegFile = Files.createTempFile("synthetic", ".jpg");
+        Files.write(jpegFile, jpeg);
+        mappedChannel = FileChannel.open(jpegFile);
+        mapped = mappedChannel.map(FileChannel.MapMode.READ_ONLY, 0, mappedChannel.size());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mapped = null;
+        mappedChannel.close();
+        Files.deleteIfExists(jpegFile);
+    }
+
+    /**
+     * Secondary results reported alongside throughput.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class IoCounters {
+
+        /**
+         * Number of bytes read from the underlying file by the last scan.
+         */
+        public long bytesReadPerScan;
+    }
+
+    @Benchmark
+    public void fileInputStream(IoCounters counters, Blackhole bh) throws IOException {
+        try (CountingInputStream in = new CountingInputStream(new FileInputStream(jpegFile.toFile()))) {
+            scan(in, bh);
+            counters.bytesReadPerScan = in.getBytesRead();
+        }
+    }
+
+    @Benchmark
+    public void bufferedInputStream(IoCounters counters, Blackhole bh) throws IOException {
+        try (CountingInputStream in = new CountingInputStream(new FileInputStream(jpegFile.toFile()))) {
+            scan(new BufferedInputStream(in), bh);
+            counters.bytesReadPerScan = in.getBytesRead();
+        }
+    }
+
+    @Benchmark
+    public void byteArrayInputStream(IoCounters counters, Blackhole bh) throws IOException {
+        CountingInputStream in = new CountingInputStream(new ByteArrayInputStream(jpeg));
+        scan(in, bh);
+        counters.bytesReadPerScan = in.getBytesRead();
+    }
+
+    @Benchmark
+    public void fileChannel(IoCounters counters, Blackhole bh) throws IOException {
+        try (CountingChannel channel = new CountingChannel(FileChannel.open(jpegFile))) {
+            try {
+                bh.consume(finder.findSegments(channel, markers));
+            } catch (IOException e) {
+                bh.consume(e);
+            }
+            counters.bytesReadPerScan = channel.getBytesRead();
+        }
+    }
+
+    @Benchmark
+    public void path(Blackhole bh) {
+        try {
+            bh.consume(finder.findSegments(jpegFile, markers));
+        } catch (IOException e) {
+            bh.consume(e);
+        }
+    }
+
+    @Benchmark
+    public void heapByteBuffer(Blackhole bh) {
+        try {
+            bh.consume(finder.findSegments(ByteBuffer.wrap(jpeg), markers));
+        } catch (IOException e) {
+            bh.consume(e);
+        }
+    }
+
+    @Benchmark
+    public void mappedByteBuffer(Blackhole bh) {
+        try {
+            bh.consume(finder.findSegments(mapped, markers));
+        } catch (IOException e) {
+            bh.consume(e);
+        }
+    }
+
+    @Benchmark
+    public void visitMappedByteBuffer(Blackhole bh) {
+        try {
+            finder.visitSegments(mapped, markers, (marker, headerOffset, contentOffset, contentLength) -> {
+                bh.consume(contentOffset);
+                return true;
+            });
+        } catch (IOException e) {
+            bh.consume(e);
+        }
+    }
+
+    @Benchmark
+    public void async(Blackhole bh) throws InterruptedException {
+        try {
+            bh.consume(finder.findSegmentsAsync(jpegFile, markers).get());
+        } catch (ExecutionException e) {
+            bh.consume(e);
+        }
+    }
+
+    private void scan(InputStream in, Blackhole bh) {
+        try {
+            bh.consume(finder.findSegments(in, markers));
+        } catch (IOException e) {
+            // expected for truncated inputs
+            bh.consume(e);
+        }
+    }
+}
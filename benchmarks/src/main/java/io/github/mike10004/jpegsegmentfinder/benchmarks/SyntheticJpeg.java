@@ -0,0 +1,135 @@
+package io.github.mike10004.jpegsegmentfinder.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Deterministic generator of synthetic JPEG files. The files have a realistic
+ * header structure (APPn segments, quantization and Huffman tables, a frame
+ * header and a scan header) followed by pseudo-random entropy-coded data. The
+ * data is not decodable as an image, but it is valid as far as segment
+ * scanning is concerned. The same parameters and seed always produce the
+ * same bytes.
+ */
+public class SyntheticJpeg {
+
+    private final long seed;
+    private int appSegmentCount = 2;
+    private int appSegmentSize = 1024;
+    private int fillBytes;
+    private int entropyDataSize = 64 * 1024;
+    private int truncatedLength = -1;
+
+    public SyntheticJpeg(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the number of APPn segments. Markers cycle through APP0 to APP15.
+     * @param appSegmentCount number of segments
+     * @return this instance
+     */
+    public SyntheticJpeg appSegments(int appSegmentCount) {
+        this.appSegmentCount = appSegmentCount;
+        return this;
+    }
+
+    /**
+     * Sets the mean content length of APPn segments. Actual lengths vary
+     * pseudo-randomly by up to half the mean in either direction.
+     * @param appSegmentSize mean content length; at most 65533
+     * @return this instance
+     */
+    public SyntheticJpeg appSegmentSize(int appSegmentSize) {
+        this.appSegmentSize = appSegmentSize;
+        return this;
+    }
+
+    /**
+     * Sets the number of 0xFF fill bytes that precede each marker.
+     * @param fillBytes number of fill bytes
+     * @return this instance
+     */
+    public SyntheticJpeg fillBytes(int fillBytes) {
+        this.fillBytes = fillBytes;
+        return this;
+    }
+
+    /**
+     * Sets the length of the entropy-coded data following the scan header.
+     * @param entropyDataSize length in bytes
+     * @return this instance
+     */
+    public SyntheticJpeg entropyDataSize(int entropyDataSize) {
+        this.entropyDataSize = entropyDataSize;
+        return this;
+    }
+
+    /**
+     * Sets the length at which the generated file is cut off.
+     * @param truncatedLength length in bytes, or -1 for no truncation
+     * @return this instance
+     */
+    public SyntheticJpeg truncateTo(int truncatedLength) {
+        this.truncatedLength = truncatedLength;
+        return this;
+    }
+
+    /**
+     * Generates the file.
+     * @return the file bytes
+     */
+    public byte[] generate() {
+        Random random = new Random(seed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        for (int i = 0; i < appSegmentCount; i++) {
+            int variation = appSegmentSize / 2;
+            int length = appSegmentSize - variation + (variation == 0 ? 0 : random.nextInt(2 * variation + 1));
+            writeSegment(out, 0xE0 + (i % 16), randomContent(random, Math.min(length, 0xFFFF - 2)));
+        }
+        writeSegment(out, 0xDB, randomContent(random, 65));
+        writeSegment(out, 0xC0, new byte[]{8, 0x01, 0x00, 0x01, 0x00, 3, 1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1});
+        writeSegment(out, 0xC4, randomContent(random, 28));
+        writeSegment(out, 0xDA, new byte[]{3, 1, 0x00, 2, 0x11, 3, 0x11, 0, 63, 0});
+        writeEntropyData(out, random, entropyDataSize);
+        out.write(0xFF);
+        out.write(0xD9);
+        byte[] jpeg = out.toByteArray();
+        if (truncatedLength >= 0 && truncatedLength < jpeg.length) {
+            jpeg = Arrays.copyOf(jpeg, truncatedLength);
+        }
+        return jpeg;
+    }
+
+    private void writeSegment(ByteArrayOutputStream out, int marker, byte[] content) {
+        for (int i = 0; i < fillBytes; i++) {
+            out.write(0xFF);
+        }
+        out.write(0xFF);
+        out.write(marker);
+        int length = content.length + 2;
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        out.write(content, 0, content.length);
+    }
+
+    private static byte[] randomContent(Random random, int length) {
+        byte[] content = new byte[length];
+        random.nextBytes(content);
+        return content;
+    }
+
+    private static void writeEntropyData(ByteArrayOutputStream out, Random random, int length) {
+        byte[] data = randomContent(random, length);
+        for (int i = 0; i < data.length; i++) {
+            out.write(data[i]);
+            if (data[i] == (byte) 0xFF) {
+                // stuffed zero byte, as required in entropy-coded data
+                out.write(0x00);
+            }
+        }
+    }
+}
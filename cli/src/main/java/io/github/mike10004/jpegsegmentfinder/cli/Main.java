@@ -0,0 +1,247 @@
+package io.github.mike10004.jpegsegmentfinder.cli;
+
+import io.github.mike10004.jpegsegmentfinder.BatchResult;
+import io.github.mike10004.jpegsegmentfinder.BatchSegmentFinder;
+import io.github.mike10004.jpegsegmentfinder.JpegSegmentFinder;
+import io.github.mike10004.jpegsegmentfinder.MarkerSet;
+import io.github.mike10004.jpegsegmentfinder.ScanListener;
+import io.github.mike10004.jpegsegmentfinder.ScanStatistics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Command-line entry point that scans files in parallel and writes one record
+ * per file to standard output as each file is finished. A summary of the run
+ * is printed to standard error at the end.
+ */
+public class Main {
+
+    static final int EXIT_OK = 0;
+    static final int EXIT_SCAN_ERRORS = 1;
+    static final int EXIT_USAGE = 2;
+
+    private static final String USAGE = "Usage: java -jar jpeg-segment-finder-cli.jar [options] [path|glob|-]...\n" +
+            "\n" +
+            "Finds segments in JPEG files and writes one record per file.\n" +
+            "Directories are scanned recursively; - reads pathnames from standard input,\n" +
+            "one per line, which is also the default if no paths are given.\n" +
+            "\n" +
+            "Options:\n" +
+            "  --threads N        number of files to scan at once (default: available processors)\n" +
+            "  --format FORMAT    ndjson or csv (default: ndjson)\n" +
+            "  --markers LIST     comma-separated hex marker bytes, or appn, sofn, tables, all\n" +
+            "                     (default: appn)\n" +
+            "  --no-summary       do not print the summary to standard error\n" +
+            "  --help             print this message\n";
+
+    private final InputStream stdin;
+    private final PrintStream stdout;
+    private final PrintStream stderr;
+
+    Main(InputStream stdin, PrintStream stdout, PrintStream stderr) {
+        this.stdin = stdin;
+        this.stdout = stdout;
+        this.stderr = stderr;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(new Main(System.in, System.out, System.err).run(args));
+    }
+
+    int run(String[] args) throws InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String format = "ndjson";
+        MarkerSet markers = MarkerSet.allAppn();
+        boolean summary = true;
+        List<String> paths = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--threads":
+                        threads = Integer.parseInt(value(args, ++i, arg));
+                        if (threads <= 0) {
+                            throw new IllegalArgumentException("thread count must be positive");
+                        }
+                        break;
+                    case "--format":
+                        format = value(args, ++i, arg);
+                        break;
+                    case "--markers":
+                        markers = parseMarkers(value(args, ++i, arg));
+                        break;
+                    case "--no-summary":
+                        summary = false;
+                        break;
+                    case "--help":
+                    case "-h":
+                        stdout.print(USAGE);
+                        return EXIT_OK;
+                    default:
+                        if (arg.startsWith("--")) {
+                            throw new IllegalArgumentException("unrecognized option: " + arg);
+                        }
+                        paths.add(arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            stderr.println(e.getMessage());
+            stderr.print(USAGE);
+            return EXIT_USAGE;
+        }
+        if (paths.isEmpty()) {
+            paths.add("-");
+        }
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(stdout, StandardCharsets.UTF_8));
+        RecordWriter writer;
+        try {
+            writer = RecordWriter.forFormat(format, out);
+        } catch (IllegalArgumentException e) {
+            stderr.println(e.getMessage());
+            return EXIT_USAGE;
+        }
+        Summary stats = new Summary();
+        JpegSegmentFinder finder = JpegSegmentFinder.builder()
+                .listener(stats)
+                .bufferPoolCapacity(threads)
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "scanner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long startTime = System.nanoTime();
+        BufferedReader input = new BufferedReader(new InputStreamReader(stdin, StandardCharsets.UTF_8));
+        PathSource.ErrorSink errorSink = (pathname, error) -> {
+            stats.recordFailure();
+            writer.writeError(pathname, error);
+        };
+        try (PathSource source = new PathSource(paths, input, errorSink);
+             Stream<Path> files = StreamSupport.stream(Spliterators.spliteratorUnknownSize(source, Spliterator.ORDERED), false)) {
+            writer.begin();
+            new BatchSegmentFinder(finder, executor, 2 * threads).findSegments(files, markers, result -> {
+                stats.record(result);
+                writer.write(result);
+            });
+        } finally {
+            executor.shutdown();
+            if (summary) {
+                stats.print(stderr, System.nanoTime() - startTime);
+            }
+        }
+        if (writer.error() != null) {
+            stderr.println("error writing output: " + writer.error().getMessage());
+            return EXIT_SCAN_ERRORS;
+        }
+        return stats.errors.sum() == 0 ? EXIT_OK : EXIT_SCAN_ERRORS;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("option requires a value: " + option);
+        }
+        return args[index];
+    }
+
+    static MarkerSet parseMarkers(String list) {
+        MarkerSet markers = MarkerSet.none();
+        for (String token : list.split(",")) {
+            switch (token.trim().toLowerCase()) {
+                case "appn":
+                    markers = markers.union(MarkerSet.allAppn());
+                    break;
+                case "sofn":
+                    markers = markers.union(MarkerSet.allSofn());
+                    break;
+                case "tables":
+                    markers = markers.union(MarkerSet.tables());
+                    break;
+                case "all":
+                    markers = markers.union(MarkerSet.all());
+                    break;
+                default:
+                    String hex = token.trim();
+                    if (hex.startsWith("0x") || hex.startsWith("0X")) {
+                        hex = hex.substring(2);
+                    }
+                    int value;
+                    try {
+                        value = Integer.parseInt(hex, 16);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("invalid marker: " + token);
+                    }
+                    if (value < 0 || value > 0xFF) {
+                        throw new IllegalArgumentException("invalid marker: " + token);
+                    }
+                    markers = markers.union(MarkerSet.of((byte) value));
+            }
+        }
+        return markers;
+    }
+
+    /**
+     * Accumulator of run statistics, updated concurrently by scanning threads.
+     */
+    static class Summary implements ScanListener {
+
+        final LongAdder files = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder segments = new LongAdder();
+        final LongAdder bytesRead = new LongAdder();
+        final LongAdder bytesSkipped = new LongAdder();
+
+        @Override
+        public void scanCompleted(ScanStatistics statistics) {
+            add(statistics);
+        }
+
+        @Override
+        public void scanFailed(ScanStatistics statistics, Exception exception) {
+            add(statistics);
+        }
+
+        private void add(ScanStatistics statistics) {
+            bytesRead.add(statistics.bytesRead);
+            bytesSkipped.add(statistics.bytesSkipped);
+        }
+
+        void record(BatchResult result) {
+            if (result.isSuccess()) {
+                files.increment();
+                segments.add(result.getSegments().size());
+            } else {
+                recordFailure();
+            }
+        }
+
+        void recordFailure() {
+            files.increment();
+            errors.increment();
+        }
+
+        void print(PrintStream out, long elapsedNanos) {
+            double seconds = Math.max(elapsedNanos, 1) / 1e9;
+            long fileCount = files.sum();
+            long read = bytesRead.sum();
+            out.format("files: %d, errors: %d, segments: %d%n", fileCount, errors.sum(), segments.sum());
+            out.format("bytes read: %d, bytes skipped: %d%n", read, bytesSkipped.sum());
+            out.format("elapsed: %.3f s, %.1f files/s, %.2f MB/s read%n", seconds, fileCount / seconds, read / seconds / (1024 * 1024));
+        }
+    }
+}
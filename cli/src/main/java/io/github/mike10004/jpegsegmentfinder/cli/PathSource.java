@@ -0,0 +1,314 @@
+package io.github.mike10004.jpegsegmentfinder.cli;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Iterator over the files named by command-line arguments. An argument may be
+ * a file, a directory, which is walked recursively, a glob pattern, or
+ * {@code -}, which stands for a list of pathnames read from standard input,
+ * one per line. Arguments are expanded one at a time as the iterator
+ * advances, so memory use does not depend on the number of files.
+ *
+ * <p>A pathname that is not valid, or a directory that cannot be read, is
+ * reported to an error sink and skipped, and expansion continues with the
+ * next entry.
+ */
+class PathSource implements Iterator<Path>, AutoCloseable {
+
+    /**
+     * Receiver of errors that occur while expanding arguments.
+     */
+    interface ErrorSink {
+        void pathFailed(String pathname, Exception error);
+    }
+
+    private static final String GLOB_CHARS = "*?[{";
+
+    private final Iterator<String> arguments;
+    private final BufferedReader stdin;
+    private final ErrorSink errorSink;
+    private Expansion current;
+    private Path next;
+
+    /**
+     * Constructs an instance.
+     * @param arguments the arguments
+     * @param stdin reader of standard input, used for the {@code -} argument
+     * @param errorSink receiver of errors for pathnames that are skipped
+     */
+    PathSource(List<String> arguments, BufferedReader stdin, ErrorSink errorSink) {
+        this.arguments = arguments.iterator();
+        this.stdin = Objects.requireNonNull(stdin);
+        this.errorSink = Objects.requireNonNull(errorSink);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null) {
+            if (current != null && (next = current.nextPath()) != null) {
+                break;
+            }
+            closeCurrent();
+            if (!arguments.hasNext()) {
+                return false;
+            }
+            current = expand(arguments.next());
+        }
+        return true;
+    }
+
+    @Override
+    public Path next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Path path = next;
+        next = null;
+        return path;
+    }
+
+    @Override
+    public void close() {
+        closeCurrent();
+    }
+
+    private void closeCurrent() {
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+
+    private Expansion expand(String argument) {
+        if ("-".equals(argument)) {
+            return new LineExpansion();
+        }
+        try {
+            if (isGlob(argument)) {
+                return glob(argument);
+            }
+            Path path = Paths.get(argument);
+            if (Files.isDirectory(path)) {
+                return new TreeExpansion(path, Integer.MAX_VALUE, file -> true);
+            }
+            return new SingleExpansion(path);
+        } catch (InvalidPathException e) {
+            errorSink.pathFailed(argument, e);
+            return null;
+        }
+    }
+
+    static boolean isGlob(String argument) {
+        for (int i = 0; i < GLOB_CHARS.length(); i++) {
+            if (argument.indexOf(GLOB_CHARS.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Expands a glob pattern by walking the directory named by the part of the
+     * pattern that precedes the first component containing a glob character.
+     */
+    private Expansion glob(String pattern) {
+        String separator = FileSystems.getDefault().getSeparator();
+        String normalized = pattern.replace(separator, "/");
+        String[] components = normalized.split("/", -1);
+        int literal = 0;
+        while (literal < components.length - 1 && !isGlob(components[literal])) {
+            literal++;
+        }
+        String base = String.join("/", Arrays.asList(components).subList(0, literal));
+        // the empty path stands for the working directory, and entries below it are relative
+        Path root = Paths.get(base.isEmpty() && normalized.startsWith("/") ? "/" : base);
+        int maxDepth = normalized.contains("**") ? Integer.MAX_VALUE : components.length - literal;
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        if (!Files.isDirectory(root)) {
+            return null;
+        }
+        return new TreeExpansion(root, maxDepth, matcher::matches);
+    }
+
+    /**
+     * Source of the pathnames produced by one argument.
+     */
+    private interface Expansion {
+
+        /**
+         * Gets the next pathname.
+         * @return the next pathname, or null if there are no more
+         */
+        Path nextPath();
+
+        void close();
+    }
+
+    private static class SingleExpansion implements Expansion {
+
+        private Path path;
+
+        SingleExpansion(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public Path nextPath() {
+            Path result = path;
+            path = null;
+            return result;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Expansion of pathnames read from standard input.
+     */
+    private class LineExpansion implements Expansion {
+
+        @Override
+        public Path nextPath() {
+            String line;
+            while ((line = readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    return Paths.get(line);
+                } catch (InvalidPathException e) {
+                    errorSink.pathFailed(line, e);
+                }
+            }
+            return null;
+        }
+
+        private String readLine() {
+            try {
+                return stdin.readLine();
+            } catch (IOException e) {
+                errorSink.pathFailed("-", e);
+                return null;
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Expansion of the regular files in a directory tree, walked depth first.
+     * Symbolic links to regular files are included; symbolic links to
+     * directories are not followed.
+     */
+    private class TreeExpansion implements Expansion {
+
+        private final int maxDepth;
+        private final Predicate<Path> filter;
+        private final Deque<Path> directories;
+        private final Deque<DirectoryStream<Path>> streams;
+        private final Deque<Iterator<Path>> iterators;
+
+        TreeExpansion(Path root, int maxDepth, Predicate<Path> filter) {
+            this.maxDepth = maxDepth;
+            this.filter = filter;
+            directories = new ArrayDeque<>();
+            streams = new ArrayDeque<>();
+            iterators = new ArrayDeque<>();
+            push(root);
+        }
+
+        private void push(Path directory) {
+            try {
+                DirectoryStream<Path> stream = Files.newDirectoryStream(directory);
+                directories.push(directory);
+                streams.push(stream);
+                iterators.push(stream.iterator());
+            } catch (IOException e) {
+                errorSink.pathFailed(describe(directory), e);
+            }
+        }
+
+        private void pop() {
+            directories.pop();
+            iterators.pop();
+            closeQuietly(streams.pop());
+        }
+
+        @Override
+        public Path nextPath() {
+            while (!iterators.isEmpty()) {
+                Path entry;
+                try {
+                    if (!iterators.peek().hasNext()) {
+                        pop();
+                        continue;
+                    }
+                    entry = iterators.peek().next();
+                } catch (DirectoryIteratorException e) {
+                    // the listing failed partway through
+                    errorSink.pathFailed(describe(directories.peek()), e.getCause());
+                    pop();
+                    continue;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    errorSink.pathFailed(entry.toString(), e);
+                    continue;
+                }
+                if (attributes.isDirectory()) {
+                    if (iterators.size() < maxDepth) {
+                        push(entry);
+                    }
+                } else if ((attributes.isRegularFile() || (attributes.isSymbolicLink() && Files.isRegularFile(entry)))
+                        && filter.test(entry)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() {
+            while (!iterators.isEmpty()) {
+                pop();
+            }
+        }
+    }
+
+    private static String describe(Path path) {
+        return path.toString().isEmpty() ? "." : path.toString();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignore) {
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package io.github.mike10004.jpegsegmentfinder.cli;
+
+import io.github.mike10004.jpegsegmentfinder.BatchResult;
+import io.github.mike10004.jpegsegmentfinder.JpegSegmentSpec;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Writer of one output record per scanned file. Records are written and
+ * flushed as results arrive, so output is streamed rather than collected.
+ * If writing fails, the error is retained and later records are discarded,
+ * as with {@link java.io.PrintWriter}. Instances are thread-safe.
+ */
+abstract class RecordWriter {
+
+    private final Writer out;
+    private IOException error;
+
+    protected RecordWriter(Writer out) {
+        this.out = Objects.requireNonNull(out);
+    }
+
+    /**
+     * Creates a writer for the given output format.
+     * @param format format name, {@code ndjson} or {@code csv}
+     * @param out destination
+     * @return a new writer
+     * @throws IllegalArgumentException if the format is not supported
+     */
+    static RecordWriter forFormat(String format, Writer out) {
+        switch (format) {
+            case "ndjson":
+                return new NdjsonWriter(out);
+            case "csv":
+                return new CsvWriter(out);
+            default:
+                throw new IllegalArgumentException("unsupported format: " + format);
+        }
+    }
+
+    /**
+     * Writes anything that precedes the records, such as a header line.
+     */
+    public synchronized void begin() {
+        write(header());
+    }
+
+    /**
+     * Writes the record for one file and flushes the output.
+     * @param result the result of scanning the file
+     */
+    public synchronized void write(BatchResult result) {
+        if (result.isSuccess()) {
+            write(formatSegments(result.file.toString(), result.getSegments()));
+        } else {
+            writeError(result.file.toString(), result.getError());
+        }
+    }
+
+    /**
+     * Writes the record for a pathname that could not be scanned.
+     * @param pathname the pathname, which may not be a valid path
+     * @param error the error
+     */
+    public synchronized void writeError(String pathname, Exception error) {
+        write(formatError(pathname, error));
+    }
+
+    /**
+     * Gets the error that occurred while writing, if any.
+     * @return the first error, or null if all records were written
+     */
+    public synchronized IOException error() {
+        return error;
+    }
+
+    protected String header() {
+        return "";
+    }
+
+    protected abstract String formatSegments(String file, List<JpegSegmentSpec> segments);
+
+    protected abstract String formatError(String file, Exception error);
+
+    private void write(String text) {
+        if (error != null) {
+            return;
+        }
+        try {
+            out.write(text);
+            out.flush();
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    static String marker(JpegSegmentSpec segment) {
+        return String.format("%02X", segment.marker);
+    }
+
+    static String errorMessage(Exception error) {
+        String message = error.getMessage();
+        return message == null ? error.getClass().getName() : error.getClass().getName() + ": " + message;
+    }
+
+    /**
+     * Writer of newline-delimited JSON. Each file is one object with the file
+     * name and either an array of segments or an error message.
+     */
+    static class NdjsonWriter extends RecordWriter {
+
+        NdjsonWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        protected String formatSegments(String file, List<JpegSegmentSpec> segments) {
+            StringBuilder sb = new StringBuilder(128);
+            sb.append("{\"file\":");
+            quote(file, sb);
+            sb.append(",\"segments\":[");
+            boolean first = true;
+            for (JpegSegmentSpec segment : segments) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                sb.append("{\"marker\":\"").append(marker(segment))
+                        .append("\",\"headerOffset\":").append(segment.headerOffset)
+                        .append(",\"contentOffset\":").append(segment.contentOffset)
+                        .append(",\"contentLength\":").append(segment.contentLength)
+                        .append('}');
+            }
+            return sb.append("]}\n").toString();
+        }
+
+        @Override
+        protected String formatError(String file, Exception error) {
+            StringBuilder sb = new StringBuilder(128);
+            sb.append("{\"file\":");
+            quote(file, sb);
+            sb.append(",\"error\":");
+            quote(errorMessage(error), sb);
+            return sb.append("}\n").toString();
+        }
+
+        static void quote(String value, StringBuilder sb) {
+            sb.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':
+                        sb.append("\\\"");
+                        break;
+                    case '\\':
+                        sb.append("\\\\");
+                        break;
+                    case '\n':
+                        sb.append("\\n");
+                        break;
+                    case '\r':
+                        sb.append("\\r");
+                        break;
+                    case '\t':
+                        sb.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            sb.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            sb.append(c);
+                        }
+                }
+            }
+            sb.append('"');
+        }
+    }
+
+    /**
+     * Writer of comma-separated values. Each segment is one row, and the rows
+     * of a file are contiguous; a file with no segments or with an error is
+     * one row with empty segment columns.
+     */
+    static class CsvWriter extends RecordWriter {
+
+        CsvWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        protected String header() {
+            return "file,marker,headerOffset,contentOffset,contentLength,error\n";
+        }
+
+        @Override
+        protected String formatSegments(String file, List<JpegSegmentSpec> segments) {
+            String quoted = quote(file);
+            if (segments.isEmpty()) {
+                return quoted + ",,,,,\n";
+            }
+            StringBuilder sb = new StringBuilder(128);
+            for (JpegSegmentSpec segment : segments) {
+                sb.append(quoted).append(',').append(marker(segment))
+                        .append(',').append(segment.headerOffset)
+                        .append(',').append(segment.contentOffset)
+                        .append(',').append(segment.contentLength)
+                        .append(",\n");
+            }
+            return sb.toString();
+        }
+
+        @Override
+        protected String formatError(String file, Exception error) {
+            return quote(file) + ",,,,," + quote(errorMessage(error)) + '\n';
+        }
+
+        static String quote(String value) {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package io.github.mike10004.jpegsegmentfinder.cli;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MainTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void ndjsonFromDirectoryAndStdin() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        File jpeg = new File(dir, "a.jpg");
+        Files.write(jpeg.toPath(), new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE1, 0, 4, 'h', 'i', (byte) 0xFF, (byte) 0xDA, 0, 2});
+        File junk = new File(dir, "b \"quoted\".jpg");
+        Files.write(junk.toPath(), "not a jpeg".getBytes(StandardCharsets.US_ASCII));
+        Result result = run("", "--threads", "2", dir.getPath());
+        assertEquals(Main.EXIT_SCAN_ERRORS, result.exitCode);
+        String[] lines = result.stdout.split("\n");
+        Arrays.sort(lines);
+        assertEquals(2, lines.length);
+        assertEquals("{\"file\":\"" + jpeg.getPath() + "\",\"segments\":[{\"marker\":\"E1\",\"headerOffset\":2,\"contentOffset\":6,\"contentLength\":2}]}", lines[0]);
+        assertTrue(lines[1], lines[1].startsWith("{\"file\":\"" + dir.getPath() + "/b \\\"quoted\\\".jpg\",\"error\":"));
+        assertTrue(result.stderr, result.stderr.startsWith("files: 2, errors: 1, segments: 1"));
+
+        result = run(jpeg.getPath() + "\n", "--no-summary", "--markers", "da,E1");
+        assertEquals(Main.EXIT_OK, result.exitCode);
+        assertEquals(1, result.stdout.split("\n").length);
+        assertEquals("", result.stderr);
+    }
+
+    @Test
+    public void csvFromGlob() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        File jpeg = new File(dir, "c.jpg");
+        Files.write(jpeg.toPath(), new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 2, (byte) 0xFF, (byte) 0xE1, 0, 3, 'x', (byte) 0xFF, (byte) 0xDA, 0, 2});
+        Files.write(new File(dir, "c.txt").toPath(), new byte[0]);
+        Result result = run("", "--format", "csv", "--no-summary", dir.getPath() + "/*.jpg");
+        assertEquals(Main.EXIT_OK, result.exitCode);
+        assertEquals("file,marker,headerOffset,contentOffset,contentLength,error\n" +
+                jpeg.getPath() + ",E0,2,6,0,\n" +
+                jpeg.getPath() + ",E1,6,10,1,\n", result.stdout);
+    }
+
+    @Test
+    public void invalidPathnameFromStdin() throws Exception {
+        File jpeg = temporaryFolder.newFile("d.jpg");
+        Files.write(jpeg.toPath(), new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xDA, 0, 2});
+        Result result = run("bad\u0000name.jpg\n" + jpeg.getPath() + "\n", "-");
+        assertEquals(Main.EXIT_SCAN_ERRORS, result.exitCode);
+        String[] lines = result.stdout.split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("{\"file\":\"bad\\u0000name.jpg\",\"error\":"));
+        assertEquals("{\"file\":\"" + jpeg.getPath() + "\",\"segments\":[]}", lines[1]);
+        assertTrue(result.stderr, result.stderr.startsWith("files: 2, errors: 1, segments: 0"));
+    }
+
+    @Test
+    public void unreadableSubdirectory() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        Path locked = Files.createDirectory(dir.toPath().resolve("locked"));
+        Path later = Files.createDirectory(dir.toPath().resolve("z"));
+        Path jpeg = later.resolve("e.jpg");
+        Files.write(jpeg, new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xDA, 0, 2});
+        Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("---------"));
+        try {
+            Assume.assumeFalse("directory permissions are not enforced for this user", Files.isReadable(locked));
+            for (String argument : new String[]{dir.getPath(), dir.getPath() + "/*/*.jpg"}) {
+                Result result = run("", "--format", "csv", argument);
+                assertEquals(Main.EXIT_SCAN_ERRORS, result.exitCode);
+                String[] lines = result.stdout.split("\n");
+                assertEquals(result.stdout, 3, lines.length);
+                Arrays.sort(lines, 1, 3);
+                assertTrue(lines[1], lines[1].startsWith(locked + ",,,,,java.nio.file.AccessDeniedException"));
+                assertEquals(jpeg + ",,,,,", lines[2]);
+                assertTrue(result.stderr, result.stderr.startsWith("files: 2, errors: 1, segments: 0"));
+            }
+        } finally {
+            Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("rwx------"));
+        }
+    }
+
+    @Test
+    public void usageErrors() throws Exception {
+        assertEquals(Main.EXIT_USAGE, run("", "--threads", "0").exitCode);
+        assertEquals(Main.EXIT_USAGE, run("", "--format", "xml").exitCode);
+        assertEquals(Main.EXIT_USAGE, run("", "--markers", "E1,100").exitCode);
+        assertEquals(Main.EXIT_USAGE, run("", "--bogus").exitCode);
+        assertEquals(Main.EXIT_USAGE, run("", "--threads").exitCode);
+    }
+
+    private static Result run(String stdin, String... args) throws Exception {
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream(), stderr = new ByteArrayOutputStream();
+        int exitCode = new Main(new ByteArrayInputStream(stdin.getBytes(StandardCharsets.UTF_8)),
+                new PrintStream(stdout, true, "UTF-8"), new PrintStream(stderr, true, "UTF-8")).run(args);
+        return new Result(exitCode, stdout.toString("UTF-8"), stderr.toString("UTF-8"));
+    }
+
+    private static class Result {
+        final int exitCode;
+        final String stdout, stderr;
+
+        Result(int exitCode, String stdout, String stderr) {
+            this.exitCode = exitCode;
+            this.stdout = stdout;
+            this.stderr = stderr;
+        }
+    }
+}
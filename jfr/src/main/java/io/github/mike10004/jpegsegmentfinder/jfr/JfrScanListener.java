@@ -0,0 +1,88 @@
+package io.github.mike10004.jpegsegmentfinder.jfr;
+
+import io.github.mike10004.jpegsegmentfinder.ScanListener;
+import io.github.mike10004.jpegsegmentfinder.ScanStatistics;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Listener that emits a JDK Flight Recorder event for each scan. The event is
+ * named {@code io.github.mike10004.jpegsegmentfinder.Scan} and is recorded only
+ * if it is enabled in the active recording settings. This class requires a
+ * JVM that provides the {@code jdk.jfr} module, so it is in a separate artifact
+ * that targets Java 11; the core library targets Java 8.
+ */
+public class JfrScanListener implements ScanListener {
+
+    @Override
+    public void scanCompleted(ScanStatistics statistics) {
+        commit(statistics, false);
+    }
+
+    @Override
+    public void scanFailed(ScanStatistics statistics, Exception exception) {
+        commit(statistics, true);
+    }
+
+    private static void commit(ScanStatistics statistics, boolean failed) {
+        ScanEvent event = new ScanEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.bytesRead = statistics.bytesRead;
+        event.bytesSkipped = statistics.bytesSkipped;
+        event.readCalls = statistics.readCalls;
+        event.skipCalls = statistics.skipCalls;
+        event.segmentsVisited = statistics.segmentsVisited;
+        event.segmentsMatched = statistics.segmentsMatched;
+        event.resyncBytes = statistics.resyncBytes;
+        event.elapsed = statistics.elapsedNanos;
+        event.failed = failed;
+        event.commit();
+    }
+
+    @Name("io.github.mike10004.jpegsegmentfinder.Scan")
+    @Label("JPEG Segment Scan")
+    @Category("JPEG Segment Finder")
+    @Description("Scan of JPEG data for segments")
+    @StackTrace(false)
+    static class ScanEvent extends Event {
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Bytes Skipped")
+        @DataAmount
+        long bytesSkipped;
+
+        @Label("Read Calls")
+        long readCalls;
+
+        @Label("Skip Calls")
+        long skipCalls;
+
+        @Label("Segments Visited")
+        int segmentsVisited;
+
+        @Label("Segments Matched")
+        int segmentsMatched;
+
+        @Label("Resync Bytes")
+        @DataAmount
+        long resyncBytes;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+
+        @Label("Failed")
+        boolean failed;
+    }
+}
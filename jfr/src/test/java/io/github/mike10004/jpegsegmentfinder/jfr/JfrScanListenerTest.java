@@ -0,0 +1,56 @@
+package io.github.mike10004.jpegsegmentfinder.jfr;
+
+import io.github.mike10004.jpegsegmentfinder.JpegSegmentFinder;
+import io.github.mike10004.jpegsegmentfinder.JpegSegmentFinderException;
+import io.github.mike10004.jpegsegmentfinder.MarkerSet;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JfrScanListenerTest {
+
+    private static final String EVENT_NAME = "io.github.mike10004.jpegsegmentfinder.Scan";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void flightRecorderEvents() throws Exception {
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE1, 0x00, 0x03, 0x01, (byte) 0xFF, (byte) 0xDA};
+        JpegSegmentFinder finder = new JpegSegmentFinder(new JfrScanListener());
+        Path recordingFile = temporaryFolder.getRoot().toPath().resolve("scan.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(EVENT_NAME);
+            recording.start();
+            finder.findSegments(new ByteArrayInputStream(jpeg), MarkerSet.allAppn());
+            try {
+                finder.findSegments(new ByteArrayInputStream("not a jpeg".getBytes(StandardCharsets.US_ASCII)), MarkerSet.allAppn());
+                fail("expected exception");
+            } catch (JpegSegmentFinderException ignore) {
+            }
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile).stream()
+                .filter(event -> event.getEventType().getName().equals(EVENT_NAME))
+                .collect(Collectors.toList());
+        assertEquals(2, events.size());
+        assertEquals(1, events.get(0).getInt("segmentsMatched"));
+        assertFalse(events.get(0).getBoolean("failed"));
+        assertTrue(events.get(1).getBoolean("failed"));
+    }
+}
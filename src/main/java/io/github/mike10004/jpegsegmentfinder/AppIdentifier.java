@@ -0,0 +1,150 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Enumeration of identifiers of application segment content. Application
+ * segments that share a marker are distinguished by a signature at the
+ * start of the segment content; for example, an APP1 segment may contain
+ * Exif or XMP data.
+ */
+public enum AppIdentifier {
+
+    /**
+     * JFIF header, in an APP0 segment.
+     */
+    JFIF((byte) 0xE0, "JFIF\0"),
+
+    /**
+     * JFIF extension, such as a thumbnail, in an APP0 segment.
+     */
+    JFXX((byte) 0xE0, "JFXX\0"),
+
+    /**
+     * Exif data, in an APP1 segment. The signature is followed by a pad byte,
+     * which is not checked because some writers do not set it to zero.
+     */
+    EXIF((byte) 0xE1, "Exif\0", 1),
+
+    /**
+     * XMP packet, in an APP1 segment.
+     */
+    XMP((byte) 0xE1, "http://ns.adobe.com/xap/1.0/\0"),
+
+    /**
+     * Portion of an extended XMP packet, in an APP1 segment.
+     */
+    EXTENDED_XMP((byte) 0xE1, "http://ns.adobe.com/xmp/extension/\0"),
+
+    /**
+     * Chunk of an ICC profile, in an APP2 segment.
+     */
+    ICC_PROFILE((byte) 0xE2, "ICC_PROFILE\0"),
+
+    /**
+     * Multi-Picture Format index, in an APP2 segment.
+     */
+    MPF((byte) 0xE2, "MPF\0"),
+
+    /**
+     * Photoshop image resources, which usually contain IPTC data, in an APP13 segment.
+     */
+    PHOTOSHOP((byte) 0xED, "Photoshop 3.0\0"),
+
+    /**
+     * Adobe color transform information, in an APP14 segment.
+     */
+    ADOBE((byte) 0xEE, "Adobe"),
+
+    /**
+     * Content with none of the known signatures.
+     */
+    UNKNOWN((byte) 0, "");
+
+    /**
+     * Maximum length of a signature. Classifying a segment requires at most
+     * this many bytes of its content.
+     */
+    public static final int MAX_SIGNATURE_LENGTH = 35;
+
+    private static final AppIdentifier[] KNOWN = {JFIF, JFXX, EXIF, XMP, EXTENDED_XMP, ICC_PROFILE, MPF, PHOTOSHOP, ADOBE};
+
+    private final byte marker;
+    private final byte[] signature;
+    private final int prefixLength;
+
+    AppIdentifier(byte marker, String signature) {
+        this(marker, signature, 0);
+    }
+
+    AppIdentifier(byte marker, String signature, int padding) {
+        this.marker = marker;
+        this.signature = signature.getBytes(StandardCharsets.US_ASCII);
+        this.prefixLength = this.signature.length + padding;
+    }
+
+    /**
+     * Returns the marker of segments that contain content with this identifier.
+     * @return the marker, or zero for {@link #UNKNOWN}
+     */
+    public byte marker() {
+        return marker;
+    }
+
+    /**
+     * Returns the length of the signature at the start of the segment content,
+     * including any padding that follows it.
+     * @return the length of the content that precedes the payload
+     */
+    public int prefixLength() {
+        return prefixLength;
+    }
+
+    /**
+     * Classifies the content of a segment by its signature.
+     * @param marker the segment marker
+     * @param content array containing the start of the segment content
+     * @param offset offset of the segment content in the array
+     * @param length number of bytes of content available, which need not exceed {@link #MAX_SIGNATURE_LENGTH}
+     * @return the identifier, or {@link #UNKNOWN} if no known signature matches
+     */
+    public static AppIdentifier identify(byte marker, byte[] content, int offset, int length) {
+        for (AppIdentifier identifier : KNOWN) {
+            if (identifier.marker == marker && identifier.matches(content, offset, length)) {
+                return identifier;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Returns the set of markers of segments that may contain content with
+     * any of the given identifiers.
+     * @param identifiers the identifiers
+     * @return the set of markers
+     */
+    public static MarkerSet markersOf(Set<AppIdentifier> identifiers) {
+        MarkerSet markers = MarkerSet.none();
+        for (AppIdentifier identifier : identifiers) {
+            if (identifier == UNKNOWN) {
+                markers = markers.union(MarkerSet.allAppn());
+            } else {
+                markers = markers.union(MarkerSet.of(identifier.marker));
+            }
+        }
+        return markers;
+    }
+
+    private boolean matches(byte[] content, int offset, int length) {
+        if (length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if (content[offset + i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,59 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.util.Objects;
+
+/**
+ * Segment specification that also records the identifier of the segment
+ * content, as determined by its signature during the scan.
+ */
+public class AppSegmentSpec extends JpegSegmentSpec {
+
+    /**
+     * Identifier of the segment content.
+     */
+    public final AppIdentifier identifier;
+
+    /**
+     * Constructs a new instance.
+     * @param marker the segment marker
+     * @param headerOffset offset from the start of a file where the segment header begins
+     * @param contentOffset offset from the start of a file where the segment content begins
+     * @param contentLength segment content length
+     * @param identifier identifier of the segment content
+     */
+    public AppSegmentSpec(byte marker, long headerOffset, long contentOffset, long contentLength, AppIdentifier identifier) {
+        super(marker, headerOffset, contentOffset, contentLength);
+        this.identifier = Objects.requireNonNull(identifier);
+    }
+
+    /**
+     * Returns the offset of the payload, which follows the signature and any padding.
+     * @return offset from the start of a file where the payload begins
+     */
+    public long payloadOffset() {
+        return contentOffset + identifier.prefixLength();
+    }
+
+    @Override
+    public String toString() {
+        return "AppSegmentSpec{" +
+                "" + String.format("0x%02X", marker) +
+                "; identifier=" + identifier +
+                ", contentOffset=" + contentOffset +
+                ", headerOffset=" + headerOffset +
+                ", contentLength=" + contentLength +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!super.equals(o)) return false;
+        AppSegmentSpec that = (AppSegmentSpec) o;
+        return identifier == that.identifier;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + identifier.hashCode();
+    }
+}
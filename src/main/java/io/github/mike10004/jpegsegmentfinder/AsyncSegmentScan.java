@@ -0,0 +1,136 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Scan of a file that follows the chain of segment headers with positional
+ * asynchronous reads. Segment content is skipped by advancing the read position,
+ * and no thread is blocked between reads. A listener, if any, is notified on
+ * the thread that completes the scan, before the future completes.
+ */
+final class AsyncSegmentScan implements CompletionHandler<Integer, Void> {
+
+    private final AsynchronousFileChannel channel;
+    private final SegmentParser parser;
+    private final ByteBuffer buffer;
+    private final List<JpegSegmentSpec> segments;
+    private final CompletableFuture<List<JpegSegmentSpec>> future;
+    private final ScanListener listener;
+    private long size;
+    private long readPosition;
+    private long startTime;
+    private long bytesRead;
+    private long bytesSkipped;
+    private long readCalls;
+    private long skipCalls;
+
+    public AsyncSegmentScan(AsynchronousFileChannel channel, MarkerSet segmentMarkers, int bufferSize, ScanLimits limits, ScanListener listener) {
+        this.channel = Objects.requireNonNull(channel);
+        this.listener = listener;
+        segments = new ArrayList<>();
+        parser = new SegmentParser(segmentMarkers, (marker, headerOffset, contentOffset, contentLength) -> {
+            segments.add(new JpegSegmentSpec(marker, headerOffset, contentOffset, contentLength));
+            return true;
+        }, limits);
+        buffer = ByteBuffer.allocate(bufferSize);
+        future = new CompletableFuture<>();
+    }
+
+    /**
+     * Starts the scan.
+     * @return a future that completes with the list of segments found
+     */
+    public CompletableFuture<List<JpegSegmentSpec>> start() {
+        startTime = listener == null ? 0 : System.nanoTime();
+        if (parser.isDone()) {
+            complete();
+            return future;
+        }
+        try {
+            size = channel.size();
+        } catch (IOException e) {
+            fail(e);
+            return future;
+        }
+        readNext();
+        return future;
+    }
+
+    private void readNext() {
+        // skip segment content without reading it, but never past the end of the file
+        long skip = Math.min(parser.pendingSkip(), Math.max(0, size - readPosition));
+        parser.skipped(skip);
+        readPosition += skip;
+        if (skip > 0) {
+            bytesSkipped += skip;
+            skipCalls++;
+        }
+        ((Buffer) buffer).clear();
+        readCalls++;
+        try {
+            channel.read(buffer, readPosition, null, this);
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public void completed(Integer bytesRead, Void attachment) {
+        try {
+            if (bytesRead < 0) {
+                parser.finish();
+                complete();
+                return;
+            }
+            this.bytesRead += bytesRead;
+            readPosition += bytesRead;
+            ((Buffer) buffer).flip();
+            parser.feed(buffer);
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+            return;
+        }
+        if (parser.isDone()) {
+            complete();
+        } else {
+            readNext();
+        }
+    }
+
+    @Override
+    public void failed(Throwable exc, Void attachment) {
+        if (exc instanceof Exception) {
+            fail((Exception) exc);
+        } else {
+            future.completeExceptionally(exc);
+        }
+    }
+
+    private void complete() {
+        if (listener != null) {
+            listener.scanCompleted(statistics());
+        }
+        future.complete(segments);
+    }
+
+    private void fail(Exception exception) {
+        if (listener != null) {
+            listener.scanFailed(statistics(), exception);
+        }
+        future.completeExceptionally(exception);
+    }
+
+    private ScanStatistics statistics() {
+        return new ScanStatistics(bytesRead, bytesSkipped, readCalls, skipCalls,
+                parser.segmentsVisited(), parser.segmentsMatched(), parser.resyncBytes(),
+                System.nanoTime() - startTime);
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Class that represents the outcome of finding segments in one file of a batch.
+ * Each result represents either success, in which case it has a list of
+ * segments, or failure, in which case it has an exception.
+ */
+public class BatchResult {
+
+    /**
+     * Pathname of the file.
+     */
+    public final Path file;
+
+    private final List<JpegSegmentSpec> segments;
+
+    private final Exception error;
+
+    private BatchResult(Path file, List<JpegSegmentSpec> segments, Exception error) {
+        this.file = Objects.requireNonNull(file);
+        this.segments = segments;
+        this.error = error;
+    }
+
+    /**
+     * Creates a result representing success.
+     * @param file pathname of the file
+     * @param segments segments found
+     * @return a new result
+     */
+    public static BatchResult success(Path file, List<JpegSegmentSpec> segments) {
+        return new BatchResult(file, Objects.requireNonNull(segments), null);
+    }
+
+    /**
+     * Creates a result representing failure.
+     * @param file pathname of the file
+     * @param error the exception that caused the failure
+     * @return a new result
+     */
+    public static BatchResult failure(Path file, Exception error) {
+        return new BatchResult(file, null, Objects.requireNonNull(error));
+    }
+
+    /**
+     * Tests whether segments were successfully found in the file.
+     * @return true if this result represents success
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * Gets the segments found in the file.
+     * @return the list of segments; empty if this result represents failure
+     */
+    public List<JpegSegmentSpec> getSegments() {
+        return segments == null ? Collections.emptyList() : segments;
+    }
+
+    /**
+     * Gets the exception that caused failure.
+     * @return the exception, or null if this result represents success
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{" +
+                "file=" + file +
+                (isSuccess() ? ", segments=" + segments : ", error=" + error) +
+                '}';
+    }
+}
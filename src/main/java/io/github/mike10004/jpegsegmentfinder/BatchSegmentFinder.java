@@ -0,0 +1,201 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Service class that finds segments in many files concurrently. Files are scanned
+ * by tasks submitted to an executor, and the number of files being scanned at
+ * any time is bounded. A failure to scan one file is reported as a result for
+ * that file and does not affect the rest of the batch.
+ *
+ * <p>Results are delivered to a sink as each file is finished, in no particular
+ * order. The sink is invoked from the executor's threads, possibly concurrently,
+ * so it must be thread-safe. Instances of this class are thread-safe.
+ */
+public class BatchSegmentFinder {
+
+    private final JpegSegmentFinder finder;
+    private final Executor executor;
+    private final int maxInFlight;
+
+    /**
+     * Constructs an instance that uses the common fork-join pool and allows
+     * twice as many files in flight as there are available processors.
+     * @param finder the finder to use for each file
+     */
+    public BatchSegmentFinder(JpegSegmentFinder finder) {
+        this(finder, ForkJoinPool.commonPool(), 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an instance. The executor need not be bounded, because the
+     * number of tasks in flight is limited by this instance. On Java 21 or later,
+     * {@code Executors.newVirtualThreadPerTaskExecutor()} is a good choice,
+     * because scanning a file mostly waits on I/O.
+     * @param finder the finder to use for each file
+     * @param executor the executor that runs scan tasks
+     * @param maxInFlight maximum number of files to be scanned at the same time
+     */
+    public BatchSegmentFinder(JpegSegmentFinder finder, Executor executor, int maxInFlight) {
+        this.finder = Objects.requireNonNull(finder);
+        this.executor = Objects.requireNonNull(executor);
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("max in-flight count must be positive");
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Finds segments in each of the given files. This method returns after
+     * a result for every file has been delivered to the sink.
+     * @param files pathnames of JPEG files
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @param sink consumer of results
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public void findSegments(Collection<Path> files, MarkerSet segmentMarkers, Consumer<? super BatchResult> sink) throws InterruptedException {
+        findSegments(files.iterator(), segmentMarkers, sink);
+    }
+
+    /**
+     * Finds segments in each of the files supplied by a stream. The stream is
+     * consumed only as fast as files are scanned, so it may be very long.
+     * This method returns after a result for every file has been delivered to the sink.
+     * @param files stream of pathnames of JPEG files
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @param sink consumer of results
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public void findSegments(Stream<Path> files, MarkerSet segmentMarkers, Consumer<? super BatchResult> sink) throws InterruptedException {
+        findSegments(files.iterator(), segmentMarkers, sink);
+    }
+
+    /**
+     * Finds segments in each regular file within a directory tree. A file or
+     * directory within the tree that cannot be read, such as a subdirectory
+     * without read permission, is reported as a failed result for that
+     * pathname, and the rest of the tree is still scanned.
+     * This method returns after a result for every file has been delivered to the sink.
+     * @param directory root of the directory tree
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @param sink consumer of results
+     * @throws IOException if the root directory cannot be read
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public void findSegmentsInTree(Path directory, MarkerSet segmentMarkers, Consumer<? super BatchResult> sink) throws IOException, InterruptedException {
+        Submitter submitter = new Submitter(segmentMarkers, sink);
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() || (attrs.isSymbolicLink() && Files.isRegularFile(file))) {
+                        try {
+                            submitter.submit(file);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return FileVisitResult.TERMINATE;
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                    if (file.equals(directory)) {
+                        throw exc;
+                    }
+                    sink.accept(BatchResult.failure(file, exc));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                    if (exc != null) {
+                        // the directory listing failed partway through
+                        sink.accept(BatchResult.failure(dir, exc));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } finally {
+            submitter.awaitAll();
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    private void findSegments(Iterator<Path> files, MarkerSet segmentMarkers, Consumer<? super BatchResult> sink) throws InterruptedException {
+        Submitter submitter = new Submitter(segmentMarkers, sink);
+        try {
+            while (files.hasNext()) {
+                submitter.submit(files.next());
+            }
+        } finally {
+            submitter.awaitAll();
+        }
+    }
+
+    /**
+     * Submitter of scan tasks for one batch that bounds the number in flight.
+     */
+    private class Submitter {
+
+        private final MarkerSet segmentMarkers;
+        private final Consumer<? super BatchResult> sink;
+        private final Semaphore permits;
+
+        public Submitter(MarkerSet segmentMarkers, Consumer<? super BatchResult> sink) {
+            this.segmentMarkers = Objects.requireNonNull(segmentMarkers);
+            this.sink = Objects.requireNonNull(sink);
+            permits = new Semaphore(maxInFlight);
+        }
+
+        public void submit(Path file) throws InterruptedException {
+            permits.acquire();
+            try {
+                executor.execute(() -> {
+                    try {
+                        sink.accept(scan(file, segmentMarkers));
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                sink.accept(BatchResult.failure(file, e));
+            }
+        }
+
+        /**
+         * Waits for tasks in flight to finish.
+         */
+        public void awaitAll() {
+            permits.acquireUninterruptibly(maxInFlight);
+        }
+    }
+
+    private BatchResult scan(Path file, MarkerSet segmentMarkers) {
+        try {
+            List<JpegSegmentSpec> segments = finder.findSegments(file, segmentMarkers);
+            return BatchResult.success(file, segments);
+        } catch (IOException | RuntimeException e) {
+            return BatchResult.failure(file, e);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Abstract superclass of readers that read from their source in blocks. The block
+ * buffer is owned by the reader and reused for every block. Skips are satisfied
+ * from the buffered bytes if possible, and otherwise delegated to the source.
+ */
+abstract class BlockReader extends SequentialReader {
+
+    private final byte[] buffer;
+    /**
+     * Little-endian view of the buffer, for word-at-a-time scanning.
+     */
+    private final ByteBuffer scanView;
+    private int bufferPosition;
+    private int bufferLimit;
+    /**
+     * Position of the first byte in the buffer.
+     */
+    private long bufferStart;
+    private long sourceBytesRead;
+    private long sourceReadCalls;
+    private long sourceBytesSkipped;
+    private long sourceSkipCalls;
+
+    protected BlockReader(int bufferSize) {
+        this(new byte[checkBufferSize(bufferSize)]);
+    }
+
+    /**
+     * Constructs an instance that uses the given array as its block buffer.
+     * The array must not be used by anything else while this reader is in use.
+     * @param buffer the block buffer
+     */
+    protected BlockReader(byte[] buffer) {
+        this.buffer = Objects.requireNonNull(buffer);
+        checkBufferSize(buffer.length);
+        scanView = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int checkBufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("buffer size must be positive");
+        }
+        return bufferSize;
+    }
+
+    /**
+     * Reads bytes from the source, starting at the position immediately following
+     * the last byte that was read or skipped.
+     * @param b destination array
+     * @param off offset in the destination array
+     * @param len maximum number of bytes to read
+     * @return number of bytes read, or -1 if the end of the source has been reached
+     * @throws IOException on I/O error
+     */
+    protected abstract int readSource(byte[] b, int off, int len) throws IOException;
+
+    /**
+     * Skips bytes of the source, starting at the position immediately following
+     * the last byte that was read or skipped.
+     * @param n number of bytes to skip
+     * @return number of bytes skipped, which is less than {@code n} only if the
+     * end of the source has been reached
+     * @throws IOException on I/O error
+     */
+    protected abstract long skipSource(long n) throws IOException;
+
+    /**
+     * Returns an estimate of the number of bytes that can be read from the source
+     * without blocking.
+     * @return estimated number of bytes available
+     */
+    protected abstract int sourceAvailable();
+
+    @Override
+    public long getPosition() {
+        return bufferStart + bufferPosition;
+    }
+
+    @Override
+    public byte getByte() throws IOException {
+        if (bufferPosition == bufferLimit && !fill()) {
+            throw new EOFException("End of data reached.");
+        }
+        return buffer[bufferPosition++];
+    }
+
+    @Override
+    public byte[] getBytes(int count) throws IOException {
+        byte[] bytes = new byte[count];
+        getBytes(bytes, 0, count);
+        return bytes;
+    }
+
+    @Override
+    public void getBytes(byte[] dst, int offset, int count) throws IOException {
+        Objects.requireNonNull(dst);
+        while (count > 0) {
+            if (bufferPosition == bufferLimit) {
+                if (count >= buffer.length) {
+                    // bypass the buffer for large reads
+                    discardBuffer();
+                    int bytesRead = readSource(dst, offset, count);
+                    sourceReadCalls++;
+                    if (bytesRead == -1)
+                        throw new EOFException("End of data reached.");
+                    sourceBytesRead += bytesRead;
+                    bufferStart += bytesRead;
+                    offset += bytesRead;
+                    count -= bytesRead;
+                    continue;
+                }
+                if (!fill()) {
+                    throw new EOFException("End of data reached.");
+                }
+            }
+            int n = Math.min(count, bufferLimit - bufferPosition);
+            System.arraycopy(buffer, bufferPosition, dst, offset, n);
+            bufferPosition += n;
+            offset += n;
+            count -= n;
+        }
+    }
+
+    @Override
+    public void skip(long n) throws IOException {
+        if (n < 0)
+            throw new IllegalArgumentException("n must be zero or greater.");
+        long skippedCount = skipInternal(n);
+        if (skippedCount != n)
+            throw new EOFException(String.format("Unable to skip. Requested %d bytes but skipped %d.", n, skippedCount));
+    }
+
+    @Override
+    public boolean trySkip(long n) throws IOException {
+        if (n < 0)
+            throw new IllegalArgumentException("n must be zero or greater.");
+        return skipInternal(n) == n;
+    }
+
+    @Override
+    public long skipUntil(byte value, long maxSkip) throws IOException {
+        long skipped = 0;
+        while (true) {
+            long remaining = maxSkip - skipped;
+            int to = remaining < bufferLimit - bufferPosition ? bufferPosition + (int) remaining : bufferLimit;
+            int i = ByteScanning.indexOf(scanView, bufferPosition, to, value);
+            if (i >= 0) {
+                skipped += i - bufferPosition;
+                bufferPosition = i;
+                return skipped;
+            }
+            skipped += to - bufferPosition;
+            bufferPosition = to;
+            if (skipped >= maxSkip) {
+                return -1;
+            }
+            if (!fill()) {
+                throw new EOFException("End of data reached.");
+            }
+        }
+    }
+
+    @Override
+    public long skipToEnd() throws IOException {
+        long skipped = bufferLimit - bufferPosition;
+        discardBuffer();
+        long n = skipSourceToEnd();
+        sourceSkipCalls++;
+        sourceBytesSkipped += n;
+        bufferStart += n;
+        return skipped + n;
+    }
+
+    /**
+     * Skips all remaining bytes of the source. This implementation reads and
+     * discards blocks until the end of the source is reached.
+     * @return number of bytes skipped
+     * @throws IOException on I/O error
+     */
+    protected long skipSourceToEnd() throws IOException {
+        long skipped = 0;
+        int bytesRead;
+        while ((bytesRead = readSource(buffer, 0, buffer.length)) != -1) {
+            skipped += bytesRead;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        long available = (long) (bufferLimit - bufferPosition) + sourceAvailable();
+        return (int) Math.min(Integer.MAX_VALUE, available);
+    }
+
+    @Override
+    public long getSourceBytesRead() {
+        return sourceBytesRead;
+    }
+
+    @Override
+    public long getSourceReadCalls() {
+        return sourceReadCalls;
+    }
+
+    @Override
+    public long getSourceBytesSkipped() {
+        return sourceBytesSkipped;
+    }
+
+    @Override
+    public long getSourceSkipCalls() {
+        return sourceSkipCalls;
+    }
+
+    /**
+     * Removes the bytes that have been read from the source into the buffer but
+     * not yet consumed. The position of this reader is unchanged, but the
+     * removed bytes are no longer available to be read from this reader.
+     * @return the removed bytes
+     */
+    byte[] takeBuffered() {
+        byte[] buffered = Arrays.copyOfRange(buffer, bufferPosition, bufferLimit);
+        bufferPosition = bufferLimit;
+        return buffered;
+    }
+
+    private long skipInternal(long n) throws IOException {
+        int buffered = bufferLimit - bufferPosition;
+        if (n <= buffered) {
+            bufferPosition += (int) n;
+            return n;
+        }
+        discardBuffer();
+        long skipped = skipSource(n - buffered);
+        sourceSkipCalls++;
+        sourceBytesSkipped += skipped;
+        bufferStart += skipped;
+        return buffered + skipped;
+    }
+
+    private void discardBuffer() {
+        bufferStart += bufferLimit;
+        bufferPosition = 0;
+        bufferLimit = 0;
+    }
+
+    private boolean fill() throws IOException {
+        discardBuffer();
+        int bytesRead;
+        do {
+            bytesRead = readSource(buffer, 0, buffer.length);
+            sourceReadCalls++;
+        } while (bytesRead == 0);
+        if (bytesRead == -1) {
+            return false;
+        }
+        sourceBytesRead += bytesRead;
+        bufferLimit = bytesRead;
+        return true;
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded pool of block buffers, shared by all threads. Buffers are kept in a
+ * queue per buffer size rather than in thread-local storage, so the pool works
+ * the same way for platform and virtual threads, and its memory use depends only
+ * on its capacity, not on the number of threads. A buffer acquired when the pool
+ * is empty is allocated, and a buffer released when the pool is full is dropped.
+ */
+final class BufferPool {
+
+    private final int capacity;
+    private final ConcurrentMap<Integer, ArrayBlockingQueue<byte[]>> buffers = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an instance.
+     * @param capacity maximum number of idle buffers of each size
+     */
+    BufferPool(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Takes a buffer from the pool, or allocates one if none of the requested size is idle.
+     * @param size buffer size
+     * @return a buffer of the given size
+     */
+    byte[] acquire(int size) {
+        byte[] buffer = queue(size).poll();
+        return buffer == null ? new byte[size] : buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The caller must not use the buffer afterwards.
+     * @param buffer the buffer
+     */
+    void release(byte[] buffer) {
+        queue(buffer.length).offer(Objects.requireNonNull(buffer));
+    }
+
+    /**
+     * Returns the number of idle buffers of the given size.
+     * @param size buffer size
+     * @return number of idle buffers
+     */
+    int idle(int size) {
+        ArrayBlockingQueue<byte[]> queue = buffers.get(size);
+        return queue == null ? 0 : queue.size();
+    }
+
+    private ArrayBlockingQueue<byte[]> queue(int size) {
+        ArrayBlockingQueue<byte[]> queue = buffers.get(size);
+        if (queue == null) {
+            queue = buffers.computeIfAbsent(size, k -> new ArrayBlockingQueue<>(capacity));
+        }
+        return queue;
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+/**
+ * Reader that obtains bytes from a byte buffer using absolute gets. The buffer's
+ * position, limit and content are never modified, and no bytes are copied
+ * except those explicitly requested with {@link #getBytes(int)}.
+ *
+ * <p>Positions reported by this reader are relative to the buffer's position
+ * at the time the reader was constructed.
+ */
+class ByteBufferReader extends SequentialReader {
+
+    private final ByteBuffer buffer;
+    private final int base;
+    private final int limit;
+    private int index;
+
+    public ByteBufferReader(ByteBuffer buffer) {
+        // a little-endian view is needed for word-at-a-time scanning
+        this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        base = buffer.position();
+        limit = buffer.limit();
+        index = base;
+    }
+
+    @Override
+    public long getPosition() {
+        return index - base;
+    }
+
+    @Override
+    public byte getByte() throws EOFException {
+        if (index >= limit)
+            throw new EOFException("End of data reached.");
+        return buffer.get(index++);
+    }
+
+    @Override
+    public byte[] getBytes(int count) throws EOFException {
+        byte[] bytes = new byte[count];
+        getBytes(bytes, 0, count);
+        return bytes;
+    }
+
+    @Override
+    public void getBytes(byte[] dst, int offset, int count) throws EOFException {
+        Objects.requireNonNull(dst);
+        if (count > limit - index)
+            throw new EOFException("End of data reached.");
+        for (int i = 0; i < count; i++) {
+            dst[offset + i] = buffer.get(index + i);
+        }
+        index += count;
+    }
+
+    @Override
+    public void skip(long n) throws EOFException {
+        if (n < 0)
+            throw new IllegalArgumentException("n must be zero or greater.");
+        long skippedCount = skipInternal(n);
+        if (skippedCount != n)
+            throw new EOFException(String.format("Unable to skip. Requested %d bytes but skipped %d.", n, skippedCount));
+    }
+
+    @Override
+    public boolean trySkip(long n) {
+        if (n < 0)
+            throw new IllegalArgumentException("n must be zero or greater.");
+        return skipInternal(n) == n;
+    }
+
+    @Override
+    public long skipUntil(byte value, long maxSkip) throws EOFException {
+        int to = maxSkip < limit - index ? index + (int) maxSkip : limit;
+        int i = ByteScanning.indexOf(buffer, index, to, value);
+        if (i < 0) {
+            boolean bounded = to - index == maxSkip;
+            index = to;
+            if (bounded) {
+                return -1;
+            }
+            throw new EOFException("End of data reached.");
+        }
+        int skipped = i - index;
+        index = i;
+        return skipped;
+    }
+
+    @Override
+    public long skipToEnd() {
+        int skipped = limit - index;
+        index = limit;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return limit - index;
+    }
+
+    private long skipInternal(long n) {
+        int skipped = (int) Math.min(n, limit - index);
+        index += skipped;
+        return skipped;
+    }
+}
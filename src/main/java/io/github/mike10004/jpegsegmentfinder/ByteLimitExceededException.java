@@ -0,0 +1,17 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+/**
+ * Exception class thrown if the maximum number of bytes is exceeded.
+ * @see ScanLimits
+ */
+public class ByteLimitExceededException extends ScanLimitExceededException {
+
+    public ByteLimitExceededException(String message, long position) {
+        super(message, position);
+    }
+
+    @Override
+    public ScanStopReason getStopReason() {
+        return ScanStopReason.BYTE_LIMIT;
+    }
+}
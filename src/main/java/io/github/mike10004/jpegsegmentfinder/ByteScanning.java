@@ -0,0 +1,46 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Static utility methods for searching buffers for byte values. The search
+ * examines eight bytes at a time, which matters when scanning long runs of
+ * entropy-coded data for markers.
+ */
+final class ByteScanning {
+
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private ByteScanning() {}
+
+    /**
+     * Finds the first occurrence of a byte value in a range of a buffer.
+     * @param buffer buffer to search, which must have little-endian byte order
+     * @param from index of the first byte to examine
+     * @param to index immediately after the last byte to examine
+     * @param value the value to search for
+     * @return the index of the first occurrence, or -1 if there is none in the range
+     */
+    public static int indexOf(ByteBuffer buffer, int from, int to, byte value) {
+        assert buffer.order() == ByteOrder.LITTLE_ENDIAN;
+        long pattern = (value & 0xFFL) * LOW_BITS;
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            // bytes equal to the value become zero; find the lowest zero byte, which
+            // is the first in memory order because the word is read little-endian
+            long x = buffer.getLong(i) ^ pattern;
+            long zeros = (x - LOW_BITS) & ~x & HIGH_BITS;
+            if (zeros != 0) {
+                return i + (Long.numberOfTrailingZeros(zeros) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
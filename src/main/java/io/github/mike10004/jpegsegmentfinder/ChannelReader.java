@@ -0,0 +1,119 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Objects;
+
+/**
+ * Reader that obtains bytes from a seekable byte channel. Skipping is performed
+ * by moving the read position forward, so skipped bytes are never read from the
+ * underlying channel. Header bytes are read in small blocks; if the channel is
+ * a {@link FileChannel}, positional reads are used and the channel's own position
+ * is left untouched.
+ *
+ * <p>Positions reported by this reader are relative to the channel position
+ * at the time the reader was constructed.
+ */
+class ChannelReader extends BlockReader {
+
+    /**
+     * Default size of the block buffer. Segment headers other than APPn headers
+     * tend to be clustered together, so a small block usually covers a run of them.
+     */
+    static final int DEFAULT_BUFFER_SIZE = 512;
+
+    private final SeekableByteChannel channel;
+    private final long origin;
+    /**
+     * Position, relative to origin, of the next byte to be read from the channel.
+     */
+    private long sourcePosition;
+    /**
+     * Wrapper of the most recent destination array, which is usually the block buffer.
+     */
+    private ByteBuffer wrapper;
+    private byte[] wrapped;
+
+    public ChannelReader(SeekableByteChannel channel) throws IOException {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ChannelReader(SeekableByteChannel channel, int bufferSize) throws IOException {
+        this(channel, channel.position(), bufferSize);
+    }
+
+    /**
+     * Constructs an instance that reads from the given origin rather than from the
+     * channel's current position.
+     * @param channel the channel
+     * @param origin channel position from which to start reading
+     * @param bufferSize block buffer size
+     */
+    public ChannelReader(SeekableByteChannel channel, long origin, int bufferSize) {
+        super(bufferSize);
+        this.channel = Objects.requireNonNull(channel);
+        this.origin = origin;
+    }
+
+    /**
+     * Constructs an instance that reads from the channel's current position,
+     * using the given array as its block buffer.
+     * @param channel the channel
+     * @param buffer the block buffer
+     * @throws IOException if the channel position cannot be determined
+     */
+    public ChannelReader(SeekableByteChannel channel, byte[] buffer) throws IOException {
+        super(buffer);
+        this.channel = Objects.requireNonNull(channel);
+        this.origin = channel.position();
+    }
+
+    @Override
+    protected int readSource(byte[] b, int off, int len) throws IOException {
+        if (b != wrapped) {
+            wrapper = ByteBuffer.wrap(b);
+            wrapped = b;
+        }
+        ByteBuffer dst = wrapper;
+        ((Buffer) dst).limit(off + len);
+        ((Buffer) dst).position(off);
+        long readPosition = origin + sourcePosition;
+        int bytesRead;
+        if (channel instanceof FileChannel) {
+            bytesRead = ((FileChannel) channel).read(dst, readPosition);
+        } else {
+            channel.position(readPosition);
+            bytesRead = channel.read(dst);
+        }
+        if (bytesRead > 0) {
+            sourcePosition += bytesRead;
+        }
+        return bytesRead;
+    }
+
+    @Override
+    protected long skipSource(long n) throws IOException {
+        // reposition without reading; never move past the end of the channel
+        long remaining = Math.max(0, channel.size() - origin - sourcePosition);
+        long skipped = Math.min(n, remaining);
+        sourcePosition += skipped;
+        return skipped;
+    }
+
+    @Override
+    protected long skipSourceToEnd() throws IOException {
+        return skipSource(Long.MAX_VALUE);
+    }
+
+    @Override
+    protected int sourceAvailable() {
+        try {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0, channel.size() - origin - sourcePosition));
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Memory mapping of a file that may be larger than a single mapped buffer can
+ * address. The file is mapped as a sequence of fixed-size chunks, and values
+ * that straddle a chunk boundary are assembled from both chunks. Instances are
+ * not thread-safe.
+ */
+class ChunkedMapping {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+    private final FileChannel.MapMode mode;
+    private final int chunkSize;
+    private final List<MappedByteBuffer> chunks;
+    private long length;
+
+    /**
+     * Maps the first {@code length} bytes of a file.
+     * @param channel the file channel
+     * @param mode map mode
+     * @param chunkSize maximum length of each mapped chunk
+     * @param length number of bytes to map
+     * @throws IOException on I/O error
+     */
+    public ChunkedMapping(FileChannel channel, FileChannel.MapMode mode, int chunkSize, long length) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+        this.channel = channel;
+        this.mode = mode;
+        this.chunkSize = chunkSize;
+        chunks = new ArrayList<>();
+        extend(length);
+    }
+
+    /**
+     * Gets the number of bytes mapped.
+     * @return the mapped length
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Extends or shrinks the mapping to the given length. Only the last chunk
+     * and any new chunks are mapped again.
+     * @param newLength new mapped length
+     * @throws IOException on I/O error
+     */
+    public void extend(long newLength) throws IOException {
+        int chunkCount = (int) ((newLength + chunkSize - 1) / chunkSize);
+        while (chunks.size() > chunkCount) {
+            chunks.remove(chunks.size() - 1);
+        }
+        if (!chunks.isEmpty()) {
+            // the extent of the last chunk may change
+            chunks.remove(chunks.size() - 1);
+        }
+        while (chunks.size() < chunkCount) {
+            long start = (long) chunks.size() * chunkSize;
+            chunks.add(channel.map(mode, start, Math.min(chunkSize, newLength - start)));
+        }
+        length = newLength;
+    }
+
+    public byte get(long position) {
+        return chunks.get((int) (position / chunkSize)).get((int) (position % chunkSize));
+    }
+
+    public int getInt(long position) {
+        if (position % chunkSize <= chunkSize - 4) {
+            return chunks.get((int) (position / chunkSize)).getInt((int) (position % chunkSize));
+        }
+        return (int) getBytes(position, 4);
+    }
+
+    public long getLong(long position) {
+        if (position % chunkSize <= chunkSize - 8) {
+            return chunks.get((int) (position / chunkSize)).getLong((int) (position % chunkSize));
+        }
+        return getBytes(position, 8);
+    }
+
+    private long getBytes(long position, int count) {
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+            value = (value << 8) | (get(position + i) & 0xFF);
+        }
+        return value;
+    }
+
+    public void putLong(long position, long value) {
+        if (position % chunkSize <= chunkSize - 8) {
+            chunks.get((int) (position / chunkSize)).putLong((int) (position % chunkSize), value);
+            return;
+        }
+        for (int i = 7; i >= 0; i--) {
+            chunks.get((int) ((position + i) / chunkSize)).put((int) ((position + i) % chunkSize), (byte) value);
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * Gets a buffer containing a range of the mapping. If the range lies within
+     * one chunk, the buffer is a view of the mapping; otherwise it is a copy.
+     * @param position start of the range
+     * @param count length of the range
+     * @return a buffer whose position is the start of the range and whose limit is its end
+     */
+    public ByteBuffer slice(long position, int count) {
+        int offset = (int) (position % chunkSize);
+        if (offset <= chunkSize - count) {
+            ByteBuffer view = chunks.get((int) (position / chunkSize)).duplicate();
+            ((Buffer) view).limit(offset + count);
+            ((Buffer) view).position(offset);
+            return view;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(count);
+        while (copy.hasRemaining()) {
+            ByteBuffer view = slice(position + copy.position(), Math.min(copy.remaining(), chunkSize - (int) ((position + copy.position()) % chunkSize)));
+            copy.put(view);
+        }
+        ((Buffer) copy).flip();
+        return copy;
+    }
+}
@@ -0,0 +1,236 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Class that represents a payload that is split across several segments,
+ * such as an ICC profile or an extended XMP packet. The payload is exposed as
+ * read-only views of the buffer in which the segments were found, so it is
+ * never copied into a single array.
+ */
+public final class ChunkedPayload {
+
+    private static final int ICC_HEADER_LENGTH = AppIdentifier.ICC_PROFILE.prefixLength() + 2;
+    private static final int GUID_LENGTH = 32;
+    private static final int EXTENDED_XMP_HEADER_LENGTH = AppIdentifier.EXTENDED_XMP.prefixLength() + GUID_LENGTH + 8;
+
+    private final List<ByteBuffer> chunks;
+    private final long length;
+
+    private ChunkedPayload(List<ByteBuffer> chunks) {
+        this.chunks = Collections.unmodifiableList(chunks);
+        long total = 0;
+        for (ByteBuffer chunk : chunks) {
+            total += chunk.remaining();
+        }
+        length = total;
+    }
+
+    /**
+     * Reassembles an ICC profile from APP2 segments. Each segment content
+     * begins with the ICC_PROFILE signature, a one-based sequence number, and
+     * the number of chunks. Segments in the list that do not contain ICC
+     * profile chunks are ignored, so the result of finding APP2 segments can be
+     * passed directly.
+     * @param segments segments found in a buffer, in any order
+     * @return the payload, or null if none of the segments contain ICC profile chunks
+     * @throws JpegSegmentFinderException if chunks are missing, duplicated, or inconsistently numbered
+     */
+    public static ChunkedPayload iccProfile(List<? extends JpegSegmentSlice> segments) throws JpegSegmentFinderException {
+        ByteBuffer[] chunks = null;
+        for (JpegSegmentSlice segment : segments) {
+            ByteBuffer content = segment.content();
+            if (identify(segment, content) != AppIdentifier.ICC_PROFILE) {
+                continue;
+            }
+            if (content.remaining() < ICC_HEADER_LENGTH) {
+                throw new JpegSegmentFinderException("ICC profile chunk header truncated at offset " + segment.contentOffset);
+            }
+            int sequence = content.get(ICC_HEADER_LENGTH - 2) & 0xFF;
+            int count = content.get(ICC_HEADER_LENGTH - 1) & 0xFF;
+            if (chunks == null) {
+                chunks = new ByteBuffer[count];
+            }
+            if (count != chunks.length) {
+                throw new JpegSegmentFinderException("ICC profile chunk count " + count + " inconsistent with " + chunks.length);
+            }
+            if (sequence < 1 || sequence > count) {
+                throw new JpegSegmentFinderException("ICC profile chunk sequence number " + sequence + " out of range 1-" + count);
+            }
+            if (chunks[sequence - 1] != null) {
+                throw new JpegSegmentFinderException("duplicate ICC profile chunk " + sequence);
+            }
+            ((Buffer) content).position(ICC_HEADER_LENGTH);
+            chunks[sequence - 1] = content.slice();
+        }
+        if (chunks == null) {
+            return null;
+        }
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] == null) {
+                throw new JpegSegmentFinderException("missing ICC profile chunk " + (i + 1) + " of " + chunks.length);
+            }
+        }
+        return new ChunkedPayload(Arrays.asList(chunks));
+    }
+
+    /**
+     * Reassembles an extended XMP packet from APP1 segments. Each segment
+     * content begins with the extended XMP signature, the GUID of the packet
+     * as 32 hexadecimal digits, the full length of the packet, and the offset
+     * of the chunk within the packet. Segments that do not contain chunks of
+     * the packet are ignored.
+     * @param segments segments found in a buffer, in any order
+     * @param guid the GUID of the packet, as recorded in the main XMP packet;
+     * if null, all extended XMP chunks must belong to a single packet
+     * @return the payload, or null if none of the segments contain chunks of the packet
+     * @throws JpegSegmentFinderException if chunks overlap, leave gaps, or disagree about the packet length
+     */
+    public static ChunkedPayload extendedXmp(List<? extends JpegSegmentSlice> segments, String guid) throws JpegSegmentFinderException {
+        TreeMap<Long, ByteBuffer> chunks = new TreeMap<>();
+        String packetGuid = guid;
+        long fullLength = -1;
+        for (JpegSegmentSlice segment : segments) {
+            ByteBuffer content = segment.content();
+            if (identify(segment, content) != AppIdentifier.EXTENDED_XMP) {
+                continue;
+            }
+            if (content.remaining() < EXTENDED_XMP_HEADER_LENGTH) {
+                throw new JpegSegmentFinderException("extended XMP chunk header truncated at offset " + segment.contentOffset);
+            }
+            byte[] guidBytes = new byte[GUID_LENGTH];
+            ((Buffer) content).position(AppIdentifier.EXTENDED_XMP.prefixLength());
+            content.get(guidBytes);
+            String chunkGuid = new String(guidBytes, StandardCharsets.US_ASCII);
+            if (packetGuid == null) {
+                packetGuid = chunkGuid;
+            } else if (!packetGuid.equals(chunkGuid)) {
+                if (guid != null) {
+                    continue;
+                }
+                throw new JpegSegmentFinderException("extended XMP chunks belong to more than one packet");
+            }
+            long chunkFullLength = content.getInt() & 0xFFFFFFFFL;
+            long offset = content.getInt() & 0xFFFFFFFFL;
+            if (fullLength == -1) {
+                fullLength = chunkFullLength;
+            } else if (fullLength != chunkFullLength) {
+                throw new JpegSegmentFinderException("extended XMP packet length " + chunkFullLength + " inconsistent with " + fullLength);
+            }
+            if (chunks.put(offset, content.slice()) != null) {
+                throw new JpegSegmentFinderException("duplicate extended XMP chunk at offset " + offset);
+            }
+        }
+        if (chunks.isEmpty()) {
+            return null;
+        }
+        long expectedOffset = 0;
+        for (Long offset : chunks.keySet()) {
+            if (offset != expectedOffset) {
+                throw new JpegSegmentFinderException("extended XMP chunk at offset " + offset + " does not follow chunk ending at " + expectedOffset);
+            }
+            expectedOffset += chunks.get(offset).remaining();
+        }
+        if (expectedOffset != fullLength) {
+            throw new JpegSegmentFinderException("extended XMP chunks total " + expectedOffset + " bytes but packet length is " + fullLength);
+        }
+        return new ChunkedPayload(new ArrayList<>(chunks.values()));
+    }
+
+    private static AppIdentifier identify(JpegSegmentSpec segment, ByteBuffer content) {
+        byte[] signature = new byte[Math.min(content.remaining(), AppIdentifier.MAX_SIGNATURE_LENGTH)];
+        content.duplicate().get(signature);
+        return AppIdentifier.identify(segment.marker, signature, 0, signature.length);
+    }
+
+    /**
+     * Returns the chunks of the payload, in order. Each invocation returns
+     * new read-only buffers, positioned at zero, that share content with the
+     * buffer in which the segments were found.
+     * @return list of buffers
+     */
+    public List<ByteBuffer> chunks() {
+        List<ByteBuffer> views = new ArrayList<>(chunks.size());
+        for (ByteBuffer chunk : chunks) {
+            views.add(chunk.duplicate());
+        }
+        return views;
+    }
+
+    /**
+     * Returns the length of the payload.
+     * @return the total length of the chunks
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Opens a channel that reads the payload from the start, one chunk after another.
+     * @return a new channel
+     */
+    public ReadableByteChannel channel() {
+        return new ChunkChannel(chunks());
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkedPayload{chunks=" + chunks.size() + ", length=" + length + '}';
+    }
+
+    private static class ChunkChannel implements ReadableByteChannel {
+
+        private final List<ByteBuffer> chunks;
+        private int index;
+        private boolean open = true;
+
+        private ChunkChannel(List<ByteBuffer> chunks) {
+            this.chunks = Objects.requireNonNull(chunks);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws ClosedChannelException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            int total = 0;
+            while (dst.hasRemaining() && index < chunks.size()) {
+                ByteBuffer chunk = chunks.get(index);
+                if (!chunk.hasRemaining()) {
+                    index++;
+                    continue;
+                }
+                int n = Math.min(chunk.remaining(), dst.remaining());
+                ByteBuffer part = chunk.duplicate();
+                ((Buffer) part).limit(part.position() + n);
+                dst.put(part);
+                ((Buffer) chunk).position(chunk.position() + n);
+                total += n;
+            }
+            if (total == 0 && index == chunks.size() && dst.hasRemaining()) {
+                return -1;
+            }
+            return total;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+/**
+ * Exception class thrown if the scan deadline passes.
+ * @see ScanLimits
+ */
+public class DeadlineExceededException extends ScanLimitExceededException {
+
+    public DeadlineExceededException(String message, long position) {
+        super(message, position);
+    }
+
+    @Override
+    public ScanStopReason getStopReason() {
+        return ScanStopReason.DEADLINE;
+    }
+}
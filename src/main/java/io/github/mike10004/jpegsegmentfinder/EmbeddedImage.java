@@ -0,0 +1,120 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Class that represents the location of a JPEG image embedded in another,
+ * such as an Exif thumbnail or an image listed in a Multi-Picture Format index.
+ * @see EmbeddedImageLocator
+ */
+public class EmbeddedImage {
+
+    /**
+     * Enumeration of kinds of embedded images.
+     */
+    public enum Kind {
+
+        /**
+         * Thumbnail stored in the Exif segment, located by the IFD1 JPEGInterchangeFormat tags.
+         */
+        EXIF_THUMBNAIL,
+
+        /**
+         * Image listed in a Multi-Picture Format index.
+         */
+        MPF_IMAGE
+    }
+
+    /**
+     * Kind of embedded image.
+     */
+    public final Kind kind;
+
+    /**
+     * Index of the image in the Multi-Picture Format index, or zero for a thumbnail.
+     * The image at index zero of an index is usually the primary image, at offset zero.
+     */
+    public final int index;
+
+    /**
+     * Multi-Picture Format image attribute flags and type code, or zero for a thumbnail.
+     */
+    public final int attribute;
+
+    /**
+     * Offset (from the start of a file) where the embedded image begins.
+     */
+    public final long offset;
+
+    /**
+     * Length of the embedded image.
+     */
+    public final long length;
+
+    /**
+     * Constructs a new instance.
+     * @param kind kind of embedded image
+     * @param index index of the image in its index
+     * @param attribute image attribute
+     * @param offset offset from the start of a file where the image begins
+     * @param length image length
+     */
+    public EmbeddedImage(Kind kind, int index, int attribute, long offset, long length) {
+        this.kind = Objects.requireNonNull(kind);
+        this.index = index;
+        this.attribute = attribute;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Returns a read-only view of the embedded image in a buffer that contains
+     * the whole file. The view can be passed to
+     * {@link JpegSegmentFinder#findSegments(ByteBuffer, MarkerSet)} to find
+     * segments of the embedded image.
+     * @param jpeg buffer positioned at the start of the file
+     * @return a read-only buffer
+     */
+    public ByteBuffer view(ByteBuffer jpeg) {
+        ByteBuffer view = jpeg.duplicate();
+        int start = jpeg.position() + Math.toIntExact(offset);
+        ((Buffer) view).limit(start + Math.toIntExact(length));
+        ((Buffer) view).position(start);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public String toString() {
+        return "EmbeddedImage{" +
+                "kind=" + kind +
+                ", index=" + index +
+                ", attribute=" + String.format("0x%08X", attribute) +
+                ", offset=" + offset +
+                ", length=" + length +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        EmbeddedImage that = (EmbeddedImage) o;
+        return index == that.index
+                && attribute == that.attribute
+                && offset == that.offset
+                && length == that.length
+                && kind == that.kind;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = kind.hashCode();
+        result = 31 * result + index;
+        result = 31 * result + attribute;
+        result = 31 * result + (int) (offset ^ (offset >>> 32));
+        result = 31 * result + (int) (length ^ (length >>> 32));
+        return result;
+    }
+}
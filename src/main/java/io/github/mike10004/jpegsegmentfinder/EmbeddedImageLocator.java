@@ -0,0 +1,208 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Service class that locates embedded JPEG images by following a few pointers
+ * in the TIFF structures of application segments, without decoding the rest
+ * of the metadata. Offsets of the embedded images are absolute, so with the
+ * segments of a file found by {@link JpegSegmentFinder}, the images can be
+ * served or scanned directly from the file.
+ */
+public final class EmbeddedImageLocator {
+
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT = 0x0201;
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT_LENGTH = 0x0202;
+    private static final int TAG_MP_ENTRY = 0xB002;
+    private static final int MP_ENTRY_LENGTH = 16;
+    private static final int IFD_ENTRY_LENGTH = 12;
+
+    private EmbeddedImageLocator() {
+    }
+
+    /**
+     * Locates the thumbnail in an Exif segment found in a buffer.
+     * @param app1 an APP1 segment
+     * @return the thumbnail location, or null if the segment is not an Exif segment or has no thumbnail
+     * @throws JpegSegmentFinderException if the TIFF structure is corrupt
+     */
+    public static EmbeddedImage exifThumbnail(JpegSegmentSlice app1) throws JpegSegmentFinderException {
+        return exifThumbnail(app1, app1.content());
+    }
+
+    /**
+     * Locates the thumbnail in an Exif segment.
+     * @param app1 an APP1 segment
+     * @param content the content of the segment, from its position to its limit
+     * @return the thumbnail location, or null if the segment is not an Exif segment or has no thumbnail
+     * @throws JpegSegmentFinderException if the TIFF structure is corrupt
+     */
+    public static EmbeddedImage exifThumbnail(JpegSegmentSpec app1, ByteBuffer content) throws JpegSegmentFinderException {
+        Tiff tiff = Tiff.open(app1, content, AppIdentifier.EXIF);
+        if (tiff == null) {
+            return null;
+        }
+        int ifd0 = tiff.firstIfdOffset();
+        int ifd1 = tiff.nextIfdOffset(ifd0);
+        if (ifd1 == 0) {
+            return null;
+        }
+        long offset = -1, length = -1;
+        int count = tiff.entryCount(ifd1);
+        for (int i = 0; i < count; i++) {
+            int entry = ifd1 + 2 + i * IFD_ENTRY_LENGTH;
+            int tag = tiff.uint16(entry);
+            if (tag == TAG_JPEG_INTERCHANGE_FORMAT) {
+                offset = tiff.uint32(entry + 8);
+            } else if (tag == TAG_JPEG_INTERCHANGE_FORMAT_LENGTH) {
+                length = tiff.uint32(entry + 8);
+            }
+        }
+        if (offset < 0 || length <= 0) {
+            return null;
+        }
+        if (offset + length > tiff.length()) {
+            throw new JpegSegmentFinderException("Exif thumbnail extends beyond the segment");
+        }
+        return new EmbeddedImage(EmbeddedImage.Kind.EXIF_THUMBNAIL, 0, 0, tiff.base + offset, length);
+    }
+
+    /**
+     * Locates the images listed in a Multi-Picture Format index segment found in a buffer.
+     * @param app2 an APP2 segment
+     * @return the image locations, or an empty list if the segment is not a Multi-Picture Format segment
+     * @throws JpegSegmentFinderException if the index is corrupt
+     */
+    public static List<EmbeddedImage> mpfImages(JpegSegmentSlice app2) throws JpegSegmentFinderException {
+        return mpfImages(app2, app2.content());
+    }
+
+    /**
+     * Locates the images listed in a Multi-Picture Format index segment. Image
+     * offsets in the index are relative to the TIFF header in the segment, except
+     * that of the primary image, which is zero; the primary image is reported
+     * at offset zero.
+     * @param app2 an APP2 segment
+     * @param content the content of the segment, from its position to its limit
+     * @return the image locations, or an empty list if the segment is not a Multi-Picture Format segment
+     * @throws JpegSegmentFinderException if the index is corrupt
+     */
+    public static List<EmbeddedImage> mpfImages(JpegSegmentSpec app2, ByteBuffer content) throws JpegSegmentFinderException {
+        Tiff tiff = Tiff.open(app2, content, AppIdentifier.MPF);
+        if (tiff == null) {
+            return Collections.emptyList();
+        }
+        int ifd = tiff.firstIfdOffset();
+        int count = tiff.entryCount(ifd);
+        for (int i = 0; i < count; i++) {
+            int entry = ifd + 2 + i * IFD_ENTRY_LENGTH;
+            if (tiff.uint16(entry) == TAG_MP_ENTRY) {
+                long entriesLength = tiff.uint32(entry + 4);
+                if (entriesLength % MP_ENTRY_LENGTH != 0 || entriesLength <= 4) {
+                    throw new JpegSegmentFinderException("invalid MP entry length " + entriesLength);
+                }
+                long entries = tiff.uint32(entry + 8);
+                tiff.check(entries, entriesLength);
+                List<EmbeddedImage> images = new ArrayList<>();
+                for (int j = 0; j < entriesLength / MP_ENTRY_LENGTH; j++) {
+                    int mpEntry = (int) entries + j * MP_ENTRY_LENGTH;
+                    int attribute = (int) tiff.uint32(mpEntry);
+                    long size = tiff.uint32(mpEntry + 4);
+                    long dataOffset = tiff.uint32(mpEntry + 8);
+                    long offset = dataOffset == 0 ? 0 : tiff.base + dataOffset;
+                    images.add(new EmbeddedImage(EmbeddedImage.Kind.MPF_IMAGE, j, attribute, offset, size));
+                }
+                return images;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Minimal reader of a TIFF structure embedded in segment content.
+     */
+    private static final class Tiff {
+
+        private final ByteBuffer data;
+        /**
+         * Absolute offset of the TIFF header.
+         */
+        final long base;
+
+        private Tiff(ByteBuffer data, long base) {
+            this.data = data;
+            this.base = base;
+        }
+
+        static Tiff open(JpegSegmentSpec segment, ByteBuffer content, AppIdentifier identifier) {
+            byte[] signature = new byte[Math.min(content.remaining(), AppIdentifier.MAX_SIGNATURE_LENGTH)];
+            content.duplicate().get(signature);
+            if (AppIdentifier.identify(segment.marker, signature, 0, signature.length) != identifier) {
+                return null;
+            }
+            ByteBuffer data = content.duplicate();
+            ((Buffer) data).position(content.position() + identifier.prefixLength());
+            data = data.slice();
+            if (data.remaining() < 8) {
+                throw new JpegSegmentFinderException("TIFF header truncated");
+            }
+            if (data.get(0) == 'I' && data.get(1) == 'I') {
+                data.order(ByteOrder.LITTLE_ENDIAN);
+            } else if (data.get(0) == 'M' && data.get(1) == 'M') {
+                data.order(ByteOrder.BIG_ENDIAN);
+            } else {
+                throw new JpegSegmentFinderException("invalid TIFF byte order mark");
+            }
+            Tiff tiff = new Tiff(data, segment.contentOffset + identifier.prefixLength());
+            if (tiff.uint16(2) != 0x2A) {
+                throw new JpegSegmentFinderException("invalid TIFF header");
+            }
+            return tiff;
+        }
+
+        int length() {
+            return data.limit();
+        }
+
+        int firstIfdOffset() {
+            return ifdOffset(uint32(4));
+        }
+
+        int nextIfdOffset(int ifd) {
+            long next = uint32(ifd + 2 + entryCount(ifd) * IFD_ENTRY_LENGTH);
+            return next == 0 ? 0 : ifdOffset(next);
+        }
+
+        int entryCount(int ifd) {
+            int count = uint16(ifd);
+            check(ifd, 2 + (long) count * IFD_ENTRY_LENGTH + 4);
+            return count;
+        }
+
+        int uint16(int offset) {
+            check(offset, 2);
+            return data.getShort(offset) & 0xFFFF;
+        }
+
+        long uint32(int offset) {
+            check(offset, 4);
+            return data.getInt(offset) & 0xFFFFFFFFL;
+        }
+
+        void check(long offset, long length) {
+            if (offset < 0 || offset + length > data.limit()) {
+                throw new JpegSegmentFinderException("TIFF offset " + offset + " out of bounds");
+            }
+        }
+
+        private int ifdOffset(long offset) {
+            check(offset, 2);
+            return (int) offset;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Range source that reads from a URL using HTTP range requests. This works with
+ * object stores that serve objects over HTTP, including S3-compatible stores
+ * when given a presigned URL. The size of the resource is learned from the
+ * {@code Content-Range} header of the first response, so no separate request is
+ * made to obtain it if a range has already been read. If the server ignores
+ * range requests and responds with the whole resource, the requested range is
+ * extracted from the response body.
+ */
+public class HttpRangeSource implements RangeSource {
+
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("^bytes\\s+(?:\\d+-\\d+|\\*)/(\\d+)$");
+
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    private final URL url;
+    private final Map<String, String> requestHeaders;
+    private volatile long size = -1;
+
+    /**
+     * Constructs an instance.
+     * @param url the URL of the resource
+     */
+    public HttpRangeSource(URL url) {
+        this(url, Collections.emptyMap());
+    }
+
+    /**
+     * Constructs an instance that sends additional headers with each request.
+     * @param url the URL of the resource
+     * @param requestHeaders request headers, such as authorization headers
+     */
+    public HttpRangeSource(URL url, Map<String, String> requestHeaders) {
+        this.url = Objects.requireNonNull(url);
+        this.requestHeaders = Collections.unmodifiableMap(new LinkedHashMap<>(requestHeaders));
+    }
+
+    @Override
+    public ByteBuffer read(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset and length must be nonnegative");
+        }
+        if (length == 0 || (size >= 0 && offset >= size)) {
+            return ByteBuffer.allocate(0);
+        }
+        HttpURLConnection connection = open("GET");
+        try {
+            connection.setRequestProperty("Range", "bytes=" + offset + "-" + (offset + length - 1));
+            int status = connection.getResponseCode();
+            if (status == HTTP_RANGE_NOT_SATISFIABLE) {
+                updateSize(connection);
+                return ByteBuffer.allocate(0);
+            }
+            long skip;
+            if (status == HttpURLConnection.HTTP_PARTIAL) {
+                updateSize(connection);
+                skip = 0;
+            } else if (status == HttpURLConnection.HTTP_OK) {
+                // the server ignored the range; the body is the whole resource
+                long contentLength = connection.getContentLengthLong();
+                if (contentLength >= 0) {
+                    size = contentLength;
+                }
+                skip = offset;
+            } else {
+                throw new IOException("unexpected response status " + status + " from " + url);
+            }
+            try (InputStream in = connection.getInputStream()) {
+                return ByteBuffer.wrap(readRange(in, skip, length));
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public long size() throws IOException {
+        if (size < 0) {
+            HttpURLConnection connection = open("HEAD");
+            try {
+                int status = connection.getResponseCode();
+                if (status != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("unexpected response status " + status + " from " + url);
+                }
+                long contentLength = connection.getContentLengthLong();
+                if (contentLength < 0) {
+                    throw new IOException("size of resource is unknown: " + url);
+                }
+                size = contentLength;
+            } finally {
+                connection.disconnect();
+            }
+        }
+        return size;
+    }
+
+    private HttpURLConnection open(String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        requestHeaders.forEach(connection::setRequestProperty);
+        return connection;
+    }
+
+    private void updateSize(HttpURLConnection connection) {
+        String contentRange = connection.getHeaderField("Content-Range");
+        if (contentRange != null) {
+            Matcher m = CONTENT_RANGE_PATTERN.matcher(contentRange.trim());
+            if (m.find()) {
+                size = Long.parseLong(m.group(1));
+            }
+        }
+    }
+
+    private static byte[] readRange(InputStream in, long skip, int length) throws IOException {
+        while (skip > 0) {
+            long skipped = in.skip(skip);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    return new byte[0];
+                }
+                skipped = 1;
+            }
+            skip -= skipped;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(length, 64 * 1024));
+        byte[] buffer = new byte[8192];
+        int remaining = length;
+        int n;
+        while (remaining > 0 && (n = in.read(buffer, 0, Math.min(buffer.length, remaining))) != -1) {
+            out.write(buffer, 0, n);
+            remaining -= n;
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public String toString() {
+        return "HttpRangeSource{" + url + '}';
+    }
+}
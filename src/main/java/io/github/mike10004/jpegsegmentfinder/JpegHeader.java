@@ -0,0 +1,185 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Class that represents a summary of the frame header of a JPEG image and of
+ * the application segments that affect its interpretation.
+ * @see JpegHeaderProbe
+ */
+public class JpegHeader {
+
+    /**
+     * Class that represents a component of the frame.
+     */
+    public static class Component {
+
+        /**
+         * Component identifier.
+         */
+        public final int id;
+
+        /**
+         * Horizontal sampling factor.
+         */
+        public final int horizontalSampling;
+
+        /**
+         * Vertical sampling factor.
+         */
+        public final int verticalSampling;
+
+        /**
+         * Quantization table destination selector.
+         */
+        public final int quantizationTable;
+
+        /**
+         * Constructs a new instance.
+         * @param id component identifier
+         * @param horizontalSampling horizontal sampling factor
+         * @param verticalSampling vertical sampling factor
+         * @param quantizationTable quantization table selector
+         */
+        public Component(int id, int horizontalSampling, int verticalSampling, int quantizationTable) {
+            this.id = id;
+            this.horizontalSampling = horizontalSampling;
+            this.verticalSampling = verticalSampling;
+            this.quantizationTable = quantizationTable;
+        }
+
+        @Override
+        public String toString() {
+            return "Component{" +
+                    "id=" + id +
+                    ", sampling=" + horizontalSampling + "x" + verticalSampling +
+                    ", quantizationTable=" + quantizationTable +
+                    '}';
+        }
+    }
+
+    /**
+     * Value of {@link #adobeTransform} if there is no Adobe APP14 segment.
+     */
+    public static final int NO_ADOBE_TRANSFORM = -1;
+
+    /**
+     * Start-of-frame marker, which determines the coding process.
+     */
+    public final byte sofMarker;
+
+    /**
+     * Sample precision, in bits.
+     */
+    public final int precision;
+
+    /**
+     * Number of samples per line.
+     */
+    public final int width;
+
+    /**
+     * Number of lines. This is zero if the number of lines is defined by a DNL
+     * segment following the first scan, which the probe does not read.
+     */
+    public final int height;
+
+    /**
+     * Components of the frame.
+     */
+    public final List<Component> components;
+
+    /**
+     * Color transform code from the Adobe APP14 segment, or {@link #NO_ADOBE_TRANSFORM}.
+     * Zero means no transform (RGB or CMYK), 1 means YCbCr, and 2 means YCCK.
+     */
+    public final int adobeTransform;
+
+    /**
+     * Whether a JFIF APP0 segment precedes the frame header.
+     */
+    public final boolean jfif;
+
+    /**
+     * Whether an Exif APP1 segment precedes the frame header.
+     */
+    public final boolean exif;
+
+    /**
+     * Constructs a new instance.
+     * @param sofMarker start-of-frame marker
+     * @param precision sample precision
+     * @param width number of samples per line
+     * @param height number of lines
+     * @param components components of the frame
+     * @param adobeTransform Adobe color transform code
+     * @param jfif whether a JFIF segment is present
+     * @param exif whether an Exif segment is present
+     */
+    public JpegHeader(byte sofMarker, int precision, int width, int height, List<Component> components, int adobeTransform, boolean jfif, boolean exif) {
+        this.sofMarker = sofMarker;
+        this.precision = precision;
+        this.width = width;
+        this.height = height;
+        this.components = Collections.unmodifiableList(Objects.requireNonNull(components));
+        this.adobeTransform = adobeTransform;
+        this.jfif = jfif;
+        this.exif = exif;
+    }
+
+    /**
+     * Tests whether the image is coded with a progressive process.
+     * @return true if progressive
+     */
+    public boolean isProgressive() {
+        return (sofMarker & 0x03) == 2;
+    }
+
+    /**
+     * Tests whether the image is coded with a lossless process.
+     * @return true if lossless
+     */
+    public boolean isLossless() {
+        return (sofMarker & 0x03) == 3;
+    }
+
+    /**
+     * Tests whether the image is coded with arithmetic coding rather than Huffman coding.
+     * @return true if arithmetic coding is used
+     */
+    public boolean isArithmetic() {
+        return (sofMarker & 0x08) != 0;
+    }
+
+    /**
+     * Tests whether the image is coded with a hierarchical (differential) process.
+     * @return true if differential
+     */
+    public boolean isDifferential() {
+        return (sofMarker & 0x04) != 0;
+    }
+
+    /**
+     * Tests whether the image is coded with the baseline process.
+     * @return true if baseline
+     */
+    public boolean isBaseline() {
+        return sofMarker == (byte) 0xC0;
+    }
+
+    @Override
+    public String toString() {
+        return "JpegHeader{" +
+                String.format("SOF=0x%02X", sofMarker) +
+                ", precision=" + precision +
+                ", width=" + width +
+                ", height=" + height +
+                ", components=" + components +
+                ", adobeTransform=" + adobeTransform +
+                ", jfif=" + jfif +
+                ", exif=" + exif +
+                '}';
+    }
+}
@@ -0,0 +1,140 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Service class that reads the frame header of a JPEG image, in a single pass
+ * over the segment headers that stops at the start-of-frame segment. Only the
+ * start-of-frame segment and the first bytes of JFIF, Exif, and Adobe segments
+ * are read; the content of other segments is skipped. Instances are immutable
+ * and thread-safe.
+ */
+public class JpegHeaderProbe {
+
+    private static final byte MARKER_APP0 = (byte) 0xE0;
+    private static final byte MARKER_APP1 = (byte) 0xE1;
+    private static final byte MARKER_APP14 = (byte) 0xEE;
+    /**
+     * Length of the Adobe APP14 content: signature, version, two flag words, and transform.
+     */
+    private static final int ADOBE_LENGTH = 12;
+    /**
+     * Length of the frame header content: precision, lines, samples per line, component count.
+     */
+    private static final int FRAME_HEADER_LENGTH = 6;
+    private static final int MAX_COMPONENTS = 255;
+
+    private static final MarkerSet PROBE_MARKERS = MarkerSet.allSofn().union(MarkerSet.of(MARKER_APP0, MARKER_APP1, MARKER_APP14));
+
+    private final ScanLimits limits;
+
+    /**
+     * Constructs an instance without limits.
+     */
+    public JpegHeaderProbe() {
+        this(ScanLimits.none());
+    }
+
+    /**
+     * Constructs an instance that enforces limits on each probe.
+     * @param limits the limits
+     */
+    public JpegHeaderProbe(ScanLimits limits) {
+        this.limits = Objects.requireNonNull(limits);
+    }
+
+    /**
+     * Reads the frame header of a JPEG image from a stream. The stream is read
+     * only as far as the end of the start-of-frame segment, plus read-ahead.
+     * @param inputStream fresh input stream containing JPEG data
+     * @return the header summary
+     * @throws JpegSegmentFinderException if the data is not JPEG data, is corrupt,
+     * or ends or reaches the start-of-scan segment before a start-of-frame segment
+     * @throws IOException on I/O error
+     */
+    public JpegHeader probe(InputStream inputStream) throws JpegSegmentFinderException, IOException {
+        return probe(new StreamReader(inputStream));
+    }
+
+    /**
+     * Reads the frame header of a JPEG file.
+     * @param jpegFile pathname of a JPEG file
+     * @return the header summary
+     * @throws JpegSegmentFinderException if the data is not JPEG data, is corrupt,
+     * or ends or reaches the start-of-scan segment before a start-of-frame segment
+     * @throws IOException on I/O error
+     * @see #probe(InputStream)
+     */
+    public JpegHeader probe(Path jpegFile) throws JpegSegmentFinderException, IOException {
+        try (FileChannel channel = FileChannel.open(jpegFile, StandardOpenOption.READ)) {
+            return probe(new ChannelReader(channel));
+        }
+    }
+
+    /**
+     * Reads the frame header of a JPEG image in a buffer.
+     * @param buffer buffer positioned at the start of JPEG data
+     * @return the header summary
+     * @throws JpegSegmentFinderException if the data is not JPEG data, is corrupt,
+     * or ends or reaches the start-of-scan segment before a start-of-frame segment
+     * @throws IOException on I/O error
+     * @see #probe(InputStream)
+     */
+    public JpegHeader probe(ByteBuffer buffer) throws JpegSegmentFinderException, IOException {
+        return probe(new ByteBufferReader(buffer));
+    }
+
+    private JpegHeader probe(SequentialReader reader) throws IOException {
+        SegmentCursor cursor = new SegmentCursor(reader, PROBE_MARKERS, OccurrencePolicy.ALL, false, limits);
+        byte[] content = new byte[ADOBE_LENGTH];
+        boolean jfif = false, exif = false;
+        int adobeTransform = JpegHeader.NO_ADOBE_TRANSFORM;
+        while (cursor.next()) {
+            byte marker = cursor.marker();
+            if (marker == MARKER_APP0 || marker == MARKER_APP1) {
+                int n = cursor.readContent(content, 0, AppIdentifier.EXIF.prefixLength());
+                AppIdentifier identifier = AppIdentifier.identify(marker, content, 0, n);
+                jfif |= identifier == AppIdentifier.JFIF;
+                exif |= identifier == AppIdentifier.EXIF;
+            } else if (marker == MARKER_APP14) {
+                int n = cursor.readContent(content, 0, ADOBE_LENGTH);
+                if (n == ADOBE_LENGTH && AppIdentifier.identify(marker, content, 0, n) == AppIdentifier.ADOBE) {
+                    adobeTransform = content[ADOBE_LENGTH - 1] & 0xFF;
+                }
+            } else {
+                return readFrameHeader(cursor, marker, adobeTransform, jfif, exif);
+            }
+        }
+        throw new JpegSegmentFinderException("no start-of-frame segment found");
+    }
+
+    private static JpegHeader readFrameHeader(SegmentCursor cursor, byte marker, int adobeTransform, boolean jfif, boolean exif) throws IOException {
+        byte[] frame = new byte[FRAME_HEADER_LENGTH + 3 * MAX_COMPONENTS];
+        int n = cursor.readContent(frame, 0, FRAME_HEADER_LENGTH);
+        if (n < FRAME_HEADER_LENGTH) {
+            throw new JpegSegmentFinderException("start-of-frame segment too short");
+        }
+        int precision = frame[0] & 0xFF;
+        int height = ((frame[1] & 0xFF) << 8) | (frame[2] & 0xFF);
+        int width = ((frame[3] & 0xFF) << 8) | (frame[4] & 0xFF);
+        int count = frame[5] & 0xFF;
+        if (cursor.readContent(frame, FRAME_HEADER_LENGTH, 3 * count) < 3 * count) {
+            throw new JpegSegmentFinderException("start-of-frame segment too short for " + count + " components");
+        }
+        List<JpegHeader.Component> components = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int offset = FRAME_HEADER_LENGTH + 3 * i;
+            int sampling = frame[offset + 1] & 0xFF;
+            components.add(new JpegHeader.Component(frame[offset] & 0xFF, sampling >> 4, sampling & 0x0F, frame[offset + 2] & 0xFF));
+        }
+        return new JpegHeader(marker, precision, width, height, components, adobeTransform, jfif, exif);
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Class that represents the layout of a complete JPEG image, as determined by
+ * scanning through the entropy-coded image data. In addition to segments
+ * that precede the image data, the layout may include start-of-scan segments,
+ * segments between scans (as in progressive JPEGs), and the end-of-image marker.
+ * The content of a start-of-scan segment, as represented in the layout,
+ * comprises the scan header parameters and the entropy-coded data that follows
+ * them, up to the next marker.
+ */
+public class JpegLayout {
+
+    /**
+     * Segments that match the requested markers, in order of occurrence.
+     */
+    public final List<JpegSegmentSpec> segments;
+
+    /**
+     * Offset of the end-of-image marker, or -1 if the marker was not found.
+     */
+    public final long endOfImageOffset;
+
+    /**
+     * Offset of the data following the end-of-image marker, or -1 if the
+     * end-of-image marker was not found.
+     */
+    public final long trailingOffset;
+
+    /**
+     * Length of the data following the end-of-image marker. Such data may be
+     * a secondary image, a vendor-specific trailer, or something else entirely.
+     */
+    public final long trailingLength;
+
+    /**
+     * Constructs a new instance.
+     * @param segments segments found
+     * @param endOfImageOffset offset of the end-of-image marker, or -1
+     * @param trailingOffset offset of the data following the end-of-image marker, or -1
+     * @param trailingLength length of data following the end-of-image marker
+     */
+    public JpegLayout(List<JpegSegmentSpec> segments, long endOfImageOffset, long trailingOffset, long trailingLength) {
+        this.segments = Collections.unmodifiableList(Objects.requireNonNull(segments));
+        this.endOfImageOffset = endOfImageOffset;
+        this.trailingOffset = trailingOffset;
+        this.trailingLength = trailingLength;
+    }
+
+    /**
+     * Tests whether the end-of-image marker was found.
+     * @return true if the end-of-image marker was found
+     */
+    public boolean hasEndOfImage() {
+        return endOfImageOffset >= 0;
+    }
+
+    /**
+     * Tests whether there is data following the end-of-image marker.
+     * @return true if there is trailing data
+     */
+    public boolean hasTrailingData() {
+        return trailingLength > 0;
+    }
+
+    /**
+     * Returns the start-of-scan segments of the layout.
+     * @return list of start-of-scan segments; empty unless start-of-scan segments were requested
+     */
+    public List<JpegSegmentSpec> scans() {
+        return segments.stream().filter(segment -> segment.marker == SegmentCursor.SEGMENT_SOS).collect(Collectors.toList());
+    }
+
+    @Override
+    public String toString() {
+        return "JpegLayout{" +
+                "segments=" + segments.size() +
+                ", endOfImageOffset=" + endOfImageOffset +
+                ", trailingOffset=" + trailingOffset +
+                ", trailingLength=" + trailingLength +
+                '}';
+    }
+}
@@ -0,0 +1,121 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Parser that finds segments in JPEG data that is pushed to it in chunks, as it
+ * arrives from a non-blocking source. Markers and length fields may be split
+ * across chunks in any way. Matching segments are reported as soon as their
+ * headers are complete, so a caller can act on a segment before the rest of the
+ * data arrives. The parser retains only a few bytes of state, and never buffers
+ * segment content: content that arrives in a chunk is passed over, and a caller
+ * that can discard data without reading it may skip the content instead of
+ * feeding it; see {@link #pendingSkip()}.
+ *
+ * <p>Parsing finishes at the start-of-scan marker, or when the visitor returns
+ * false. Offsets are relative to the first byte fed to the parser.
+ *
+ * <p>A parser may be constructed with {@link ScanLimits}, which it enforces as
+ * the data is fed. The scan deadline is measured from the first chunk fed and
+ * is checked each time a chunk is fed.
+ *
+ * <p>Instances of this class are not thread-safe.
+ */
+public final class JpegPushParser {
+
+    private final SegmentParser parser;
+
+    /**
+     * Constructs an instance that reports matching segments to a visitor.
+     * @param segmentMarkers set of segment marker bytes for which segments are to be reported
+     * @param visitor the visitor; parsing finishes when it returns false
+     */
+    public JpegPushParser(MarkerSet segmentMarkers, SegmentVisitor visitor) {
+        this(segmentMarkers, visitor, ScanLimits.none());
+    }
+
+    /**
+     * Constructs an instance that reports matching segments to a visitor and
+     * enforces limits on the work performed by the scan.
+     * @param segmentMarkers set of segment marker bytes for which segments are to be reported
+     * @param visitor the visitor; parsing finishes when it returns false
+     * @param limits limits on the work performed by the scan
+     */
+    public JpegPushParser(MarkerSet segmentMarkers, SegmentVisitor visitor, ScanLimits limits) {
+        parser = new SegmentParser(segmentMarkers, visitor, limits);
+    }
+
+    /**
+     * Creates an instance that reports each matching segment to a consumer.
+     * @param segmentMarkers set of segment marker bytes for which segments are to be reported
+     * @param consumer consumer of segments
+     * @return a new parser
+     */
+    public static JpegPushParser emitting(MarkerSet segmentMarkers, Consumer<? super JpegSegmentSpec> consumer) {
+        Objects.requireNonNull(consumer);
+        return new JpegPushParser(segmentMarkers, (marker, headerOffset, contentOffset, contentLength) -> {
+            consumer.accept(new JpegSegmentSpec(marker, headerOffset, contentOffset, contentLength));
+            return true;
+        });
+    }
+
+    /**
+     * Consumes the next chunk of data. All remaining bytes of the chunk are consumed
+     * unless parsing finishes, in which case the chunk's position is left immediately
+     * after the last byte that was parsed. Chunks fed after parsing finishes are
+     * not consumed.
+     * @param chunk buffer containing the next chunk of data, between its position and limit
+     * @throws JpegSegmentFinderException if the data is verifiably not JPEG data or is corrupt
+     * @throws ScanLimitExceededException if the scan exceeds a limit
+     */
+    public void feed(ByteBuffer chunk) throws JpegSegmentFinderException {
+        parser.feed(chunk);
+    }
+
+    /**
+     * Signals the end of the data.
+     * @throws EOFException if the data ended before parsing finished, unless it
+     * ended within the content of a segment that was not reported
+     */
+    public void finish() throws EOFException {
+        parser.finish();
+    }
+
+    /**
+     * Tests whether parsing has finished.
+     * @return true if no more data is required
+     */
+    public boolean isDone() {
+        return parser.isDone();
+    }
+
+    /**
+     * Returns the number of bytes of segment content that the parser would pass
+     * over next. A caller may discard up to this many bytes of the data without
+     * feeding them, and then notify the parser with {@link #skipped(long)}.
+     * @return number of bytes that may be skipped
+     */
+    public long pendingSkip() {
+        return parser.pendingSkip();
+    }
+
+    /**
+     * Notifies this parser that bytes were discarded by the caller rather than fed.
+     * @param n the number of bytes discarded; must not exceed {@link #pendingSkip()}
+     */
+    public void skipped(long n) {
+        parser.skipped(n);
+    }
+
+    /**
+     * Returns the position of the next byte to be fed, relative to the first byte
+     * fed to the parser.
+     * @return the position
+     */
+    public long position() {
+        return parser.position();
+    }
+}
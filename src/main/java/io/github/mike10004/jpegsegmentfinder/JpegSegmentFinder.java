@@ -20,36 +20,101 @@
  */
 package io.github.mike10004.jpegsegmentfinder;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Service class that finds metadata segments in a JPEG input stream.
  *
+ * <p>Instances are immutable and thread-safe: a single instance may be shared
+ * by any number of threads, including virtual threads, and each scan uses only
+ * objects created for it or taken from the instance's buffer pool. A scan
+ * listener passed to an instance is invoked concurrently by the threads
+ * performing scans, so it must be thread-safe itself. Readers, iterators,
+ * streams, and other objects returned by an instance are not thread-safe.
+ * Use {@link #builder()} to configure an instance that reuses its block buffers.
+ *
  * @author Drew Noakes https://drewnoakes.com
  * @author Mike Chaberski https://github.com/mike10004
  */
 public class JpegSegmentFinder
 {
     /**
-     * The 0xFF byte that signals the start of a segment.
+     * Size of the block buffer used when scanning through image data in a file.
      */
-    private static final byte SEGMENT_IDENTIFIER = (byte) 0xFF;
+    private static final int LAYOUT_BUFFER_SIZE = 64 * 1024;
 
+    private final ScanListener listener;
+    private final ScanLimits limits;
     /**
-     * Private, because this segment crashes my algorithm, and searching for it doesn't work (yet).
+     * Pool of block buffers, or null if buffers are allocated for each scan.
      */
-    private static final byte SEGMENT_SOS = (byte) 0xDA;
+    private final BufferPool bufferPool;
+
+    /**
+     * Constructs an instance without a scan listener.
+     */
+    public JpegSegmentFinder() {
+        this(null);
+    }
 
     /**
-     * Private, because one wouldn't search for it.
+     * Constructs an instance that notifies a listener at the end of each scan.
+     * Scans performed by the methods that return a complete result and by the
+     * {@code visitSegments} methods are reported; scans performed through
+     * iterators, streams, and asynchronous channels are not.
+     * @param listener the listener, or null for none
      */
-    private static final byte MARKER_EOI = (byte) 0xD9;
+    public JpegSegmentFinder(ScanListener listener) {
+        this(listener, ScanLimits.none());
+    }
+
+    /**
+     * Constructs an instance that enforces limits on each scan. Use limits when
+     * scanning untrusted input, so that corrupt or hostile data cannot make a
+     * scan read an unbounded amount of data.
+     * @param listener the listener, or null for none
+     * @param limits limits on the work performed by each scan
+     * @see ScanLimits
+     */
+    public JpegSegmentFinder(ScanListener listener, ScanLimits limits) {
+        this(listener, limits, null);
+    }
+
+    private JpegSegmentFinder(ScanListener listener, ScanLimits limits, BufferPool bufferPool) {
+        this.listener = listener;
+        this.limits = Objects.requireNonNull(limits);
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Creates a new builder of finder instances.
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
 
     /**
      * Find segments matching the given segment marker bytes. If the
@@ -58,6 +123,29 @@ public class JpegSegmentFinder
      * This method does not close the given input stream, and probably doesn't
      * consume the stream until exhausted. Results are unpredictable if
      * the input stream provides non-JPEG data or corrupt JPEG data.
+     * To continue reading the stream from a known position after the scan, use
+     * {@link #findSegmentsThenStop(InputStream, MarkerSet, StopPoint)}.
+     *
+     * @param inputStream fresh input stream containing JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @return a list of segments
+     * @throws JpegSegmentFinderException if the input stream is verifiably not positioned at the
+     * beginning of a byte sequence constituting a JPEG image, or if the JPEG data is otherwise
+     * verifiably corrupt or inconsistent
+     */
+    public List<JpegSegmentSpec> findSegments(InputStream inputStream, MarkerSet segmentMarkers) throws JpegSegmentFinderException, IOException {
+        byte[] buffer = acquireBuffer(StreamReader.DEFAULT_BUFFER_SIZE);
+        try {
+            return findSegments(new StreamReader(inputStream, buffer), segmentMarkers);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Find segments matching the given segment marker bytes.
+     * Equivalent to {@link #findSegments(InputStream, MarkerSet)} with a marker set
+     * containing the given markers.
      *
      * @param inputStream fresh input stream containing JPEG data
      * @param segmentMarkers set of segment marker bytes for which segments are to be returned
@@ -67,73 +155,837 @@ public class JpegSegmentFinder
      * verifiably corrupt or inconsistent
      */
     public List<JpegSegmentSpec> findSegments(InputStream inputStream, Set<Byte> segmentMarkers) throws JpegSegmentFinderException, IOException {
-        return findSegments(new StreamReader(inputStream), segmentMarkers);
+        return findSegments(inputStream, MarkerSet.copyOf(segmentMarkers));
     }
 
-    private static List<JpegSegmentSpec> findSegments(final SequentialReader reader, Set<Byte> segmentTypeBytes) throws JpegSegmentFinderException, IOException {
-        Objects.requireNonNull(segmentTypeBytes);
-        if (segmentTypeBytes.isEmpty()) {
+    /**
+     * Find segments matching the given segment marker bytes in a file. The file
+     * is read through a {@link FileChannel}, so segments that are not of interest are
+     * skipped by repositioning rather than by reading and discarding their content.
+     *
+     * @param jpegFile pathname of a JPEG file
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @return a list of segments
+     * @throws JpegSegmentFinderException if the file verifiably does not contain
+     * JPEG data or the JPEG data is verifiably corrupt or inconsistent
+     * @see #findSegments(InputStream, MarkerSet)
+     */
+    public List<JpegSegmentSpec> findSegments(Path jpegFile, MarkerSet segmentMarkers) throws JpegSegmentFinderException, IOException {
+        try (FileChannel channel = FileChannel.open(jpegFile, StandardOpenOption.READ)) {
+            return findSegments(channel, segmentMarkers);
+        }
+    }
+
+    /**
+     * Find segments matching the given segment marker bytes in a file.
+     * Equivalent to {@link #findSegments(Path, MarkerSet)} with a marker set
+     * containing the given markers.
+     *
+     * @param jpegFile pathname of a JPEG file
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @return a list of segments
+     * @throws JpegSegmentFinderException if the file verifiably does not contain
+     * JPEG data or the JPEG data is verifiably corrupt or inconsistent
+     */
+    public List<JpegSegmentSpec> findSegments(Path jpegFile, Set<Byte> segmentMarkers) throws JpegSegmentFinderException, IOException {
+        return findSegments(jpegFile, MarkerSet.copyOf(segmentMarkers));
+    }
+
+    /**
+     * Find segments matching the given segment marker bytes in a channel. The JPEG
+     * data is expected to begin at the channel's current position, and the offsets
+     * of the returned segments are relative to that position. This method does
+     * not close the channel, and the position of the channel upon return is unspecified.
+     *
+     * @param channel channel positioned at the start of JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @return a list of segments
+     * @throws JpegSegmentFinderException if the channel data verifiably does not constitute
+     * a JPEG image, or if the JPEG data is otherwise verifiably corrupt or inconsistent
+     * @see #findSegments(InputStream, MarkerSet)
+     */
+    public List<JpegSegmentSpec> findSegments(SeekableByteChannel channel, MarkerSet segmentMarkers) throws JpegSegmentFinderException, IOException {
+        byte[] buffer = acquireBuffer(ChannelReader.DEFAULT_BUFFER_SIZE);
+        try {
+            return findSegments(new ChannelReader(channel, buffer), segmentMarkers);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Find segments matching the given segment marker bytes in a channel.
+     * Equivalent to {@link #findSegments(SeekableByteChannel, MarkerSet)} with a marker set
+     * containing the given markers.
+     *
+     * @param channel channel positioned at the start of JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @return a list of segments
+     * @throws JpegSegmentFinderException if the channel data verifiably does not constitute
+     * a JPEG image, or if the JPEG data is otherwise verifiably corrupt or inconsistent
+     */
+    public List<JpegSegmentSpec> findSegments(SeekableByteChannel channel, Set<Byte> segmentMarkers) throws JpegSegmentFinderException, IOException {
+        return findSegments(channel, MarkerSet.copyOf(segmentMarkers));
+    }
+
+    /**
+     * Find segments matching the given segment marker bytes in a buffer. The JPEG
+     * data is expected to begin at the buffer's position, and the offsets of the
+     * returned segments are relative to that position. The buffer's position, limit,
+     * and content are not modified, and no segment content is copied; each returned
+     * segment provides read-only views of the buffer. This is an efficient way to
+     * access segments of a file that has been mapped into memory with
+     * {@link FileChannel#map(FileChannel.MapMode, long, long)}.
+     *
+     * @param buffer buffer positioned at the start of JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @return a list of segments
+     * @throws JpegSegmentFinderException if the buffer data verifiably does not constitute
+     * a JPEG image, or if the JPEG data is otherwise verifiably corrupt or inconsistent
+     * @see #findSegments(InputStream, MarkerSet)
+     */
+    public List<JpegSegmentSlice> findSegments(ByteBuffer buffer, MarkerSet segmentMarkers) throws JpegSegmentFinderException, IOException {
+        Objects.requireNonNull(segmentMarkers);
+        if (segmentMarkers.isEmpty()) {
             return Collections.emptyList();
         }
-        // Must be big-endian
-        assert (reader.isMotorolaByteOrder());
+        List<JpegSegmentSlice> slices = new ArrayList<>();
+        scan(new ByteBufferReader(buffer), segmentMarkers, (marker, headerOffset, contentOffset, contentLength) -> {
+            slices.add(new JpegSegmentSlice(buffer, marker, headerOffset, contentOffset, contentLength));
+            return true;
+        });
+        return slices;
+    }
+
+    /**
+     * Find segments matching the given segment marker bytes in a buffer.
+     * Equivalent to {@link #findSegments(ByteBuffer, MarkerSet)} with a marker set
+     * containing the given markers.
+     *
+     * @param buffer buffer positioned at the start of JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @return a list of segments
+     * @throws JpegSegmentFinderException if the buffer data verifiably does not constitute
+     * a JPEG image, or if the JPEG data is otherwise verifiably corrupt or inconsistent
+     */
+    public List<JpegSegmentSlice> findSegments(ByteBuffer buffer, Set<Byte> segmentMarkers) throws JpegSegmentFinderException, IOException {
+        return findSegments(buffer, MarkerSet.copyOf(segmentMarkers));
+    }
+
+    /**
+     * Find segments matching the given segment marker bytes in a range source, such
+     * as an object in an object store. The source is read through a block cache
+     * whose first fetch covers the header area of a typical JPEG file, so in the
+     * common case only one range is requested. Further ranges are requested only
+     * if the chain of segment headers extends beyond the first fetch, and segment
+     * content that is not of interest is never fetched unless it lies within a block
+     * that contains a header.
+     *
+     * @param source source of JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @return a list of segments
+     * @throws JpegSegmentFinderException if the source data verifiably does not constitute
+     * a JPEG image, or if the JPEG data is otherwise verifiably corrupt or inconsistent
+     * @see #findSegments(InputStream, MarkerSet)
+     */
+    public List<JpegSegmentSpec> findSegments(RangeSource source, MarkerSet segmentMarkers) throws JpegSegmentFinderException, IOException {
+        return findSegments(new RangeReader(source), segmentMarkers);
+    }
+
+    /**
+     * Find segments in a complete JPEG image, scanning through the entropy-coded
+     * image data rather than stopping at the first start-of-scan segment. This finds
+     * the later scans of progressive JPEGs and the segments between them, the
+     * end-of-image marker, and any data appended after the end of the image.
+     * Stuffed zero bytes and restart markers within entropy-coded data are skipped.
+     * Include the start-of-scan marker (0xDA) or the end-of-image marker (0xD9) among
+     * the requested markers to have those segments reported. Because this method reads
+     * the whole image, it consumes the input stream until exhausted.
+     *
+     * @param inputStream fresh input stream containing JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @return the layout of the image
+     * @throws JpegSegmentFinderException if the input stream is verifiably not positioned at the
+     * beginning of a byte sequence constituting a JPEG image, or if the JPEG data is otherwise
+     * verifiably corrupt or inconsistent
+     */
+    public JpegLayout findLayout(InputStream inputStream, MarkerSet segmentMarkers) throws JpegSegmentFinderException, IOException {
+        byte[] buffer = acquireBuffer(StreamReader.DEFAULT_BUFFER_SIZE);
+        try {
+            return findLayout(new StreamReader(inputStream, buffer), segmentMarkers);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Find segments in a complete JPEG image in a file, scanning through the entropy-coded
+     * image data. The image data is read in large blocks and searched for markers a word at a time.
+     *
+     * @param jpegFile pathname of a JPEG file
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @return the layout of the image
+     * @throws JpegSegmentFinderException if the file verifiably does not contain
+     * JPEG data or the JPEG data is verifiably corrupt or inconsistent
+     * @see #findLayout(InputStream, MarkerSet)
+     */
+    public JpegLayout findLayout(Path jpegFile, MarkerSet segmentMarkers) throws JpegSegmentFinderException, IOException {
+        try (FileChannel channel = FileChannel.open(jpegFile, StandardOpenOption.READ)) {
+            byte[] buffer = acquireBuffer(LAYOUT_BUFFER_SIZE);
+            try {
+                return findLayout(new ChannelReader(channel, buffer), segmentMarkers);
+            } finally {
+                releaseBuffer(buffer);
+            }
+        }
+    }
+
+    /**
+     * Find segments in a complete JPEG image in a buffer, scanning through the entropy-coded
+     * image data. This is an efficient way to scan a file that has been mapped into memory.
+     *
+     * @param buffer buffer positioned at the start of JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @return the layout of the image
+     * @throws JpegSegmentFinderException if the buffer data verifiably does not constitute
+     * a JPEG image, or if the JPEG data is otherwise verifiably corrupt or inconsistent
+     * @see #findLayout(InputStream, MarkerSet)
+     */
+    public JpegLayout findLayout(ByteBuffer buffer, MarkerSet segmentMarkers) throws JpegSegmentFinderException, IOException {
+        return findLayout(new ByteBufferReader(buffer), segmentMarkers);
+    }
+
+    /**
+     * Find application segments whose content has any of the given identifiers.
+     * Application segments that share a marker, such as the APP1 segments that
+     * contain Exif and XMP data, are distinguished by the signature at the start
+     * of their content. The signature is read during the scan, so the segments
+     * need not be read again to be classified. Include {@link AppIdentifier#UNKNOWN}
+     * to also find application segments with no known signature.
+     *
+     * @param inputStream fresh input stream containing JPEG data
+     * @param identifiers identifiers of segments to be returned
+     * @return a list of segments
+     * @throws JpegSegmentFinderException if the input stream is verifiably not positioned at the
+     * beginning of a byte sequence constituting a JPEG image, or if the JPEG data is otherwise
+     * verifiably corrupt or inconsistent
+     */
+    public List<AppSegmentSpec> findAppSegments(InputStream inputStream, Set<AppIdentifier> identifiers) throws JpegSegmentFinderException, IOException {
+        byte[] buffer = acquireBuffer(StreamReader.DEFAULT_BUFFER_SIZE);
+        try {
+            return findAppSegments(new StreamReader(inputStream, buffer), identifiers);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Find application segments in a file whose content has any of the given identifiers.
+     *
+     * @param jpegFile pathname of a JPEG file
+     * @param identifiers identifiers of segments to be returned
+     * @return a list of segments
+     * @throws JpegSegmentFinderException if the file data verifiably does not constitute
+     * a JPEG image, or if the JPEG data is otherwise verifiably corrupt or inconsistent
+     * @see #findAppSegments(InputStream, Set)
+     */
+    public List<AppSegmentSpec> findAppSegments(Path jpegFile, Set<AppIdentifier> identifiers) throws JpegSegmentFinderException, IOException {
+        try (FileChannel channel = FileChannel.open(jpegFile, StandardOpenOption.READ)) {
+            byte[] buffer = acquireBuffer(ChannelReader.DEFAULT_BUFFER_SIZE);
+            try {
+                return findAppSegments(new ChannelReader(channel, buffer), identifiers);
+            } finally {
+                releaseBuffer(buffer);
+            }
+        }
+    }
+
+    /**
+     * Find application segments in a buffer whose content has any of the given identifiers.
+     *
+     * @param buffer buffer positioned at the start of JPEG data
+     * @param identifiers identifiers of segments to be returned
+     * @return a list of segments
+     * @throws JpegSegmentFinderException if the buffer data verifiably does not constitute
+     * a JPEG image, or if the JPEG data is otherwise verifiably corrupt or inconsistent
+     * @see #findAppSegments(InputStream, Set)
+     */
+    public List<AppSegmentSpec> findAppSegments(ByteBuffer buffer, Set<AppIdentifier> identifiers) throws JpegSegmentFinderException, IOException {
+        return findAppSegments(new ByteBufferReader(buffer), identifiers);
+    }
+
+    /**
+     * Find segments matching the given segment marker bytes, without failing on
+     * corrupt data or exceeded limits. Instead of throwing an exception, the scan
+     * stops and returns the segments found so far, along with the reason it
+     * stopped. This is the mode to use for untrusted input, in combination with
+     * the limits passed to {@link #JpegSegmentFinder(ScanListener, ScanLimits)}.
+     *
+     * @param inputStream fresh input stream containing JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @return the scan report
+     * @throws IOException on I/O error other than unexpected end of data
+     */
+    public ScanReport findSegmentsLeniently(InputStream inputStream, MarkerSet segmentMarkers) throws IOException {
+        byte[] buffer = acquireBuffer(StreamReader.DEFAULT_BUFFER_SIZE);
+        try {
+            return findSegmentsLeniently(new StreamReader(inputStream, buffer), segmentMarkers);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Find segments matching the given segment marker bytes in a file, without failing on
+     * corrupt data or exceeded limits.
+     *
+     * @param jpegFile pathname of a JPEG file
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @return the scan report
+     * @throws IOException on I/O error other than unexpected end of data
+     * @see #findSegmentsLeniently(InputStream, MarkerSet)
+     */
+    public ScanReport findSegmentsLeniently(Path jpegFile, MarkerSet segmentMarkers) throws IOException {
+        try (FileChannel channel = FileChannel.open(jpegFile, StandardOpenOption.READ)) {
+            byte[] buffer = acquireBuffer(ChannelReader.DEFAULT_BUFFER_SIZE);
+            try {
+                return findSegmentsLeniently(new ChannelReader(channel, buffer), segmentMarkers);
+            } finally {
+                releaseBuffer(buffer);
+            }
+        }
+    }
+
+    /**
+     * Find segments matching the given segment marker bytes in a buffer, without failing on
+     * corrupt data or exceeded limits.
+     *
+     * @param buffer buffer positioned at the start of JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @return the scan report
+     * @throws IOException on I/O error other than unexpected end of data
+     * @see #findSegmentsLeniently(InputStream, MarkerSet)
+     */
+    public ScanReport findSegmentsLeniently(ByteBuffer buffer, MarkerSet segmentMarkers) throws IOException {
+        return findSegmentsLeniently(new ByteBufferReader(buffer), segmentMarkers);
+    }
+
+    /**
+     * Find the first segment for each of the given segment marker bytes, and stop
+     * as soon as the last of them is found. The returned object specifies the
+     * exact position at which the scan stopped and provides a stream positioned
+     * there, so the caller can read the content of the last segment found
+     * without reopening the source. This is useful for sources that cannot be
+     * reread, such as request bodies and pipes.
+     *
+     * <p>Bytes that the scan reads ahead of the stop position are pushed back
+     * onto the returned stream, so the given input stream must not be used
+     * directly afterwards. The content of segments other than the last one
+     * found has already been consumed.
+     *
+     * @param inputStream fresh input stream containing JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be found
+     * @param stopPoint point within the last segment found at which to stop
+     * @return the segments found and the positioned stream
+     * @throws JpegSegmentFinderException if the input stream is verifiably not positioned at the
+     * beginning of a byte sequence constituting a JPEG image, or if the JPEG data is otherwise
+     * verifiably corrupt or inconsistent
+     */
+    public PositionedStream findSegmentsThenStop(InputStream inputStream, MarkerSet segmentMarkers, StopPoint stopPoint) throws JpegSegmentFinderException, IOException {
+        Objects.requireNonNull(stopPoint);
+        StreamReader reader = new StreamReader(inputStream);
+        SegmentCursor cursor = new SegmentCursor(reader, segmentMarkers, OccurrencePolicy.FIRST, false, limits);
+        long startTime = scanStarted();
+        List<JpegSegmentSpec> segments = new ArrayList<>();
+        MarkerSet remaining = segmentMarkers;
+        try {
+            while (!remaining.isEmpty() && cursor.next()) {
+                segments.add(cursor.toSpec());
+                remaining = remaining.minus(MarkerSet.of(cursor.marker()));
+            }
+        } catch (IOException | RuntimeException e) {
+            scanEnded(reader, cursor, startTime, e);
+            throw e;
+        }
+        scanEnded(reader, cursor, startTime, null);
+        boolean complete = remaining.isEmpty();
+        long position = reader.getPosition();
+        byte[] readAhead = reader.takeBuffered();
+        byte[] pushback = readAhead;
+        if (complete && !segments.isEmpty() && stopPoint == StopPoint.HEADER) {
+            // the header bytes are known, so they need not have been retained
+            long length = cursor.contentLength() + 2;
+            pushback = new byte[readAhead.length + 4];
+            pushback[0] = SegmentCursor.SEGMENT_IDENTIFIER;
+            pushback[1] = cursor.marker();
+            pushback[2] = (byte) (length >> 8);
+            pushback[3] = (byte) length;
+            System.arraycopy(readAhead, 0, pushback, 4, readAhead.length);
+            position -= 4;
+        }
+        PushbackInputStream stream = new PushbackInputStream(inputStream, Math.max(1, pushback.length));
+        stream.unread(pushback);
+        return new PositionedStream(segments, position, stream, complete);
+    }
 
-        // first two bytes should be JPEG magic number
-        final int magicNumber = reader.getUInt16();
-        if (magicNumber != 0xFFD8) {
-            throw new JpegSegmentFinderException("JPEG data is expected to begin with 0xFFD8 (ÿØ) not 0x" + Integer.toHexString(magicNumber));
+    /**
+     * Find segments matching the given segment marker bytes in a file, asynchronously.
+     * The scan follows the same chain of segment headers as
+     * {@link #findSegments(Path, MarkerSet)}, but each header is read with a
+     * positional asynchronous read, and no thread is blocked between reads. The
+     * finder's limits are enforced, and its listener is notified on the thread
+     * that completes the scan, before the returned future completes. The
+     * file is closed when the returned future completes.
+     *
+     * @param jpegFile pathname of a JPEG file
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @return a future that completes with a list of segments, or completes exceptionally
+     * with {@link JpegSegmentFinderException} if the file verifiably does not contain JPEG
+     * data or is corrupt, or with {@link IOException} if an I/O error occurs
+     */
+    public CompletableFuture<List<JpegSegmentSpec>> findSegmentsAsync(Path jpegFile, MarkerSet segmentMarkers) {
+        AsynchronousFileChannel channel;
+        try {
+            channel = AsynchronousFileChannel.open(jpegFile, StandardOpenOption.READ);
+        } catch (IOException | RuntimeException e) {
+            CompletableFuture<List<JpegSegmentSpec>> failure = new CompletableFuture<>();
+            failure.completeExceptionally(e);
+            return failure;
         }
+        return findSegmentsAsync(channel, segmentMarkers).whenComplete((segments, error) -> {
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+            }
+        });
+    }
+
+    /**
+     * Find segments matching the given segment marker bytes in a file channel, asynchronously.
+     * The JPEG data is expected to begin at the start of the file. This method does not
+     * close the channel.
+     *
+     * @param channel channel of a JPEG file
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @return a future that completes with a list of segments
+     * @see #findSegmentsAsync(Path, MarkerSet)
+     */
+    public CompletableFuture<List<JpegSegmentSpec>> findSegmentsAsync(AsynchronousFileChannel channel, MarkerSet segmentMarkers) {
+        return new AsyncSegmentScan(channel, segmentMarkers, ChannelReader.DEFAULT_BUFFER_SIZE, limits, listener).start();
+    }
 
+    /**
+     * Returns an iterator over segments matching the given segment marker bytes.
+     * The iterator is lazy: the input stream is read only as far as necessary to
+     * find the next segment when the iterator is advanced. With the
+     * {@link OccurrencePolicy#FIRST} policy, the iterator reads nothing further
+     * once a segment has been found for each requested marker. This method does
+     * not close the given input stream.
+     *
+     * <p>The iterator's methods throw {@link UncheckedIOException} if an I/O error
+     * occurs and {@link JpegSegmentFinderException} if the data is verifiably not
+     * JPEG data or is corrupt.
+     *
+     * <p>The finder's listener is notified when the iterator reports that it has
+     * no more segments or throws an exception. An iteration that is abandoned
+     * before then is not reported. The elapsed time of an iteration is measured
+     * from the creation of the iterator, so it includes time the caller spends
+     * between advances.
+     *
+     * @param inputStream fresh input stream containing JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @param policy policy that determines which occurrences of each marker are returned
+     * @return an iterator over segments
+     * @see #findSegments(InputStream, MarkerSet)
+     */
+    public Iterator<JpegSegmentSpec> iterateSegments(InputStream inputStream, MarkerSet segmentMarkers, OccurrencePolicy policy) {
+        return iterate(new StreamReader(inputStream), segmentMarkers, policy, SegmentCursor::toSpec);
+    }
+
+    /**
+     * Returns an iterator over segments matching the given segment marker bytes in a channel.
+     *
+     * @param channel channel positioned at the start of JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @param policy policy that determines which occurrences of each marker are returned
+     * @return an iterator over segments
+     * @throws IOException if the channel position cannot be determined
+     * @see #iterateSegments(InputStream, MarkerSet, OccurrencePolicy)
+     * @see #findSegments(SeekableByteChannel, MarkerSet)
+     */
+    public Iterator<JpegSegmentSpec> iterateSegments(SeekableByteChannel channel, MarkerSet segmentMarkers, OccurrencePolicy policy) throws IOException {
+        return iterate(new ChannelReader(channel), segmentMarkers, policy, SegmentCursor::toSpec);
+    }
+
+    /**
+     * Returns an iterator over segments matching the given segment marker bytes in a buffer.
+     *
+     * @param buffer buffer positioned at the start of JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @param policy policy that determines which occurrences of each marker are returned
+     * @return an iterator over segments
+     * @see #iterateSegments(InputStream, MarkerSet, OccurrencePolicy)
+     * @see #findSegments(ByteBuffer, MarkerSet)
+     */
+    public Iterator<JpegSegmentSlice> iterateSegments(ByteBuffer buffer, MarkerSet segmentMarkers, OccurrencePolicy policy) {
+        return iterate(new ByteBufferReader(buffer), segmentMarkers, policy,
+                cursor -> new JpegSegmentSlice(buffer, cursor.marker(), cursor.headerOffset(), cursor.contentOffset(), cursor.contentLength()));
+    }
+
+    private <T> Iterator<T> iterate(SequentialReader reader, MarkerSet segmentMarkers, OccurrencePolicy policy, Function<? super SegmentCursor, ? extends T> transform) {
+        SegmentCursor cursor = new SegmentCursor(reader, segmentMarkers, policy, false, limits);
+        if (listener == null) {
+            return new SegmentIterator<>(cursor, transform);
+        }
+        long startTime = scanStarted();
+        return new SegmentIterator<>(cursor, transform, exception -> scanEnded(reader, cursor, startTime, exception));
+    }
+
+    /**
+     * Returns a sequential stream of segments matching the given segment marker bytes.
+     * The stream is lazy in the same way as the iterator returned by
+     * {@link #iterateSegments(InputStream, MarkerSet, OccurrencePolicy)}, so
+     * short-circuiting operations such as {@link Stream#findFirst()} stop reading
+     * the input stream early. Closing the returned stream does not close the input stream.
+     *
+     * @param inputStream fresh input stream containing JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @param policy policy that determines which occurrences of each marker are returned
+     * @return a stream of segments
+     */
+    public Stream<JpegSegmentSpec> streamSegments(InputStream inputStream, MarkerSet segmentMarkers, OccurrencePolicy policy) {
+        return toStream(iterateSegments(inputStream, segmentMarkers, policy));
+    }
+
+    /**
+     * Returns a sequential stream of segments matching the given segment marker bytes in a file.
+     * The file remains open until the returned stream is closed, so the stream
+     * should be used in a try-with-resources statement.
+     *
+     * @param jpegFile pathname of a JPEG file
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @param policy policy that determines which occurrences of each marker are returned
+     * @return a stream of segments
+     * @throws IOException if the file cannot be opened
+     * @see #streamSegments(InputStream, MarkerSet, OccurrencePolicy)
+     */
+    public Stream<JpegSegmentSpec> streamSegments(Path jpegFile, MarkerSet segmentMarkers, OccurrencePolicy policy) throws IOException {
+        FileChannel channel = FileChannel.open(jpegFile, StandardOpenOption.READ);
+        try {
+            return streamSegments(channel, segmentMarkers, policy).onClose(() -> {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a sequential stream of segments matching the given segment marker bytes in a channel.
+     * Closing the returned stream does not close the channel.
+     *
+     * @param channel channel positioned at the start of JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @param policy policy that determines which occurrences of each marker are returned
+     * @return a stream of segments
+     * @throws IOException if the channel position cannot be determined
+     * @see #streamSegments(InputStream, MarkerSet, OccurrencePolicy)
+     */
+    public Stream<JpegSegmentSpec> streamSegments(SeekableByteChannel channel, MarkerSet segmentMarkers, OccurrencePolicy policy) throws IOException {
+        return toStream(iterateSegments(channel, segmentMarkers, policy));
+    }
+
+    /**
+     * Returns a sequential stream of segments matching the given segment marker bytes in a buffer.
+     *
+     * @param buffer buffer positioned at the start of JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @param policy policy that determines which occurrences of each marker are returned
+     * @return a stream of segments
+     * @see #streamSegments(InputStream, MarkerSet, OccurrencePolicy)
+     */
+    public Stream<JpegSegmentSlice> streamSegments(ByteBuffer buffer, MarkerSet segmentMarkers, OccurrencePolicy policy) {
+        return toStream(iterateSegments(buffer, segmentMarkers, policy));
+    }
+
+    private static <T> Stream<T> toStream(Iterator<T> iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Visit segments matching the given segment marker bytes. The visitor is
+     * invoked for each matching segment in the order in which segments occur, and
+     * scanning stops as soon as the visitor returns false. No objects are allocated
+     * per segment. This method does not close the given input stream.
+     *
+     * @param inputStream fresh input stream containing JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be visited
+     * @param visitor the visitor
+     * @throws JpegSegmentFinderException if the input stream is verifiably not positioned at the
+     * beginning of a byte sequence constituting a JPEG image, or if the JPEG data is otherwise
+     * verifiably corrupt or inconsistent
+     * @see #findSegments(InputStream, MarkerSet)
+     */
+    public void visitSegments(InputStream inputStream, MarkerSet segmentMarkers, SegmentVisitor visitor) throws JpegSegmentFinderException, IOException {
+        byte[] buffer = acquireBuffer(StreamReader.DEFAULT_BUFFER_SIZE);
+        try {
+            scan(new StreamReader(inputStream, buffer), segmentMarkers, visitor);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Visit segments matching the given segment marker bytes in a file.
+     *
+     * @param jpegFile pathname of a JPEG file
+     * @param segmentMarkers set of segment marker bytes for which segments are to be visited
+     * @param visitor the visitor
+     * @throws JpegSegmentFinderException if the file verifiably does not contain
+     * JPEG data or the JPEG data is verifiably corrupt or inconsistent
+     * @see #visitSegments(InputStream, MarkerSet, SegmentVisitor)
+     * @see #findSegments(Path, MarkerSet)
+     */
+    public void visitSegments(Path jpegFile, MarkerSet segmentMarkers, SegmentVisitor visitor) throws JpegSegmentFinderException, IOException {
+        try (FileChannel channel = FileChannel.open(jpegFile, StandardOpenOption.READ)) {
+            visitSegments(channel, segmentMarkers, visitor);
+        }
+    }
+
+    /**
+     * Visit segments matching the given segment marker bytes in a channel.
+     *
+     * @param channel channel positioned at the start of JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be visited
+     * @param visitor the visitor
+     * @throws JpegSegmentFinderException if the channel data verifiably does not constitute
+     * a JPEG image, or if the JPEG data is otherwise verifiably corrupt or inconsistent
+     * @see #visitSegments(InputStream, MarkerSet, SegmentVisitor)
+     * @see #findSegments(SeekableByteChannel, MarkerSet)
+     */
+    public void visitSegments(SeekableByteChannel channel, MarkerSet segmentMarkers, SegmentVisitor visitor) throws JpegSegmentFinderException, IOException {
+        byte[] buffer = acquireBuffer(ChannelReader.DEFAULT_BUFFER_SIZE);
+        try {
+            scan(new ChannelReader(channel, buffer), segmentMarkers, visitor);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Visit segments matching the given segment marker bytes in a buffer.
+     *
+     * @param buffer buffer positioned at the start of JPEG data
+     * @param segmentMarkers set of segment marker bytes for which segments are to be visited
+     * @param visitor the visitor
+     * @throws JpegSegmentFinderException if the buffer data verifiably does not constitute
+     * a JPEG image, or if the JPEG data is otherwise verifiably corrupt or inconsistent
+     * @see #visitSegments(InputStream, MarkerSet, SegmentVisitor)
+     * @see #findSegments(ByteBuffer, MarkerSet)
+     */
+    public void visitSegments(ByteBuffer buffer, MarkerSet segmentMarkers, SegmentVisitor visitor) throws JpegSegmentFinderException, IOException {
+        scan(new ByteBufferReader(buffer), segmentMarkers, visitor);
+    }
+
+    private List<JpegSegmentSpec> findSegments(final SequentialReader reader, MarkerSet segmentMarkers) throws JpegSegmentFinderException, IOException {
+        Objects.requireNonNull(segmentMarkers);
+        if (segmentMarkers.isEmpty()) {
+            return Collections.emptyList();
+        }
         List<JpegSegmentSpec> segmentData = new ArrayList<>();
-        do {
-            long segmentStart = reader.getPosition();
-            // Find the segment marker. Markers are zero or more 0xFF bytes, followed
-            // by a 0xFF and then a byte not equal to 0x00 or 0xFF.
-
-            byte segmentIdentifier = reader.getInt8();
-            byte segmentType = reader.getInt8();
-
-            // Read until we have a 0xFF byte followed by a byte that is not 0xFF or 0x00
-            while (segmentIdentifier != SEGMENT_IDENTIFIER || segmentType == SEGMENT_IDENTIFIER || segmentType == 0) {
-                segmentIdentifier = segmentType;
-                segmentType = reader.getInt8();
+        scan(reader, segmentMarkers, (marker, headerOffset, contentOffset, contentLength) -> {
+            segmentData.add(new JpegSegmentSpec(marker, headerOffset, contentOffset, contentLength));
+            return true;
+        });
+        return segmentData;
+    }
+
+    private JpegLayout findLayout(SequentialReader reader, MarkerSet segmentMarkers) throws JpegSegmentFinderException, IOException {
+        SegmentCursor cursor = new SegmentCursor(reader, segmentMarkers, OccurrencePolicy.ALL, true, limits);
+        long startTime = scanStarted();
+        List<JpegSegmentSpec> segments = new ArrayList<>();
+        try {
+            while (cursor.next()) {
+                segments.add(cursor.toSpec());
             }
+        } catch (IOException | RuntimeException e) {
+            scanEnded(reader, cursor, startTime, e);
+            throw e;
+        }
+        scanEnded(reader, cursor, startTime, null);
+        return new JpegLayout(segments, cursor.endOfImageOffset(), cursor.trailingOffset(), cursor.trailingLength());
+    }
 
-            if (segmentType == SEGMENT_SOS) {
-                // The 'Start-Of-Scan' segment's length doesn't include the image data, instead would
-                // have to search for the two bytes: 0xFF 0xD9 (EOI).
-                // It comes last so simply return at this point
-                return segmentData;
+    private List<AppSegmentSpec> findAppSegments(SequentialReader reader, Set<AppIdentifier> identifiers) throws JpegSegmentFinderException, IOException {
+        MarkerSet segmentMarkers = AppIdentifier.markersOf(identifiers);
+        if (segmentMarkers.isEmpty()) {
+            return Collections.emptyList();
+        }
+        SegmentCursor cursor = new SegmentCursor(reader, segmentMarkers, OccurrencePolicy.ALL, false, limits);
+        cursor.identify(identifiers);
+        long startTime = scanStarted();
+        List<AppSegmentSpec> segments = new ArrayList<>();
+        try {
+            while (cursor.next()) {
+                segments.add(cursor.toAppSpec());
             }
+        } catch (IOException | RuntimeException e) {
+            scanEnded(reader, cursor, startTime, e);
+            throw e;
+        }
+        scanEnded(reader, cursor, startTime, null);
+        return segments;
+    }
 
-            if (segmentType == MARKER_EOI) {
-                // the 'End-Of-Image' segment -- this should never be found in this fashion
-                return segmentData;
+    private ScanReport findSegmentsLeniently(SequentialReader reader, MarkerSet segmentMarkers) throws IOException {
+        SegmentCursor cursor = new SegmentCursor(reader, segmentMarkers, OccurrencePolicy.ALL, false, limits);
+        long startTime = scanStarted();
+        List<JpegSegmentSpec> segments = new ArrayList<>();
+        ScanStopReason stopReason;
+        String detail = null;
+        Exception failure = null;
+        try {
+            while (cursor.next()) {
+                segments.add(cursor.toSpec());
             }
+            stopReason = cursor.reachedStartOfScan() ? ScanStopReason.START_OF_SCAN : ScanStopReason.END_OF_DATA;
+        } catch (ScanLimitExceededException e) {
+            stopReason = e.getStopReason();
+            detail = e.getMessage();
+            failure = e;
+        } catch (JpegSegmentFinderException e) {
+            stopReason = ScanStopReason.CORRUPT_DATA;
+            detail = e.getMessage();
+            failure = e;
+        } catch (EOFException e) {
+            stopReason = ScanStopReason.END_OF_DATA;
+            detail = e.getMessage();
+        } catch (IOException | RuntimeException e) {
+            scanEnded(reader, cursor, startTime, e);
+            throw e;
+        }
+        scanEnded(reader, cursor, startTime, failure);
+        return new ScanReport(segments, stopReason, reader.getPosition(), detail);
+    }
 
-            // next 2-bytes are <segment-size>: [high-byte] [low-byte]
-            int segmentLength = reader.getUInt16();
-
-            // segment length includes size bytes, so subtract two
-            segmentLength -= 2;
-
-            if (segmentLength < 0)
-                throw new JpegSegmentFinderException("JPEG segment size would be less than zero");
-
-            // Check whether we are interested in this segment
-            if (segmentTypeBytes.contains(segmentType)) {
-                long segmentContentStart = reader.getPosition();
-                reader.skip(segmentLength);
-                // skip throws EOF if it can't skip as much as specified
-                segmentData.add(new JpegSegmentSpec(segmentType, segmentStart, segmentContentStart, segmentLength));
-            } else {
-                // Some if the JPEG is truncated, just return what data we've already gathered
-                if (!reader.trySkip(segmentLength)) {
-                    return segmentData;
+    private void scan(final SequentialReader reader, MarkerSet segmentMarkers, SegmentVisitor visitor) throws JpegSegmentFinderException, IOException {
+        Objects.requireNonNull(visitor);
+        SegmentCursor cursor = new SegmentCursor(reader, segmentMarkers, OccurrencePolicy.ALL, false, limits);
+        long startTime = scanStarted();
+        try {
+            while (cursor.next()) {
+                if (!visitor.visit(cursor.marker(), cursor.headerOffset(), cursor.contentOffset(), cursor.contentLength())) {
+                    break;
                 }
             }
+        } catch (IOException | RuntimeException e) {
+            scanEnded(reader, cursor, startTime, e);
+            throw e;
+        }
+        scanEnded(reader, cursor, startTime, null);
+    }
+
+    private byte[] acquireBuffer(int size) {
+        return bufferPool == null ? new byte[size] : bufferPool.acquire(size);
+    }
+
+    private void releaseBuffer(byte[] buffer) {
+        if (bufferPool != null) {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Returns the number of idle pooled buffers of the given size. For testing.
+     */
+    int idleBuffers(int size) {
+        return bufferPool == null ? 0 : bufferPool.idle(size);
+    }
+
+    private long scanStarted() {
+        return listener == null ? 0 : System.nanoTime();
+    }
 
-        } while (true);
+    private void scanEnded(SequentialReader reader, SegmentCursor cursor, long startTime, Exception exception) {
+        if (listener == null) {
+            return;
+        }
+        ScanStatistics statistics = new ScanStatistics(reader.getSourceBytesRead(), reader.getSourceBytesSkipped(),
+                reader.getSourceReadCalls(), reader.getSourceSkipCalls(),
+                cursor.segmentsVisited(), cursor.segmentsMatched(), cursor.resyncBytes(),
+                System.nanoTime() - startTime);
+        if (exception == null) {
+            listener.scanCompleted(statistics);
+        } else {
+            listener.scanFailed(statistics, exception);
+        }
+    }
+
+    /**
+     * Builder of finder instances.
+     */
+    public static final class Builder {
+
+        private ScanListener listener;
+        private ScanLimits limits = ScanLimits.none();
+        private int bufferPoolCapacity;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the listener to be notified at the end of each scan. The listener
+         * must be thread-safe if the finder is shared among threads.
+         * @param listener the listener, or null for none
+         * @return this builder
+         * @see #JpegSegmentFinder(ScanListener)
+         */
+        public Builder listener(ScanListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Sets the limits on the work performed by each scan.
+         * @param limits the limits
+         * @return this builder
+         * @see ScanLimits
+         */
+        public Builder limits(ScanLimits limits) {
+            this.limits = Objects.requireNonNull(limits);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of idle block buffers of each size to be kept for
+         * reuse. Scans of streams and channels that return a complete result take
+         * a buffer from the pool and return it when done, so with a capacity at
+         * least equal to the number of concurrent scans, a scan allocates no block
+         * buffer. Scans through iterators and streams do not use the pool. Zero,
+         * the default, disables pooling.
+         * @param capacity maximum number of idle buffers of each size
+         * @return this builder
+         */
+        public Builder bufferPoolCapacity(int capacity) {
+            if (capacity < 0) {
+                throw new IllegalArgumentException("capacity must be nonnegative");
+            }
+            this.bufferPoolCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * Builds a finder instance.
+         * @return a new finder
+         */
+        public JpegSegmentFinder build() {
+            return new JpegSegmentFinder(listener, limits, bufferPoolCapacity == 0 ? null : new BufferPool(bufferPoolCapacity));
+        }
     }
 
 }
@@ -0,0 +1,172 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Service class that writes a copy of a JPEG file without certain segments,
+ * such as those that contain Exif, IPTC, or XMP metadata. The bytes that are
+ * kept are copied with {@link FileChannel#transferTo(long, long, WritableByteChannel)},
+ * so the entropy-coded image data is not copied through user space on operating
+ * systems that support that optimization. Instances of this class are thread-safe.
+ */
+public class JpegSegmentRewriter {
+
+    private final MarkerSet candidateMarkers;
+    private final Predicate<? super JpegSegmentSpec> dropFilter;
+    private final ScanLimits limits;
+
+    /**
+     * Constructs an instance.
+     * @param candidateMarkers markers of segments that are candidates to be dropped
+     * @param dropFilter predicate that evaluates to true for segments that are to be dropped
+     */
+    public JpegSegmentRewriter(MarkerSet candidateMarkers, Predicate<? super JpegSegmentSpec> dropFilter) {
+        this(candidateMarkers, dropFilter, ScanLimits.none());
+    }
+
+    /**
+     * Constructs an instance that enforces limits on the scan of each source file.
+     * A rewrite that exceeds a limit fails before anything is written.
+     * @param candidateMarkers markers of segments that are candidates to be dropped
+     * @param dropFilter predicate that evaluates to true for segments that are to be dropped
+     * @param limits limits on the work performed by each scan
+     */
+    public JpegSegmentRewriter(MarkerSet candidateMarkers, Predicate<? super JpegSegmentSpec> dropFilter, ScanLimits limits) {
+        this.candidateMarkers = Objects.requireNonNull(candidateMarkers);
+        this.dropFilter = Objects.requireNonNull(dropFilter);
+        this.limits = Objects.requireNonNull(limits);
+    }
+
+    /**
+     * Returns a rewriter that drops the same segments as this one and enforces
+     * limits on the scan of each source file.
+     * @param limits limits on the work performed by each scan
+     * @return a new rewriter
+     */
+    public JpegSegmentRewriter withLimits(ScanLimits limits) {
+        return new JpegSegmentRewriter(candidateMarkers, dropFilter, limits);
+    }
+
+    /**
+     * Returns a rewriter that drops all segments with the given markers.
+     * @param markers markers of segments to drop
+     * @return a rewriter
+     */
+    public static JpegSegmentRewriter dropping(MarkerSet markers) {
+        return new JpegSegmentRewriter(markers, segment -> true);
+    }
+
+    /**
+     * Returns a rewriter that drops the segments that satisfy a predicate. The predicate
+     * is evaluated for every segment preceding the start of the image data.
+     * @param dropFilter predicate that evaluates to true for segments that are to be dropped
+     * @return a rewriter
+     */
+    public static JpegSegmentRewriter dropping(Predicate<? super JpegSegmentSpec> dropFilter) {
+        return new JpegSegmentRewriter(MarkerSet.all(), dropFilter);
+    }
+
+    /**
+     * Writes a copy of a JPEG file without the segments to be dropped. The source
+     * is scanned before anything is written. The copy is written to a temporary
+     * file in the target's directory, which then replaces the target by an atomic
+     * move, so the target is never left partially written, and the target may be
+     * the same file as the source. Where POSIX permissions are supported, the
+     * copy gets the permissions of the target if it exists, or else those of the source.
+     * @param source pathname of the JPEG file
+     * @param target pathname of the file to write; it is created or replaced
+     * @return the number of bytes written
+     * @throws JpegSegmentFinderException if the source file verifiably does not contain
+     * JPEG data or the JPEG data is verifiably corrupt or inconsistent
+     * @throws IOException on I/O error
+     */
+    public long rewrite(Path source, Path target) throws JpegSegmentFinderException, IOException {
+        // resolve links so that the move replaces the file rather than a link to it
+        Path destination = Files.exists(target) ? target.toRealPath() : target.toAbsolutePath();
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ)) {
+            List<JpegSegmentSpec> dropped = findDropped(sourceChannel);
+            Path temp = Files.createTempFile(destination.getParent(), destination.getFileName().toString(), ".tmp");
+            try {
+                long written;
+                try (FileChannel targetChannel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    written = rewrite(sourceChannel, dropped, targetChannel);
+                }
+                PosixFileAttributeView permissions = Files.getFileAttributeView(Files.exists(destination) ? destination : source, PosixFileAttributeView.class);
+                if (permissions != null) {
+                    Files.setPosixFilePermissions(temp, permissions.readAttributes().permissions());
+                }
+                Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return written;
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes a copy of JPEG data without the segments to be dropped. The JPEG data
+     * must begin at the start of the source file. The source channel's position is not
+     * modified, and neither channel is closed.
+     * @param source channel of the JPEG file
+     * @param target the channel to write to
+     * @return the number of bytes written
+     * @throws JpegSegmentFinderException if the source file verifiably does not contain
+     * JPEG data or the JPEG data is verifiably corrupt or inconsistent
+     * @throws IOException on I/O error
+     */
+    public long rewrite(FileChannel source, WritableByteChannel target) throws JpegSegmentFinderException, IOException {
+        return rewrite(source, findDropped(source), target);
+    }
+
+    private List<JpegSegmentSpec> findDropped(FileChannel source) throws IOException {
+        List<JpegSegmentSpec> dropped = new ArrayList<>();
+        SegmentCursor cursor = new SegmentCursor(new ChannelReader(source, 0, ChannelReader.DEFAULT_BUFFER_SIZE), candidateMarkers, OccurrencePolicy.ALL, false, limits);
+        while (cursor.next()) {
+            JpegSegmentSpec segment = cursor.toSpec();
+            if (dropFilter.test(segment)) {
+                dropped.add(segment);
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Writes a copy of JPEG data without the given segments. The segments must have been
+     * found in JPEG data that begins at the start of the source file, and they must be in
+     * order of occurrence. The source channel's position is not modified, and neither
+     * channel is closed.
+     * @param source channel of the JPEG file
+     * @param dropped segments to drop
+     * @param target the channel to write to
+     * @return the number of bytes written
+     * @throws IOException on I/O error
+     */
+    public static long rewrite(FileChannel source, List<? extends JpegSegmentSpec> dropped, WritableByteChannel target) throws IOException {
+        long written = 0;
+        long keepStart = 0;
+        for (JpegSegmentSpec segment : dropped) {
+            if (segment.headerOffset < keepStart) {
+                throw new IllegalArgumentException("segments must be in order and must not overlap: " + segment);
+            }
+            written += JpegSegmentTransfer.transferRange(source, keepStart, segment.headerOffset - keepStart, target);
+            keepStart = segment.headerOffset + segment.fullLength();
+        }
+        long size = source.size();
+        if (keepStart < size) {
+            written += JpegSegmentTransfer.transferRange(source, keepStart, size - keepStart, target);
+        }
+        return written;
+    }
+}
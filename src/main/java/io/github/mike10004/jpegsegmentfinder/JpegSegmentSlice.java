@@ -0,0 +1,67 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Segment specification that also provides access to the segment's bytes
+ * as read-only views of the buffer in which the segment was found.
+ * Offsets are relative to the position of that buffer at the time the
+ * segment was found. The views share content with that buffer, so changes
+ * to the buffer's content are visible through them.
+ */
+public class JpegSegmentSlice extends JpegSegmentSpec {
+
+    private final ByteBuffer source;
+    private final int base;
+
+    /**
+     * Constructs a new instance.
+     * @param source buffer containing JPEG data, positioned at the start of the JPEG data
+     * @param spec the segment specification
+     */
+    public JpegSegmentSlice(ByteBuffer source, JpegSegmentSpec spec) {
+        this(source, spec.marker, spec.headerOffset, spec.contentOffset, spec.contentLength);
+    }
+
+    /**
+     * Constructs a new instance.
+     * @param source buffer containing JPEG data, positioned at the start of the JPEG data
+     * @param marker the metadata type marker
+     * @param headerOffset offset from the start of the JPEG data where the segment header begins
+     * @param contentOffset offset from the start of the JPEG data where the segment content begins
+     * @param contentLength segment content length
+     */
+    public JpegSegmentSlice(ByteBuffer source, byte marker, long headerOffset, long contentOffset, long contentLength) {
+        super(marker, headerOffset, contentOffset, contentLength);
+        this.source = Objects.requireNonNull(source);
+        this.base = source.position();
+    }
+
+    /**
+     * Returns a read-only view of the segment content. Each invocation returns
+     * a new buffer whose position is zero and whose limit is the content length.
+     * @return a read-only buffer
+     */
+    public ByteBuffer content() {
+        return slice(contentOffset, contentLength);
+    }
+
+    /**
+     * Returns a read-only view of the full segment, including the header.
+     * @return a read-only buffer
+     * @see #fullLength()
+     */
+    public ByteBuffer fullSegment() {
+        return slice(headerOffset, fullLength());
+    }
+
+    private ByteBuffer slice(long offset, long length) {
+        ByteBuffer view = source.duplicate();
+        int start = base + Math.toIntExact(offset);
+        ((Buffer) view).limit(start + Math.toIntExact(length));
+        ((Buffer) view).position(start);
+        return view.slice().asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,164 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Static utility methods that copy segment bytes from a file channel to other
+ * channels or buffers. Transfers to channels use {@link FileChannel#transferTo(long, long, WritableByteChannel)},
+ * which many operating systems implement without copying bytes through user space.
+ *
+ * <p>Segment offsets are interpreted as positions in the file channel, so the
+ * segments must have been found in JPEG data that begins at the start of the file,
+ * as is the case with {@link JpegSegmentFinder#findSegments(java.nio.file.Path, MarkerSet)}.
+ * None of these methods modifies the position of the source channel.
+ *
+ * <p>Target channels must be in blocking mode. A transfer to a non-blocking
+ * channel that accepts no bytes fails with an {@link IOException} rather than
+ * waiting for the channel to become writable.
+ */
+public final class JpegSegmentTransfer {
+
+    private JpegSegmentTransfer() {}
+
+    /**
+     * Transfers the content of a segment to a channel.
+     * @param source channel of the file in which the segment was found
+     * @param segment the segment
+     * @param target the channel to write to
+     * @return the number of bytes transferred
+     * @throws EOFException if the file ends before the end of the segment
+     * @throws IOException on I/O error
+     */
+    public static long transferContent(FileChannel source, JpegSegmentSpec segment, WritableByteChannel target) throws IOException {
+        return transferRange(source, segment.contentOffset, segment.contentLength, target);
+    }
+
+    /**
+     * Transfers a full segment, including its header, to a channel.
+     * @param source channel of the file in which the segment was found
+     * @param segment the segment
+     * @param target the channel to write to
+     * @return the number of bytes transferred
+     * @throws EOFException if the file ends before the end of the segment
+     * @throws IOException on I/O error
+     */
+    public static long transferSegment(FileChannel source, JpegSegmentSpec segment, WritableByteChannel target) throws IOException {
+        return transferRange(source, segment.headerOffset, segment.fullLength(), target);
+    }
+
+    /**
+     * Transfers the content of each of several segments to a channel, in order.
+     * The target receives the concatenation of the segments' content.
+     * @param source channel of the file in which the segments were found
+     * @param segments the segments
+     * @param target the channel to write to
+     * @return the total number of bytes transferred
+     * @throws EOFException if the file ends before the end of a segment
+     * @throws IOException on I/O error
+     */
+    public static long transferContents(FileChannel source, List<? extends JpegSegmentSpec> segments, WritableByteChannel target) throws IOException {
+        long total = 0;
+        for (JpegSegmentSpec segment : segments) {
+            total += transferContent(source, segment, target);
+        }
+        return total;
+    }
+
+    /**
+     * Transfers each of several full segments, including headers, to a channel, in order.
+     * @param source channel of the file in which the segments were found
+     * @param segments the segments
+     * @param target the channel to write to
+     * @return the total number of bytes transferred
+     * @throws EOFException if the file ends before the end of a segment
+     * @throws IOException on I/O error
+     */
+    public static long transferSegments(FileChannel source, List<? extends JpegSegmentSpec> segments, WritableByteChannel target) throws IOException {
+        long total = 0;
+        for (JpegSegmentSpec segment : segments) {
+            total += transferSegment(source, segment, target);
+        }
+        return total;
+    }
+
+    /**
+     * Reads the content of each of several segments into a corresponding buffer.
+     * The content of the segment at index {@code i} is read into the buffer at index
+     * {@code i}, starting at the buffer's position. Each buffer must have at least as
+     * many bytes remaining as the content length of its segment.
+     *
+     * <p>This is not a scattering read in the sense of {@link FileChannel#read(ByteBuffer[])}.
+     * Each segment's content is read with its own positional
+     * {@link FileChannel#read(ByteBuffer, long) read} calls, at least one per segment,
+     * because segment contents are separated by header bytes in the file and because
+     * a scattering read would move the channel's position.
+     * @param source channel of the file in which the segments were found
+     * @param segments the segments
+     * @param targets the buffers to read into
+     * @throws EOFException if the file ends before the end of a segment
+     * @throws IOException on I/O error
+     */
+    public static void readContents(FileChannel source, List<? extends JpegSegmentSpec> segments, ByteBuffer[] targets) throws IOException {
+        if (segments.size() != targets.length) {
+            throw new IllegalArgumentException("number of buffers must equal number of segments");
+        }
+        for (int i = 0; i < targets.length; i++) {
+            JpegSegmentSpec segment = segments.get(i);
+            ByteBuffer target = targets[i];
+            if (target.remaining() < segment.contentLength) {
+                throw new IllegalArgumentException("buffer " + i + " has insufficient space for " + segment);
+            }
+            readFully(source, segment.contentOffset, segment.contentLength, target);
+        }
+    }
+
+    /**
+     * Transfers a range of bytes from a file channel to another channel.
+     * @param source the source channel
+     * @param position position of the first byte to transfer
+     * @param count number of bytes to transfer
+     * @param target the channel to write to
+     * @return the number of bytes transferred, which is always equal to {@code count}
+     * @throws EOFException if the file ends before the end of the range
+     * @throws IOException on I/O error, or if the target accepts no bytes, as a
+     * non-blocking channel may
+     */
+    static long transferRange(FileChannel source, long position, long count, WritableByteChannel target) throws IOException {
+        Objects.requireNonNull(target);
+        long transferred = 0;
+        while (transferred < count) {
+            long n = source.transferTo(position + transferred, count - transferred, target);
+            if (n == 0) {
+                if (position + transferred >= source.size()) {
+                    throw new EOFException(String.format("Unable to transfer. Requested %d bytes but transferred %d.", count, transferred));
+                }
+                // a blocking target always accepts some bytes, so retrying would only spin
+                throw new IOException(String.format("Target channel accepted no bytes after %d of %d; non-blocking targets are not supported", transferred, count));
+            }
+            transferred += n;
+        }
+        return transferred;
+    }
+
+    private static void readFully(FileChannel source, long position, long count, ByteBuffer target) throws IOException {
+        // read into a view limited to the count, so as not to read beyond the segment
+        ByteBuffer view = target.duplicate();
+        ((Buffer) view).limit(view.position() + Math.toIntExact(count));
+        long bytesRead = 0;
+        while (bytesRead < count) {
+            int n = source.read(view, position + bytesRead);
+            if (n == -1) {
+                throw new EOFException(String.format("Unable to read. Requested %d bytes but read %d.", count, bytesRead));
+            }
+            bytesRead += n;
+        }
+        ((Buffer) target).position(view.position());
+    }
+}
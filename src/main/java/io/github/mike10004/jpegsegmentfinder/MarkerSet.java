@@ -0,0 +1,251 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * Immutable set of segment marker bytes. Membership is stored in a 256-bit
+ * bitmap, so testing whether a marker is in the set requires neither
+ * boxing nor hashing. Instances are safe for use by multiple threads.
+ */
+public final class MarkerSet {
+
+    private static final int NUM_WORDS = 4;
+
+    private static final MarkerSet NONE = new MarkerSet(new long[NUM_WORDS]);
+
+    private static final MarkerSet ALL = new MarkerSet(new long[]{-1L, -1L, -1L, -1L});
+
+    private final long[] words;
+
+    private MarkerSet(long[] words) {
+        this.words = words;
+    }
+
+    /**
+     * Returns a set containing the given marker bytes.
+     * @param markers marker bytes
+     * @return a marker set
+     */
+    public static MarkerSet of(byte... markers) {
+        long[] words = new long[NUM_WORDS];
+        for (byte marker : markers) {
+            words[(marker & 0xFF) >>> 6] |= 1L << marker;
+        }
+        return new MarkerSet(words);
+    }
+
+    /**
+     * Returns a set containing the given marker bytes.
+     * @param markers collection of marker bytes; must not contain null
+     * @return a marker set
+     */
+    public static MarkerSet copyOf(Collection<Byte> markers) {
+        long[] words = new long[NUM_WORDS];
+        for (Byte marker : markers) {
+            byte m = Objects.requireNonNull(marker, "marker");
+            words[(m & 0xFF) >>> 6] |= 1L << m;
+        }
+        return new MarkerSet(words);
+    }
+
+    /**
+     * Returns a set containing the markers in the given inclusive range.
+     * @param first first marker in the range
+     * @param last last marker in the range
+     * @return a marker set
+     */
+    public static MarkerSet range(byte first, byte last) {
+        long[] words = new long[NUM_WORDS];
+        for (int m = first & 0xFF; m <= (last & 0xFF); m++) {
+            words[m >>> 6] |= 1L << m;
+        }
+        return new MarkerSet(words);
+    }
+
+    /**
+     * Returns the empty set.
+     * @return the empty set
+     */
+    public static MarkerSet none() {
+        return NONE;
+    }
+
+    /**
+     * Returns the set of all marker bytes.
+     * @return a marker set containing every byte value
+     */
+    public static MarkerSet all() {
+        return ALL;
+    }
+
+    /**
+     * Returns the set of application segment markers, APP0 through APP15 (0xE0-0xEF).
+     * @return a marker set
+     */
+    public static MarkerSet allAppn() {
+        return range((byte) 0xE0, (byte) 0xEF);
+    }
+
+    /**
+     * Returns the set of start-of-frame markers SOF0 through SOF15, excluding
+     * the values that denote DHT (0xC4), JPG (0xC8), and DAC (0xCC).
+     * @return a marker set
+     */
+    public static MarkerSet allSofn() {
+        return of((byte) 0xC0, (byte) 0xC1, (byte) 0xC2, (byte) 0xC3,
+                  (byte) 0xC5, (byte) 0xC6, (byte) 0xC7,
+                  (byte) 0xC9, (byte) 0xCA, (byte) 0xCB,
+                  (byte) 0xCD, (byte) 0xCE, (byte) 0xCF);
+    }
+
+    /**
+     * Returns the set containing the comment marker COM (0xFE).
+     * @return a marker set
+     */
+    public static MarkerSet com() {
+        return of((byte) 0xFE);
+    }
+
+    /**
+     * Returns the set containing the define-quantization-table marker DQT (0xDB).
+     * @return a marker set
+     */
+    public static MarkerSet dqt() {
+        return of((byte) 0xDB);
+    }
+
+    /**
+     * Returns the set containing the define-Huffman-table marker DHT (0xC4).
+     * @return a marker set
+     */
+    public static MarkerSet dht() {
+        return of((byte) 0xC4);
+    }
+
+    /**
+     * Returns the set of table definition markers, DQT (0xDB) and DHT (0xC4).
+     * @return a marker set
+     */
+    public static MarkerSet tables() {
+        return of((byte) 0xDB, (byte) 0xC4);
+    }
+
+    /**
+     * Tests whether this set contains a marker.
+     * @param marker the marker byte
+     * @return true if this set contains the marker
+     */
+    public boolean contains(byte marker) {
+        return contains(words, marker);
+    }
+
+    /**
+     * Tests whether a bitmap in the layout used by this class contains a marker.
+     * @param words the bitmap words
+     * @param marker the marker byte
+     * @return true if the bit for the marker is set
+     */
+    static boolean contains(long[] words, byte marker) {
+        return ((words[(marker & 0xFF) >>> 6] >>> marker) & 1L) != 0;
+    }
+
+    /**
+     * Clears the bit for a marker in a bitmap in the layout used by this class.
+     * @param words the bitmap words
+     * @param marker the marker byte
+     */
+    static void remove(long[] words, byte marker) {
+        words[(marker & 0xFF) >>> 6] &= ~(1L << marker);
+    }
+
+    /**
+     * Tests whether a bitmap in the layout used by this class is empty.
+     * @param words the bitmap words
+     * @return true if no bit is set
+     */
+    static boolean isEmpty(long[] words) {
+        return (words[0] | words[1] | words[2] | words[3]) == 0;
+    }
+
+    /**
+     * Returns a copy of this set's bitmap, for callers that remove markers in place.
+     * @return a new array of bitmap words
+     */
+    long[] toWords() {
+        return words.clone();
+    }
+
+    /**
+     * Returns a set containing the markers in this set and the other set.
+     * @param other the other set
+     * @return the union of the two sets
+     */
+    public MarkerSet union(MarkerSet other) {
+        long[] union = new long[NUM_WORDS];
+        for (int i = 0; i < NUM_WORDS; i++) {
+            union[i] = words[i] | other.words[i];
+        }
+        return new MarkerSet(union);
+    }
+
+    /**
+     * Returns a set containing the markers in this set that are not in the other set.
+     * @param other the other set
+     * @return the difference of the two sets
+     */
+    public MarkerSet minus(MarkerSet other) {
+        long[] difference = new long[NUM_WORDS];
+        for (int i = 0; i < NUM_WORDS; i++) {
+            difference[i] = words[i] & ~other.words[i];
+        }
+        return new MarkerSet(difference);
+    }
+
+    /**
+     * Tests whether this set is empty.
+     * @return true if this set contains no markers
+     */
+    public boolean isEmpty() {
+        return isEmpty(words);
+    }
+
+    /**
+     * Returns the number of markers in this set.
+     * @return the number of markers
+     */
+    public int size() {
+        int size = 0;
+        for (long word : words) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MarkerSet that = (MarkerSet) o;
+        return Arrays.equals(words, that.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("MarkerSet{");
+        String delimiter = "";
+        for (int m = 0; m < 256; m++) {
+            if (contains((byte) m)) {
+                sb.append(delimiter).append(String.format("0x%02X", m));
+                delimiter = ", ";
+            }
+        }
+        return sb.append('}').toString();
+    }
+}
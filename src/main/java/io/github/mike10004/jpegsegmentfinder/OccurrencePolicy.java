@@ -0,0 +1,20 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+/**
+ * Enumeration of policies that determine which occurrences of requested
+ * segment markers are reported.
+ */
+public enum OccurrencePolicy {
+
+    /**
+     * Report every segment whose marker is requested.
+     */
+    ALL,
+
+    /**
+     * Report only the first segment with each requested marker, and stop
+     * scanning as soon as a segment has been found for every requested marker.
+     */
+    FIRST
+
+}
@@ -0,0 +1,247 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Hash table stored in a memory-mapped file that maps key hashes to the
+ * offsets of records in another file. The table uses open addressing with
+ * linear probing; because several keys may share a hash, the caller supplies
+ * a matcher that checks whether the record at an offset has the wanted key.
+ * Keys are never removed, only re-pointed at newer records. The table doubles
+ * in size, by rewriting it to a new file, when it becomes half full.
+ *
+ * <p>The header records a generation number that ties the table to one version
+ * of the record file, the length of the record file covered by the table,
+ * and the total length of the records the table points to.
+ * Instances are not thread-safe.
+ */
+class OffsetTable implements Closeable {
+
+    /**
+     * Matcher of the record at an offset.
+     */
+    interface RecordMatcher {
+        boolean matches(long offset) throws IOException;
+    }
+
+    private static final int MAGIC = 0x4A534653; // "JSFS"
+    private static final int VERSION = 1;
+    /*
+     * Header layout:
+     *   int magic, int version, long generation, long coveredLength,
+     *   long liveBytes, long count, int capacityLog2, int reserved
+     */
+    private static final int HEADER_LENGTH = 48;
+    private static final int GENERATION_OFFSET = 8;
+    private static final int COVERED_LENGTH_OFFSET = 16;
+    private static final int LIVE_BYTES_OFFSET = 24;
+    private static final int COUNT_OFFSET = 32;
+    private static final int CAPACITY_LOG2_OFFSET = 40;
+    /*
+     * Slot layout: long hash, long offset; an offset of zero marks an empty slot
+     */
+    private static final int SLOT_LENGTH = 16;
+    private static final int INITIAL_CAPACITY_LOG2 = 10;
+    private static final int MAX_CAPACITY_LOG2 = 40;
+
+    private Path file;
+    private final int chunkSize;
+    private FileChannel channel;
+    private ChunkedMapping mapping;
+    private int capacityLog2;
+
+    private OffsetTable(Path file, int chunkSize, FileChannel channel, ChunkedMapping mapping, int capacityLog2) {
+        this.file = file;
+        this.chunkSize = chunkSize;
+        this.channel = channel;
+        this.mapping = mapping;
+        this.capacityLog2 = capacityLog2;
+    }
+
+    /**
+     * Creates an empty table, replacing the file if it exists.
+     * @param file pathname of the table file
+     * @param generation generation of the record file
+     * @param chunkSize maximum length of each mapped chunk
+     * @return the new table
+     * @throws IOException on I/O error
+     */
+    public static OffsetTable create(Path file, long generation, int chunkSize) throws IOException {
+        return create(file, generation, INITIAL_CAPACITY_LOG2, chunkSize);
+    }
+
+    private static OffsetTable create(Path file, long generation, int capacityLog2, int chunkSize) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ChunkedMapping mapping = new ChunkedMapping(channel, FileChannel.MapMode.READ_WRITE, chunkSize, fileLength(capacityLog2));
+            mapping.putLong(0, ((long) MAGIC << 32) | VERSION);
+            mapping.putLong(GENERATION_OFFSET, generation);
+            mapping.putLong(CAPACITY_LOG2_OFFSET, (long) capacityLog2 << 32);
+            return new OffsetTable(file, chunkSize, channel, mapping, capacityLog2);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing table.
+     * @param file pathname of the table file
+     * @param generation generation of the record file
+     * @param chunkSize maximum length of each mapped chunk
+     * @return the table, or null if the file does not exist, is not a valid
+     * table file, or belongs to another generation of the record file
+     * @throws IOException on I/O error
+     */
+    public static OffsetTable open(Path file, long generation, int chunkSize) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size >= HEADER_LENGTH) {
+                ChunkedMapping mapping = new ChunkedMapping(channel, FileChannel.MapMode.READ_WRITE, chunkSize, size);
+                int capacityLog2 = mapping.getInt(CAPACITY_LOG2_OFFSET);
+                if (mapping.getInt(0) == MAGIC && mapping.getInt(4) == VERSION
+                        && mapping.getLong(GENERATION_OFFSET) == generation
+                        && capacityLog2 > 0 && capacityLog2 <= MAX_CAPACITY_LOG2
+                        && size == fileLength(capacityLog2)) {
+                    return new OffsetTable(file, chunkSize, channel, mapping, capacityLog2);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        channel.close();
+        return null;
+    }
+
+    private static long fileLength(int capacityLog2) {
+        return HEADER_LENGTH + (SLOT_LENGTH << capacityLog2);
+    }
+
+    public long coveredLength() {
+        return mapping.getLong(COVERED_LENGTH_OFFSET);
+    }
+
+    public void setCoveredLength(long coveredLength) {
+        mapping.putLong(COVERED_LENGTH_OFFSET, coveredLength);
+    }
+
+    public long liveBytes() {
+        return mapping.getLong(LIVE_BYTES_OFFSET);
+    }
+
+    public void addLiveBytes(long delta) {
+        mapping.putLong(LIVE_BYTES_OFFSET, liveBytes() + delta);
+    }
+
+    /**
+     * Gets the offset of the record with a given key.
+     * @param hash hash of the key
+     * @param matcher matcher of the record with the key
+     * @return the offset, or zero if no record matches
+     * @throws IOException if the matcher throws it
+     */
+    public long get(long hash, RecordMatcher matcher) throws IOException {
+        long mask = (1L << capacityLog2) - 1;
+        for (long index = hash & mask; ; index = (index + 1) & mask) {
+            long slot = HEADER_LENGTH + index * SLOT_LENGTH;
+            long offset = mapping.getLong(slot + 8);
+            if (offset == 0) {
+                return 0;
+            }
+            if (mapping.getLong(slot) == hash && matcher.matches(offset)) {
+                return offset;
+            }
+        }
+    }
+
+    /**
+     * Points a key at a record offset.
+     * @param hash hash of the key
+     * @param offset offset of the record; must be positive
+     * @param matcher matcher of records with the key
+     * @return the offset the key previously pointed at, or zero if it was absent
+     * @throws IOException on I/O error
+     */
+    public long put(long hash, long offset, RecordMatcher matcher) throws IOException {
+        long mask = (1L << capacityLog2) - 1;
+        for (long index = hash & mask; ; index = (index + 1) & mask) {
+            long slot = HEADER_LENGTH + index * SLOT_LENGTH;
+            long existing = mapping.getLong(slot + 8);
+            if (existing == 0) {
+                mapping.putLong(slot, hash);
+                mapping.putLong(slot + 8, offset);
+                long count = mapping.getLong(COUNT_OFFSET) + 1;
+                mapping.putLong(COUNT_OFFSET, count);
+                if (count > (1L << (capacityLog2 - 1))) {
+                    grow();
+                }
+                return 0;
+            }
+            if (mapping.getLong(slot) == hash && matcher.matches(existing)) {
+                mapping.putLong(slot + 8, offset);
+                return existing;
+            }
+        }
+    }
+
+    private void grow() throws IOException {
+        if (capacityLog2 >= MAX_CAPACITY_LOG2) {
+            throw new IOException("offset table is full");
+        }
+        Path temp = tempSibling(file);
+        OffsetTable larger = create(temp, mapping.getLong(GENERATION_OFFSET), capacityLog2 + 1, chunkSize);
+        try {
+            for (long index = 0; index < (1L << capacityLog2); index++) {
+                long slot = HEADER_LENGTH + index * SLOT_LENGTH;
+                long offset = mapping.getLong(slot + 8);
+                if (offset != 0) {
+                    larger.put(mapping.getLong(slot), offset, existing -> false);
+                }
+            }
+            larger.setCoveredLength(coveredLength());
+            larger.addLiveBytes(liveBytes());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            larger.close();
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        channel.close();
+        channel = larger.channel;
+        mapping = larger.mapping;
+        capacityLog2 = larger.capacityLog2;
+    }
+
+    /**
+     * Moves the table file, replacing the target if it exists.
+     * @param target new pathname
+     * @throws IOException on I/O error
+     */
+    public void moveTo(Path target) throws IOException {
+        Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        file = target;
+    }
+
+    static Path tempSibling(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        return Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+    }
+
+    @Override
+    public void close() throws IOException {
+        mapping = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Class that represents the result of a scan that stopped as soon as the requested
+ * segments were found, together with a stream from which the caller can continue
+ * reading. See {@link JpegSegmentFinder#findSegmentsThenStop(InputStream, MarkerSet, StopPoint)}.
+ */
+public class PositionedStream {
+
+    /**
+     * Segments found, in order of occurrence. At most one segment is found per marker.
+     */
+    public final List<JpegSegmentSpec> segments;
+
+    /**
+     * Position of the stream, relative to the start of the JPEG data. The next byte
+     * read from {@link #stream} is the byte at this position.
+     */
+    public final long position;
+
+    /**
+     * Stream from which to continue reading. Bytes that were read ahead of
+     * {@link #position} during the scan have been pushed back onto this stream.
+     * Closing this stream closes the original input stream.
+     */
+    public final InputStream stream;
+
+    /**
+     * Flag that indicates whether a segment was found for every requested marker.
+     * If true, the stream is positioned within the last segment found, as
+     * specified by the stop point; otherwise, the stream is positioned where
+     * the scan ended, which is immediately following the start-of-scan marker
+     * or at the end of the data.
+     */
+    public final boolean complete;
+
+    /**
+     * Constructs a new instance.
+     * @param segments segments found
+     * @param position position of the stream
+     * @param stream stream from which to continue reading
+     * @param complete true if a segment was found for every requested marker
+     */
+    public PositionedStream(List<JpegSegmentSpec> segments, long position, InputStream stream, boolean complete) {
+        this.segments = Collections.unmodifiableList(Objects.requireNonNull(segments));
+        this.position = position;
+        this.stream = Objects.requireNonNull(stream);
+        this.complete = complete;
+    }
+
+    @Override
+    public String toString() {
+        return "PositionedStream{" +
+                "segments=" + segments.size() +
+                ", position=" + position +
+                ", complete=" + complete +
+                '}';
+    }
+}
@@ -0,0 +1,266 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reader that obtains bytes from a range source through a cache of aligned blocks.
+ * The first fetch covers the header area of a typical JPEG file, so in the common
+ * case the whole scan is satisfied by one range request. When a read misses the
+ * cache, the missing blocks in the requested range are fetched together in one
+ * request, along with a prefetch window that grows while misses are sequential
+ * and shrinks back to a single block after a jump. Skips never fetch anything.
+ *
+ * <p>Positions reported by this reader are relative to the start of the source.
+ */
+class RangeReader extends SequentialReader {
+
+    static final int DEFAULT_BLOCK_SIZE = 16 * 1024;
+
+    static final int DEFAULT_INITIAL_FETCH = 64 * 1024;
+
+    /**
+     * Maximum length of a single fetch.
+     */
+    static final int MAX_FETCH = 1024 * 1024;
+
+    private static final int MAX_CACHED_BLOCKS = 256;
+
+    private final RangeSource source;
+    private final int blockSize;
+    private final int initialFetch;
+    private final Map<Long, ByteBuffer> blocks;
+    /**
+     * Size of the source, or -1 before the first fetch.
+     */
+    private long size = -1;
+    private long position;
+    private int prefetch;
+    private long lastFetchEnd = -1;
+    private long sourceBytesRead;
+    private long sourceReadCalls;
+
+    public RangeReader(RangeSource source) {
+        this(source, DEFAULT_BLOCK_SIZE, DEFAULT_INITIAL_FETCH);
+    }
+
+    /**
+     * Constructs an instance.
+     * @param source the source
+     * @param blockSize size of cache blocks; fetches are aligned to block boundaries
+     * @param initialFetch length of the first fetch; rounded up to a multiple of the block size
+     */
+    public RangeReader(RangeSource source, int blockSize, int initialFetch) {
+        this.source = Objects.requireNonNull(source);
+        if (blockSize <= 0 || initialFetch <= 0) {
+            throw new IllegalArgumentException("block size and initial fetch length must be positive");
+        }
+        this.blockSize = blockSize;
+        this.initialFetch = initialFetch;
+        prefetch = blockSize;
+        blocks = new LinkedHashMap<Long, ByteBuffer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ByteBuffer> eldest) {
+                return size() > MAX_CACHED_BLOCKS;
+            }
+        };
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public byte getByte() throws IOException {
+        ByteBuffer block = blockAt(position);
+        byte b = block.get((int) (position % blockSize));
+        position++;
+        return b;
+    }
+
+    @Override
+    public byte[] getBytes(int count) throws IOException {
+        byte[] bytes = new byte[count];
+        getBytes(bytes, 0, count);
+        return bytes;
+    }
+
+    @Override
+    public void getBytes(byte[] dst, int offset, int count) throws IOException {
+        Objects.requireNonNull(dst);
+        ensureSize();
+        if (count > size - position) {
+            throw new EOFException("End of data reached.");
+        }
+        while (count > 0) {
+            ensureCached(position, count);
+            ByteBuffer block = blockAt(position);
+            int index = (int) (position % blockSize);
+            int n = Math.min(count, block.limit() - index);
+            for (int i = 0; i < n; i++) {
+                dst[offset + i] = block.get(index + i);
+            }
+            position += n;
+            offset += n;
+            count -= n;
+        }
+    }
+
+    @Override
+    public void skip(long n) throws IOException {
+        if (n < 0)
+            throw new IllegalArgumentException("n must be zero or greater.");
+        long skippedCount = skipInternal(n);
+        if (skippedCount != n)
+            throw new EOFException(String.format("Unable to skip. Requested %d bytes but skipped %d.", n, skippedCount));
+    }
+
+    @Override
+    public boolean trySkip(long n) throws IOException {
+        if (n < 0)
+            throw new IllegalArgumentException("n must be zero or greater.");
+        return skipInternal(n) == n;
+    }
+
+    @Override
+    public long skipUntil(byte value, long maxSkip) throws IOException {
+        long start = position;
+        while (true) {
+            long remaining = maxSkip - (position - start);
+            if (remaining <= 0) {
+                return -1;
+            }
+            ByteBuffer block = blockAt(position);
+            int index = (int) (position % blockSize);
+            int to = remaining < block.limit() - index ? index + (int) remaining : block.limit();
+            int i = ByteScanning.indexOf(block, index, to, value);
+            if (i >= 0) {
+                position += i - index;
+                return position - start;
+            }
+            position += to - index;
+        }
+    }
+
+    @Override
+    public long skipToEnd() throws IOException {
+        ensureSize();
+        long skipped = size - position;
+        position = size;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        if (size < 0) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, size - position);
+    }
+
+    @Override
+    public long getSourceBytesRead() {
+        return sourceBytesRead;
+    }
+
+    @Override
+    public long getSourceReadCalls() {
+        return sourceReadCalls;
+    }
+
+    private long skipInternal(long n) throws IOException {
+        ensureSize();
+        long skipped = Math.min(n, Math.max(0, size - position));
+        position += skipped;
+        return skipped;
+    }
+
+    private void ensureSize() throws IOException {
+        if (size < 0) {
+            ensureCached(position, 1);
+        }
+    }
+
+    /**
+     * Returns the cached block containing the given position, fetching it if necessary.
+     */
+    private ByteBuffer blockAt(long pos) throws IOException {
+        ensureCached(pos, 1);
+        ByteBuffer block = blocks.get(pos / blockSize);
+        if (block == null || pos % blockSize >= block.limit()) {
+            throw new EOFException("End of data reached.");
+        }
+        return block;
+    }
+
+    /**
+     * Ensures that the blocks containing the given range are cached, as far as
+     * they exist. Missing blocks are fetched in a single request.
+     */
+    private void ensureCached(long pos, long length) throws IOException {
+        if (size >= 0 && pos >= size) {
+            return;
+        }
+        long firstBlock = pos / blockSize;
+        long lastBlock = (pos + Math.max(1, length) - 1) / blockSize;
+        if (size >= 0) {
+            lastBlock = Math.min(lastBlock, (size - 1) / blockSize);
+        }
+        long firstMissing = -1;
+        long lastMissing = -1;
+        for (long b = firstBlock; b <= lastBlock; b++) {
+            if (!blocks.containsKey(b)) {
+                if (firstMissing < 0) {
+                    firstMissing = b;
+                }
+                lastMissing = b;
+            }
+        }
+        if (firstMissing < 0) {
+            return;
+        }
+        long fetchStart = firstMissing * blockSize;
+        long fetchLength;
+        if (size < 0) {
+            fetchLength = Math.max(initialFetch, (lastMissing + 1) * blockSize - fetchStart);
+        } else {
+            // grow the prefetch window while misses are sequential
+            prefetch = fetchStart == lastFetchEnd ? Math.min(MAX_FETCH, prefetch * 2) : blockSize;
+            fetchLength = Math.max(prefetch, (lastMissing + 1) * blockSize - fetchStart);
+        }
+        fetchLength = roundUp(Math.min(fetchLength, MAX_FETCH));
+        if (size >= 0) {
+            fetchLength = Math.min(fetchLength, size - fetchStart);
+        }
+        fetch(fetchStart, (int) fetchLength);
+    }
+
+    private void fetch(long fetchStart, int fetchLength) throws IOException {
+        ByteBuffer data = source.read(fetchStart, fetchLength);
+        sourceReadCalls++;
+        int received = data.remaining();
+        sourceBytesRead += received;
+        lastFetchEnd = fetchStart + received;
+        if (size < 0) {
+            size = received < fetchLength ? fetchStart + received : source.size();
+        }
+        int base = data.position();
+        for (int off = 0; off < received; off += blockSize) {
+            ByteBuffer block = data.duplicate();
+            ((Buffer) block).position(base + off);
+            ((Buffer) block).limit(base + Math.min(received, off + blockSize));
+            blocks.put((fetchStart + off) / blockSize, block.slice().order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    private long roundUp(long length) {
+        return ((length + blockSize - 1) / blockSize) * blockSize;
+    }
+}
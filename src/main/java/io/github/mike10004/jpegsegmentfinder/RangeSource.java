@@ -0,0 +1,35 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Interface of a source of bytes that supports reading arbitrary ranges, such
+ * as an object in an object store that serves HTTP range requests. Each call to
+ * {@link #read(long, int)} may be expensive, so readers of range sources should
+ * request few, large ranges rather than many small ones.
+ * @see HttpRangeSource
+ * @see JpegSegmentFinder#findSegments(RangeSource, MarkerSet)
+ */
+public interface RangeSource {
+
+    /**
+     * Reads a range of bytes.
+     * @param offset offset of the first byte to read
+     * @param length number of bytes to read
+     * @return a buffer containing the bytes read, between its position and limit;
+     * fewer than {@code length} bytes are returned only if the end of the source
+     * is reached, and no bytes are returned if the offset is at or beyond the end
+     * @throws IOException on I/O error
+     */
+    ByteBuffer read(long offset, int length) throws IOException;
+
+    /**
+     * Returns the total number of bytes in the source. Implementations may learn
+     * the size as a side effect of reading a range, so callers that intend to read
+     * anyway should call this method after the first read.
+     * @return the size of the source
+     * @throws IOException on I/O error
+     */
+    long size() throws IOException;
+}
@@ -0,0 +1,17 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+/**
+ * Exception class thrown if the maximum resync distance is exceeded.
+ * @see ScanLimits
+ */
+public class ResyncLimitExceededException extends ScanLimitExceededException {
+
+    public ResyncLimitExceededException(String message, long position) {
+        super(message, position);
+    }
+
+    @Override
+    public ScanStopReason getStopReason() {
+        return ScanStopReason.RESYNC_LIMIT;
+    }
+}
@@ -0,0 +1,28 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+/**
+ * Exception class thrown if a scan exceeds one of its {@link ScanLimits}.
+ */
+public abstract class ScanLimitExceededException extends JpegSegmentFinderException {
+
+    private final long position;
+
+    protected ScanLimitExceededException(String message, long position) {
+        super(message + " at position " + position);
+        this.position = position;
+    }
+
+    /**
+     * Returns the position, relative to the start of the data, at which the limit was exceeded.
+     * @return the position
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the reason a lenient scan reports when it stops because of this exception.
+     * @return the stop reason
+     */
+    public abstract ScanStopReason getStopReason();
+}
@@ -0,0 +1,170 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Immutable set of limits on the work performed by a scan. Limits protect
+ * against input that is corrupt or hostile, such as a large file that begins
+ * with the JPEG magic number but contains no valid segments. A scan that
+ * exceeds a limit fails with a subclass of {@link ScanLimitExceededException},
+ * or, in lenient mode, stops and reports the reason; see
+ * {@link JpegSegmentFinder#findSegmentsLeniently(InputStream, MarkerSet)}.
+ *
+ * <p>The default value of each limit is unlimited. A finder's limits apply to
+ * every scan it performs, including iterators, streams, and asynchronous scans.
+ * Limits may also be passed to a {@link JpegPushParser} and to a
+ * {@link JpegSegmentRewriter}, which do not use a finder.
+ */
+public final class ScanLimits {
+
+    private static final ScanLimits NONE = builder().build();
+
+    private final long maxResyncBytes;
+    private final long maxBytes;
+    private final int maxSegments;
+    private final Duration timeout;
+
+    private ScanLimits(Builder builder) {
+        maxResyncBytes = builder.maxResyncBytes;
+        maxBytes = builder.maxBytes;
+        maxSegments = builder.maxSegments;
+        timeout = builder.timeout;
+    }
+
+    /**
+     * Returns an instance with no limits.
+     * @return limits instance
+     */
+    public static ScanLimits none() {
+        return NONE;
+    }
+
+    /**
+     * Creates a new builder.
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the maximum number of bytes that may be passed over while searching
+     * for a single segment marker. This does not apply to entropy-coded image data.
+     * @return the maximum resync distance
+     */
+    public long getMaxResyncBytes() {
+        return maxResyncBytes;
+    }
+
+    /**
+     * Returns the maximum position, relative to the start of the data, to which a scan may advance.
+     * @return the maximum number of bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the maximum number of segment markers a scan may encounter.
+     * @return the maximum number of segments
+     */
+    public int getMaxSegments() {
+        return maxSegments;
+    }
+
+    /**
+     * Returns the maximum duration of a scan, or null if unlimited.
+     * @return the timeout
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public String toString() {
+        return "ScanLimits{" +
+                "maxResyncBytes=" + maxResyncBytes +
+                ", maxBytes=" + maxBytes +
+                ", maxSegments=" + maxSegments +
+                ", timeout=" + timeout +
+                '}';
+    }
+
+    /**
+     * Builder of scan limits instances.
+     */
+    public static final class Builder {
+
+        private long maxResyncBytes = Long.MAX_VALUE;
+        private long maxBytes = Long.MAX_VALUE;
+        private int maxSegments = Integer.MAX_VALUE;
+        private Duration timeout;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the maximum number of bytes that may be passed over while searching for a single marker.
+         * @param maxResyncBytes maximum resync distance; must be nonnegative
+         * @return this builder
+         */
+        public Builder maxResyncBytes(long maxResyncBytes) {
+            if (maxResyncBytes < 0) {
+                throw new IllegalArgumentException("max resync bytes must be nonnegative");
+            }
+            this.maxResyncBytes = maxResyncBytes;
+            return this;
+        }
+
+        /**
+         * Sets the maximum position to which a scan may advance.
+         * @param maxBytes maximum number of bytes; must be nonnegative
+         * @return this builder
+         */
+        public Builder maxBytes(long maxBytes) {
+            if (maxBytes < 0) {
+                throw new IllegalArgumentException("max bytes must be nonnegative");
+            }
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of segment markers a scan may encounter.
+         * @param maxSegments maximum number of segments; must be nonnegative
+         * @return this builder
+         */
+        public Builder maxSegments(int maxSegments) {
+            if (maxSegments < 0) {
+                throw new IllegalArgumentException("max segments must be nonnegative");
+            }
+            this.maxSegments = maxSegments;
+            return this;
+        }
+
+        /**
+         * Sets the maximum duration of a scan. The deadline is checked between
+         * segments and periodically while searching for markers, so a scan
+         * blocked in a read of the underlying source may overrun it.
+         * @param timeout the timeout; must be positive
+         * @return this builder
+         */
+        public Builder timeout(Duration timeout) {
+            if (timeout.isNegative() || timeout.isZero()) {
+                throw new IllegalArgumentException("timeout must be positive");
+            }
+            this.timeout = Objects.requireNonNull(timeout);
+            return this;
+        }
+
+        /**
+         * Builds a limits instance.
+         * @return a new limits instance
+         */
+        public ScanLimits build() {
+            return new ScanLimits(this);
+        }
+    }
+}
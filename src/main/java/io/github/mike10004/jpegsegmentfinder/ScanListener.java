@@ -0,0 +1,34 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+/**
+ * Interface of a service that is notified when a scan ends. A listener is
+ * attached to a finder with {@link JpegSegmentFinder#JpegSegmentFinder(ScanListener)}.
+ * Listeners are invoked on the scanning thread, or, for an asynchronous scan,
+ * on the thread that completes it, so they should return quickly,
+ * and a listener attached to a finder that is used by multiple threads must be
+ * thread-safe.
+ *
+ * <p>Every scan performed by a finder is reported, including asynchronous scans
+ * and scans performed by iterators and streams. An iterator or stream reports
+ * its scan only when it is exhausted or fails, so one that is abandoned early,
+ * for example by a short-circuiting stream operation, is not reported. Scans by
+ * a {@link JpegPushParser} or a {@link JpegSegmentRewriter}, which do not use a
+ * finder, are not reported.
+ */
+public interface ScanListener {
+
+    /**
+     * Invoked when a scan completes normally.
+     * @param statistics measurements of the scan
+     */
+    void scanCompleted(ScanStatistics statistics);
+
+    /**
+     * Invoked when a scan ends with an exception, before the exception is
+     * thrown to the caller. This implementation does nothing.
+     * @param statistics measurements of the scan up to the point of failure
+     * @param exception the exception
+     */
+    default void scanFailed(ScanStatistics statistics, Exception exception) {
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Class that represents the result of a lenient scan: the segments found
+ * before the scan stopped, together with where and why it stopped.
+ */
+public class ScanReport {
+
+    /**
+     * Segments found, in order of occurrence.
+     */
+    public final List<JpegSegmentSpec> segments;
+
+    /**
+     * Reason the scan stopped.
+     */
+    public final ScanStopReason stopReason;
+
+    /**
+     * Position, relative to the start of the data, at which the scan stopped.
+     */
+    public final long stopPosition;
+
+    /**
+     * Description of the condition that stopped the scan, or null if the scan
+     * stopped normally.
+     */
+    public final String detail;
+
+    /**
+     * Constructs a new instance.
+     * @param segments segments found
+     * @param stopReason reason the scan stopped
+     * @param stopPosition position at which the scan stopped
+     * @param detail description of the stopping condition, or null
+     */
+    public ScanReport(List<JpegSegmentSpec> segments, ScanStopReason stopReason, long stopPosition, String detail) {
+        this.segments = Collections.unmodifiableList(Objects.requireNonNull(segments));
+        this.stopReason = Objects.requireNonNull(stopReason);
+        this.stopPosition = stopPosition;
+        this.detail = detail;
+    }
+
+    /**
+     * Tests whether the scan reached the start-of-scan marker.
+     * @return true if all segments preceding the image data were scanned
+     */
+    public boolean isComplete() {
+        return stopReason == ScanStopReason.START_OF_SCAN;
+    }
+
+    @Override
+    public String toString() {
+        return "ScanReport{" +
+                "segments=" + segments.size() +
+                ", stopReason=" + stopReason +
+                ", stopPosition=" + stopPosition +
+                ", detail=" + detail +
+                '}';
+    }
+}
@@ -0,0 +1,90 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+/**
+ * Class that represents measurements of a single scan. Instances are
+ * passed to a {@link ScanListener} when a scan ends.
+ *
+ * <p>The source counts describe I/O performed on the underlying stream or
+ * channel. A large number of read calls relative to the number of bytes read
+ * indicates that the source is being read in small pieces. Scans of byte
+ * buffers perform no I/O, so their source counts are zero.
+ */
+public class ScanStatistics {
+
+    /**
+     * Number of bytes read from the source, including bytes read ahead into a buffer.
+     */
+    public final long bytesRead;
+
+    /**
+     * Number of bytes of the source that were skipped without being read.
+     */
+    public final long bytesSkipped;
+
+    /**
+     * Number of read calls made on the source.
+     */
+    public final long readCalls;
+
+    /**
+     * Number of skip calls made on the source. Repositioning a channel counts as a skip call.
+     */
+    public final long skipCalls;
+
+    /**
+     * Number of segment markers found, whether or not they matched.
+     */
+    public final int segmentsVisited;
+
+    /**
+     * Number of segments that matched the requested markers.
+     */
+    public final int segmentsMatched;
+
+    /**
+     * Number of bytes passed over while searching for segment markers, including
+     * fill bytes. In well-formed data, this is zero.
+     */
+    public final long resyncBytes;
+
+    /**
+     * Wall-clock duration of the scan, in nanoseconds.
+     */
+    public final long elapsedNanos;
+
+    /**
+     * Constructs a new instance.
+     * @param bytesRead number of bytes read from the source
+     * @param bytesSkipped number of bytes skipped without being read
+     * @param readCalls number of read calls made on the source
+     * @param skipCalls number of skip calls made on the source
+     * @param segmentsVisited number of segment markers found
+     * @param segmentsMatched number of segments that matched
+     * @param resyncBytes number of bytes passed over while searching for markers
+     * @param elapsedNanos duration of the scan in nanoseconds
+     */
+    public ScanStatistics(long bytesRead, long bytesSkipped, long readCalls, long skipCalls, int segmentsVisited, int segmentsMatched, long resyncBytes, long elapsedNanos) {
+        this.bytesRead = bytesRead;
+        this.bytesSkipped = bytesSkipped;
+        this.readCalls = readCalls;
+        this.skipCalls = skipCalls;
+        this.segmentsVisited = segmentsVisited;
+        this.segmentsMatched = segmentsMatched;
+        this.resyncBytes = resyncBytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ScanStatistics{" +
+                "bytesRead=" + bytesRead +
+                ", bytesSkipped=" + bytesSkipped +
+                ", readCalls=" + readCalls +
+                ", skipCalls=" + skipCalls +
+                ", segmentsVisited=" + segmentsVisited +
+                ", segmentsMatched=" + segmentsMatched +
+                ", resyncBytes=" + resyncBytes +
+                ", elapsedNanos=" + elapsedNanos +
+                '}';
+    }
+}
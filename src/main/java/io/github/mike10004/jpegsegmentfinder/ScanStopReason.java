@@ -0,0 +1,43 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+/**
+ * Enumeration of reasons a lenient scan stopped.
+ * @see ScanReport
+ */
+public enum ScanStopReason {
+
+    /**
+     * The start-of-scan marker was reached. This is the normal outcome.
+     */
+    START_OF_SCAN,
+
+    /**
+     * The data ended before the start-of-scan marker.
+     */
+    END_OF_DATA,
+
+    /**
+     * The data is not JPEG data or is corrupt.
+     */
+    CORRUPT_DATA,
+
+    /**
+     * The maximum resync distance was exceeded.
+     */
+    RESYNC_LIMIT,
+
+    /**
+     * The maximum number of bytes was exceeded.
+     */
+    BYTE_LIMIT,
+
+    /**
+     * The maximum number of segments was exceeded.
+     */
+    SEGMENT_LIMIT,
+
+    /**
+     * The deadline passed.
+     */
+    DEADLINE
+}
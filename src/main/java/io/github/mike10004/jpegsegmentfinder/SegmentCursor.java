@@ -0,0 +1,530 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Cursor that advances through the matching segments of JPEG data on demand.
+ * The content of a matching segment is not skipped until the cursor is advanced
+ * past it, so a caller that stops advancing leaves the reader positioned at the
+ * start of the current segment's content.
+ *
+ * <p>By default, the cursor stops at the first start-of-scan marker. A cursor
+ * that scans through the image instead walks the entropy-coded data following
+ * each start-of-scan segment, reports each scan as a segment whose content
+ * extends to the next marker, and records the position of the end-of-image marker
+ * and the length of any data that follows it.
+ */
+final class SegmentCursor {
+
+    /**
+     * The 0xFF byte that signals the start of a segment.
+     */
+    static final byte SEGMENT_IDENTIFIER = (byte) 0xFF;
+
+    /**
+     * Start-Of-Scan marker. This segment's length doesn't include the image data.
+     */
+    static final byte SEGMENT_SOS = (byte) 0xDA;
+
+    /**
+     * End-Of-Image marker.
+     */
+    static final byte MARKER_EOI = (byte) 0xD9;
+
+    /**
+     * First restart marker, RST0.
+     */
+    private static final byte MARKER_RST0 = (byte) 0xD0;
+
+    /**
+     * Last restart marker, RST7.
+     */
+    private static final byte MARKER_RST7 = (byte) 0xD7;
+
+    /**
+     * Maximum number of bytes searched for a marker between deadline checks.
+     */
+    private static final long SEARCH_CHUNK = 1024 * 1024;
+
+    private final SequentialReader reader;
+    private final OccurrencePolicy policy;
+    private final boolean throughImage;
+    private final ScanLimits limits;
+    private long deadline;
+    /**
+     * Bitmap of markers of segments to be reported, in the layout used by {@link MarkerSet}.
+     * Under {@link OccurrencePolicy#FIRST}, a marker's bit is cleared when its segment is found.
+     */
+    private final long[] segmentMarkers;
+    private boolean started;
+    private boolean finished;
+    private long pendingSkip;
+    private byte marker;
+    private long headerOffset;
+    private long contentOffset;
+    private long contentLength;
+    /**
+     * Marker found at the end of entropy-coded data, or zero if none is pending.
+     */
+    private byte pendingMarker;
+    private long pendingMarkerOffset;
+    private long endOfImageOffset = -1;
+    private long trailingOffset = -1;
+    private long trailingLength;
+    private int segmentsVisited;
+    private int segmentsMatched;
+    private long resyncBytes;
+    private boolean reachedStartOfScan;
+    /**
+     * Identifiers of segments to be reported, or null if segments are not identified.
+     */
+    private Set<AppIdentifier> identifiers;
+    private byte[] signatureBuffer;
+    private AppIdentifier identifier;
+
+    public SegmentCursor(SequentialReader reader, MarkerSet segmentMarkers, OccurrencePolicy policy) {
+        this(reader, segmentMarkers, policy, false);
+    }
+
+    /**
+     * Constructs an instance.
+     * @param reader the reader
+     * @param segmentMarkers markers of segments to be reported
+     * @param policy occurrence policy
+     * @param throughImage true to continue scanning past start-of-scan segments
+     */
+    public SegmentCursor(SequentialReader reader, MarkerSet segmentMarkers, OccurrencePolicy policy, boolean throughImage) {
+        this(reader, segmentMarkers, policy, throughImage, ScanLimits.none());
+    }
+
+    /**
+     * Constructs an instance that enforces limits. The scan deadline is measured
+     * from the first advance of the cursor.
+     * @param reader the reader
+     * @param segmentMarkers markers of segments to be reported
+     * @param policy occurrence policy
+     * @param throughImage true to continue scanning past start-of-scan segments
+     * @param limits limits on the work performed by the scan
+     */
+    public SegmentCursor(SequentialReader reader, MarkerSet segmentMarkers, OccurrencePolicy policy, boolean throughImage, ScanLimits limits) {
+        this.reader = Objects.requireNonNull(reader);
+        this.segmentMarkers = segmentMarkers.toWords();
+        this.policy = Objects.requireNonNull(policy);
+        this.throughImage = throughImage;
+        this.limits = Objects.requireNonNull(limits);
+        finished = MarkerSet.isEmpty(this.segmentMarkers) && !throughImage;
+    }
+
+    /**
+     * Advances to the next matching segment.
+     * @return true if the cursor is positioned at a matching segment, false if there are no more
+     * @throws JpegSegmentFinderException if the data is verifiably not JPEG data or is corrupt
+     * @throws IOException on I/O error, including unexpected end of data
+     */
+    public boolean next() throws JpegSegmentFinderException, IOException {
+        if (finished) {
+            return false;
+        }
+        if (!started) {
+            started = true;
+            if (limits.getTimeout() != null) {
+                deadline = System.nanoTime() + limits.getTimeout().toNanos();
+            }
+            readMagicNumber();
+        }
+        if (pendingSkip > 0) {
+            // skip throws EOF if it can't skip as much as specified
+            long n = pendingSkip;
+            pendingSkip = 0;
+            checkSkip(n);
+            reader.skip(n);
+        }
+        if (!advance()) {
+            finished = true;
+            return false;
+        }
+        if (policy == OccurrencePolicy.FIRST) {
+            MarkerSet.remove(segmentMarkers, marker);
+            finished = finished || (MarkerSet.isEmpty(segmentMarkers) && !throughImage);
+        }
+        return true;
+    }
+
+    private void readMagicNumber() throws IOException {
+        // Must be big-endian
+        assert (reader.isMotorolaByteOrder());
+
+        // first two bytes should be JPEG magic number
+        final int magicNumber = reader.getUInt16();
+        if (magicNumber != 0xFFD8) {
+            throw new JpegSegmentFinderException("JPEG data is expected to begin with 0xFFD8 (ÿØ) not 0x" + Integer.toHexString(magicNumber));
+        }
+    }
+
+    private boolean advance() throws IOException {
+        do {
+            long segmentStart;
+            byte segmentType;
+            if (pendingMarker != 0) {
+                // the marker that ended entropy-coded data has already been read
+                segmentStart = pendingMarkerOffset;
+                segmentType = pendingMarker;
+                pendingMarker = 0;
+            } else {
+                segmentStart = reader.getPosition();
+                // Find the segment marker. Markers are zero or more 0xFF bytes, followed
+                // by a 0xFF and then a byte not equal to 0x00 or 0xFF.
+
+                long distance = 0;
+                do {
+                    // Skip to the next 0xFF byte in bulk, then read past any fill bytes
+                    distance += skipToIdentifier(true, distance);
+                    reader.getInt8();
+                    segmentType = reader.getInt8();
+                    while (segmentType == SEGMENT_IDENTIFIER) {
+                        checkResync(++distance);
+                        segmentType = reader.getInt8();
+                    }
+                    if (segmentType == 0) {
+                        distance += 2;
+                        checkResync(distance);
+                    }
+                } while (segmentType == 0);
+                resyncBytes += distance;
+            }
+
+            segmentsVisited++;
+            if (segmentsVisited > limits.getMaxSegments()) {
+                throw new SegmentLimitExceededException("number of segments exceeds limit of " + limits.getMaxSegments(), segmentStart);
+            }
+            checkDeadline();
+
+            if (segmentType == SEGMENT_SOS && !throughImage) {
+                // The 'Start-Of-Scan' segment's length doesn't include the image data, instead would
+                // have to search for the two bytes: 0xFF 0xD9 (EOI).
+                // It comes last so simply return at this point
+                reachedStartOfScan = true;
+                return false;
+            }
+
+            if (segmentType == MARKER_EOI) {
+                // the 'End-Of-Image' segment -- when not scanning through the image,
+                // this should never be found in this fashion
+                if (!throughImage) {
+                    return false;
+                }
+                endOfImageOffset = reader.getPosition() - 2;
+                trailingOffset = reader.getPosition();
+                trailingLength = reader.skipToEnd();
+                finished = true;
+                if (MarkerSet.contains(segmentMarkers, segmentType)) {
+                    setCurrent(segmentType, segmentStart, trailingOffset, 0);
+                    return true;
+                }
+                return false;
+            }
+
+            // next 2-bytes are <segment-size>: [high-byte] [low-byte]
+            int segmentLength = reader.getUInt16();
+
+            // segment length includes size bytes, so subtract two
+            segmentLength -= 2;
+
+            if (segmentLength < 0)
+                throw new JpegSegmentFinderException("JPEG segment size would be less than zero");
+
+            if (segmentType == SEGMENT_SOS) {
+                long segmentContentStart = reader.getPosition();
+                checkSkip(segmentLength);
+                boolean complete = reader.trySkip(segmentLength) && scanEntropyCodedData();
+                long scanEnd = complete ? pendingMarkerOffset : reader.getPosition();
+                if (!complete) {
+                    // the data is truncated, so there is no end-of-image marker
+                    finished = true;
+                }
+                if (MarkerSet.contains(segmentMarkers, segmentType)) {
+                    setCurrent(segmentType, segmentStart, segmentContentStart, scanEnd - segmentContentStart);
+                    return true;
+                }
+                if (!complete) {
+                    return false;
+                }
+                continue;
+            }
+
+            // Check whether we are interested in this segment
+            if (MarkerSet.contains(segmentMarkers, segmentType) && identifiers != null) {
+                long segmentContentStart = reader.getPosition();
+                int peeked = Math.min(segmentLength, signatureBuffer.length);
+                try {
+                    reader.getBytes(signatureBuffer, 0, peeked);
+                } catch (EOFException e) {
+                    return false;
+                }
+                AppIdentifier found = AppIdentifier.identify(segmentType, signatureBuffer, 0, peeked);
+                long remaining = segmentLength - peeked;
+                if (identifiers.contains(found)) {
+                    identifier = found;
+                    setCurrent(segmentType, segmentStart, segmentContentStart, segmentLength);
+                    pendingSkip = remaining;
+                    return true;
+                }
+                checkSkip(remaining);
+                if (!reader.trySkip(remaining)) {
+                    return false;
+                }
+            } else if (MarkerSet.contains(segmentMarkers, segmentType)) {
+                setCurrent(segmentType, segmentStart, reader.getPosition(), segmentLength);
+                pendingSkip = segmentLength;
+                return true;
+            } else {
+                // Some if the JPEG is truncated, just return what data we've already gathered
+                checkSkip(segmentLength);
+                if (!reader.trySkip(segmentLength)) {
+                    return false;
+                }
+            }
+
+        } while (true);
+    }
+
+    private void setCurrent(byte segmentType, long segmentStart, long segmentContentStart, long segmentLength) {
+        segmentsMatched++;
+        marker = segmentType;
+        headerOffset = segmentStart;
+        contentOffset = segmentContentStart;
+        contentLength = segmentLength;
+    }
+
+    /**
+     * Scans entropy-coded data for the next marker. Stuffed zero bytes and
+     * restart markers are part of the entropy-coded data.
+     * @return true if a marker was found, false if the data ended first
+     */
+    private boolean scanEntropyCodedData() throws IOException {
+        try {
+            while (true) {
+                skipToIdentifier(false, 0);
+                long markerOffset = reader.getPosition();
+                reader.getInt8();
+                byte b = reader.getInt8();
+                long fill = 0;
+                while (b == SEGMENT_IDENTIFIER) {
+                    checkProgress(++fill);
+                    b = reader.getInt8();
+                }
+                if (b != 0 && (b < MARKER_RST0 || b > MARKER_RST7)) {
+                    pendingMarker = b;
+                    pendingMarkerOffset = markerOffset;
+                    return true;
+                }
+            }
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Skips to the next 0xFF byte, in chunks, enforcing limits.
+     * @param resync true if searching for a segment marker, false if scanning entropy-coded data
+     * @param distance number of bytes already passed over while searching for the current marker
+     * @return the number of bytes skipped
+     */
+    private long skipToIdentifier(boolean resync, long distance) throws IOException {
+        long skipped = 0;
+        while (true) {
+            long window = Math.min(SEARCH_CHUNK, limits.getMaxBytes() - reader.getPosition());
+            if (resync && limits.getMaxResyncBytes() != Long.MAX_VALUE) {
+                // a marker found at the end of the window is exactly at the limit
+                window = Math.min(window, limits.getMaxResyncBytes() - distance - skipped + 1);
+            }
+            if (window <= 0) {
+                throw new ByteLimitExceededException("scan position exceeds limit of " + limits.getMaxBytes() + " bytes", reader.getPosition());
+            }
+            long n = reader.skipUntil(SEGMENT_IDENTIFIER, window);
+            if (n >= 0) {
+                return skipped + n;
+            }
+            skipped += window;
+            if (resync) {
+                checkResync(distance + skipped);
+            }
+            checkDeadline();
+        }
+    }
+
+    private void checkResync(long distance) throws IOException {
+        if (distance > limits.getMaxResyncBytes()) {
+            throw new ResyncLimitExceededException("resync distance exceeds limit of " + limits.getMaxResyncBytes() + " bytes", reader.getPosition());
+        }
+        checkProgress(distance);
+    }
+
+    /**
+     * Checks the byte limit, and periodically checks the deadline, while bytes are read one at a time.
+     */
+    private void checkProgress(long count) throws IOException {
+        if (reader.getPosition() > limits.getMaxBytes()) {
+            throw new ByteLimitExceededException("scan position exceeds limit of " + limits.getMaxBytes() + " bytes", reader.getPosition());
+        }
+        if ((count & 0xFFFF) == 0) {
+            checkDeadline();
+        }
+    }
+
+    private void checkSkip(long n) throws IOException {
+        if (n > limits.getMaxBytes() - reader.getPosition()) {
+            throw new ByteLimitExceededException("segment extends beyond limit of " + limits.getMaxBytes() + " bytes", reader.getPosition());
+        }
+    }
+
+    private void checkDeadline() throws IOException {
+        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            throw new DeadlineExceededException("scan deadline passed", reader.getPosition());
+        }
+    }
+
+    /**
+     * Reads bytes of the content of the current segment. Bytes are read from the
+     * start of the content, or from where the previous invocation left off; the
+     * next advance skips only the rest of the content. This is not supported for
+     * start-of-scan segments or if identification is enabled.
+     * @param dst destination array
+     * @param offset offset in the destination array
+     * @param length maximum number of bytes to read
+     * @return the number of bytes read, which is less than {@code length} only if
+     * the end of the content has been reached
+     * @throws IOException on I/O error, including unexpected end of data
+     */
+    public int readContent(byte[] dst, int offset, int length) throws IOException {
+        if (identifiers != null || marker == SEGMENT_SOS) {
+            throw new IllegalStateException("content of current segment is not readable");
+        }
+        int n = (int) Math.min(length, pendingSkip);
+        reader.getBytes(dst, offset, n);
+        pendingSkip -= n;
+        return n;
+    }
+
+    /**
+     * Enables identification of segment content. Each segment whose marker is
+     * requested is classified by the signature at the start of its content, and
+     * reported only if its identifier is among those given. This must be invoked
+     * before the first advance, and is only supported with {@link OccurrencePolicy#ALL}.
+     * @param identifiers identifiers of segments to be reported
+     */
+    public void identify(Set<AppIdentifier> identifiers) {
+        if (started) {
+            throw new IllegalStateException("cursor already advanced");
+        }
+        if (policy != OccurrencePolicy.ALL) {
+            throw new IllegalStateException("identification requires policy " + OccurrencePolicy.ALL);
+        }
+        this.identifiers = Objects.requireNonNull(identifiers);
+        signatureBuffer = new byte[AppIdentifier.MAX_SIGNATURE_LENGTH];
+    }
+
+    /**
+     * Returns the identifier of the current segment.
+     * @return the identifier, or null if identification is not enabled
+     */
+    public AppIdentifier identifier() {
+        return identifier;
+    }
+
+    /**
+     * Creates a specification of the current segment that includes its identifier.
+     * @return a new segment specification
+     * @throws IllegalStateException if identification is not enabled
+     */
+    public AppSegmentSpec toAppSpec() {
+        if (identifier == null) {
+            throw new IllegalStateException("identification not enabled");
+        }
+        return new AppSegmentSpec(marker, headerOffset, contentOffset, contentLength, identifier);
+    }
+
+    /**
+     * Tests whether the cursor stopped because it reached a start-of-scan marker.
+     * @return true if the start-of-scan marker was reached
+     */
+    public boolean reachedStartOfScan() {
+        return reachedStartOfScan;
+    }
+
+    public byte marker() {
+        return marker;
+    }
+
+    public long headerOffset() {
+        return headerOffset;
+    }
+
+    public long contentOffset() {
+        return contentOffset;
+    }
+
+    public long contentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Returns the offset of the end-of-image marker.
+     * @return the offset, or -1 if the marker has not been found
+     */
+    public long endOfImageOffset() {
+        return endOfImageOffset;
+    }
+
+    /**
+     * Returns the offset of the data following the end-of-image marker.
+     * @return the offset, or -1 if the end-of-image marker has not been found
+     */
+    public long trailingOffset() {
+        return trailingOffset;
+    }
+
+    /**
+     * Returns the length of the data following the end-of-image marker.
+     * @return the length
+     */
+    public long trailingLength() {
+        return trailingLength;
+    }
+
+    /**
+     * Returns the number of segment markers found so far, whether or not they matched.
+     * @return the number of segments visited
+     */
+    public int segmentsVisited() {
+        return segmentsVisited;
+    }
+
+    /**
+     * Returns the number of matching segments found so far.
+     * @return the number of segments matched
+     */
+    public int segmentsMatched() {
+        return segmentsMatched;
+    }
+
+    /**
+     * Returns the number of bytes passed over while searching for segment markers,
+     * including fill bytes. In well-formed data, this is zero.
+     * @return the number of resync bytes
+     */
+    public long resyncBytes() {
+        return resyncBytes;
+    }
+
+    /**
+     * Creates a specification of the current segment.
+     * @return a new segment specification
+     */
+    public JpegSegmentSpec toSpec() {
+        return new JpegSegmentSpec(marker, headerOffset, contentOffset, contentLength);
+    }
+}
@@ -0,0 +1,491 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+/**
+ * Cache of the segments found in files. Entries are keyed by pathname and
+ * validated against the file's size and last-modified time, and optionally against
+ * a hash of the file content, so an entry for a file that has changed is ignored
+ * and replaced. A lookup that hits the cache returns segments without reading
+ * the JPEG file, unless content hash verification is enabled.
+ *
+ * <p>The cache has a bounded in-memory tier with least-recently-used eviction
+ * and an optional on-disk tier that survives restarts. The on-disk tier is an
+ * append-only record file plus a hash table file, named by appending
+ * {@code .slots} to the record file name, that maps pathnames to record
+ * offsets. Both files are memory-mapped in chunks, so neither the size of the
+ * files nor the number of keys is limited by the heap or by the maximum size
+ * of a single mapping. Records made obsolete by newer records for the same
+ * pathname are removed by compaction, which happens automatically when they
+ * make up more than half of the record file, or on demand by {@link #compact()}.
+ * If the hash table file is missing or out of date, it is rebuilt from the
+ * record file. Each entry records every segment preceding the image data, so
+ * a lookup for any set of markers can be satisfied from the same entry.
+ *
+ * <p>Instances of this class are thread-safe.
+ */
+public class SegmentIndexCache implements Closeable {
+
+    private static final int FILE_MAGIC = 0x4A534649; // "JSFI"
+    private static final int FILE_VERSION = 2;
+    /*
+     * File header layout: int magic, int version, long generation
+     */
+    private static final int FILE_HEADER_LENGTH = 16;
+    private static final long NO_HASH = -1L;
+    private static final long COMPACTION_MIN_LENGTH = 1 << 20;
+
+    private final JpegSegmentFinder finder;
+    private final boolean verifyContentHash;
+    private final Map<String, Entry> memory;
+    private final Path indexFile;
+    private final Path tableFile;
+    private final int chunkSize;
+    private FileChannel indexChannel;
+    private ChunkedMapping mapped;
+    private long indexLength;
+    private OffsetTable offsets;
+
+    /**
+     * Constructs an instance.
+     * @param finder finder used to scan files that miss the cache
+     * @param maxEntries maximum number of entries in the in-memory tier
+     * @param indexFile pathname of the on-disk index file, or null for an in-memory cache
+     * @param verifyContentHash true to store a hash of the content of each file and
+     *                          verify it on lookup; this requires reading the whole file
+     *                          on every lookup, and protects against modifications that
+     *                          preserve the size and last-modified time
+     * @throws IOException if the index file cannot be opened or is not a valid index file
+     */
+    public SegmentIndexCache(JpegSegmentFinder finder, int maxEntries, Path indexFile, boolean verifyContentHash) throws IOException {
+        this(finder, maxEntries, indexFile, verifyContentHash, ChunkedMapping.DEFAULT_CHUNK_SIZE);
+    }
+
+    SegmentIndexCache(JpegSegmentFinder finder, int maxEntries, Path indexFile, boolean verifyContentHash, int chunkSize) throws IOException {
+        this.finder = Objects.requireNonNull(finder);
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("max entries must be positive");
+        }
+        this.verifyContentHash = verifyContentHash;
+        this.chunkSize = chunkSize;
+        // Entry is qualified because within a LinkedHashMap subclass the simple name
+        // resolves to the map's own nested Entry class on the Java 8 class library
+        memory = new LinkedHashMap<String, SegmentIndexCache.Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SegmentIndexCache.Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.indexFile = indexFile;
+        if (indexFile != null) {
+            tableFile = indexFile.resolveSibling(indexFile.getFileName() + ".slots");
+            indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+            try {
+                loadIndex();
+            } catch (IOException | RuntimeException e) {
+                close();
+                throw e;
+            }
+        } else {
+            tableFile = null;
+        }
+    }
+
+    /**
+     * Creates a cache with only an in-memory tier.
+     * @param finder finder used to scan files that miss the cache
+     * @param maxEntries maximum number of entries
+     * @return a new cache
+     */
+    public static SegmentIndexCache inMemory(JpegSegmentFinder finder, int maxEntries) {
+        try {
+            return new SegmentIndexCache(finder, maxEntries, null, false);
+        } catch (IOException e) {
+            throw new IllegalStateException("in-memory cache does not perform I/O", e);
+        }
+    }
+
+    /**
+     * Creates a cache with an in-memory tier and an on-disk tier.
+     * @param finder finder used to scan files that miss the cache
+     * @param maxEntries maximum number of entries in the in-memory tier
+     * @param indexFile pathname of the index file; created if it does not exist,
+     *                  along with a sibling hash table file with a {@code .slots} suffix
+     * @return a new cache
+     * @throws IOException if the index file cannot be opened or is not a valid index file
+     */
+    public static SegmentIndexCache persistent(JpegSegmentFinder finder, int maxEntries, Path indexFile) throws IOException {
+        return new SegmentIndexCache(finder, maxEntries, Objects.requireNonNull(indexFile), false);
+    }
+
+    /**
+     * Find segments matching the given segment marker bytes in a file, using
+     * cached segments if a valid entry exists for the file.
+     * @param jpegFile pathname of a JPEG file
+     * @param segmentMarkers set of segment marker bytes for which segments are to be returned
+     * @return a list of segments
+     * @throws JpegSegmentFinderException if the file verifiably does not contain
+     * JPEG data or the JPEG data is verifiably corrupt or inconsistent
+     * @throws IOException on I/O error
+     */
+    public List<JpegSegmentSpec> findSegments(Path jpegFile, MarkerSet segmentMarkers) throws JpegSegmentFinderException, IOException {
+        Objects.requireNonNull(segmentMarkers);
+        String key = jpegFile.toAbsolutePath().normalize().toString();
+        BasicFileAttributes attributes = Files.readAttributes(jpegFile, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long hash = verifyContentHash ? hashContent(jpegFile) : NO_HASH;
+        Entry entry = lookup(key);
+        if (entry == null || !entry.matches(size, lastModified, hash)) {
+            List<JpegSegmentSpec> segments = finder.findSegments(jpegFile, MarkerSet.all());
+            entry = new Entry(size, lastModified, hash, segments);
+            store(key, entry);
+        }
+        return entry.filter(segmentMarkers);
+    }
+
+    /**
+     * Rewrites the index file so that it contains only the current record for
+     * each pathname. Does nothing if the cache has no on-disk tier.
+     * @throws IOException on I/O error
+     */
+    public synchronized void compact() throws IOException {
+        if (indexChannel == null) {
+            return;
+        }
+        long generation = ThreadLocalRandom.current().nextLong();
+        Path tempIndex = OffsetTable.tempSibling(indexFile);
+        Path tempTable = OffsetTable.tempSibling(tableFile);
+        FileChannel target = null;
+        OffsetTable targetOffsets = null;
+        long targetLength = FILE_HEADER_LENGTH;
+        try {
+            target = FileChannel.open(tempIndex, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            targetOffsets = OffsetTable.create(tempTable, generation, chunkSize);
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(target), StreamReader.DEFAULT_BUFFER_SIZE);
+            out.write(encodeHeader(generation).array());
+            byte[] buffer = new byte[StreamReader.DEFAULT_BUFFER_SIZE];
+            ensureMapped(indexLength);
+            for (long position = FILE_HEADER_LENGTH; position < indexLength; ) {
+                ByteBuffer record = record(position);
+                int recordSize = 4 + record.remaining();
+                byte[] keyBytes = readKey(record.duplicate());
+                long current = position;
+                if (offsets.get(hashKey(keyBytes), offset -> offset == current) == current) {
+                    if (buffer.length < recordSize) {
+                        buffer = new byte[recordSize];
+                    }
+                    mapped.slice(position, recordSize).get(buffer, 0, recordSize);
+                    out.write(buffer, 0, recordSize);
+                    targetOffsets.put(hashKey(keyBytes), targetLength, offset -> false);
+                    targetLength += recordSize;
+                }
+                position += recordSize;
+            }
+            out.flush();
+            targetOffsets.setCoveredLength(targetLength);
+            targetOffsets.addLiveBytes(targetLength - FILE_HEADER_LENGTH);
+            Files.move(tempIndex, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            if (targetOffsets != null) {
+                targetOffsets.close();
+            }
+            if (target != null) {
+                target.close();
+            }
+            Files.deleteIfExists(tempIndex);
+            Files.deleteIfExists(tempTable);
+            throw e;
+        }
+        offsets.close();
+        offsets = targetOffsets;
+        indexChannel.close();
+        indexChannel = target;
+        indexLength = targetLength;
+        mapped = new ChunkedMapping(indexChannel, FileChannel.MapMode.READ_ONLY, chunkSize, indexLength);
+        // if this move fails, the table is rebuilt on the next open because its generation is stale
+        offsets.moveTo(tableFile);
+    }
+
+    /**
+     * Closes the index file, if any.
+     * @throws IOException on I/O error
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        mapped = null;
+        try {
+            if (offsets != null) {
+                offsets.close();
+            }
+        } finally {
+            if (indexChannel != null) {
+                indexChannel.close();
+            }
+        }
+    }
+
+    private synchronized Entry lookup(String key) throws IOException {
+        Entry entry = memory.get(key);
+        if (entry == null && indexChannel != null) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            long offset = offsets.get(hashKey(keyBytes), candidate -> hasKey(candidate, keyBytes));
+            if (offset != 0) {
+                entry = readRecord(offset);
+                memory.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    private synchronized void store(String key, Entry entry) throws IOException {
+        memory.put(key, entry);
+        if (indexChannel != null) {
+            long offset = indexLength;
+            ByteBuffer record = encodeRecord(key, entry);
+            int recordSize = record.remaining();
+            while (record.hasRemaining()) {
+                indexChannel.write(record, offset + record.position());
+            }
+            indexLength += recordSize;
+            addToTable(offset, key.getBytes(StandardCharsets.UTF_8), recordSize);
+            offsets.setCoveredLength(indexLength);
+            if (indexLength >= COMPACTION_MIN_LENGTH && offsets.liveBytes() < (indexLength - FILE_HEADER_LENGTH) / 2) {
+                compact();
+            }
+        }
+    }
+
+    private void addToTable(long offset, byte[] keyBytes, int recordSize) throws IOException {
+        long previous = offsets.put(hashKey(keyBytes), offset, candidate -> hasKey(candidate, keyBytes));
+        long previousSize = previous == 0 ? 0 : 4 + record(previous).remaining();
+        offsets.addLiveBytes(recordSize - previousSize);
+    }
+
+    private void loadIndex() throws IOException {
+        long size = indexChannel.size();
+        if (size == 0) {
+            long generation = ThreadLocalRandom.current().nextLong();
+            ByteBuffer header = encodeHeader(generation);
+            while (header.hasRemaining()) {
+                indexChannel.write(header, header.position());
+            }
+            indexLength = FILE_HEADER_LENGTH;
+            mapped = new ChunkedMapping(indexChannel, FileChannel.MapMode.READ_ONLY, chunkSize, indexLength);
+            offsets = OffsetTable.create(tableFile, generation, chunkSize);
+            offsets.setCoveredLength(indexLength);
+            return;
+        }
+        indexLength = size;
+        mapped = new ChunkedMapping(indexChannel, FileChannel.MapMode.READ_ONLY, chunkSize, size);
+        if (size < FILE_HEADER_LENGTH || mapped.getInt(0) != FILE_MAGIC) {
+            throw new IOException("not a segment index file");
+        }
+        if (mapped.getInt(4) != FILE_VERSION) {
+            throw new IOException("unsupported segment index file version " + mapped.getInt(4));
+        }
+        long generation = mapped.getLong(8);
+        offsets = OffsetTable.open(tableFile, generation, chunkSize);
+        if (offsets != null && offsets.coveredLength() > size) {
+            offsets.close();
+            offsets = null;
+        }
+        if (offsets == null) {
+            offsets = OffsetTable.create(tableFile, generation, chunkSize);
+            offsets.setCoveredLength(FILE_HEADER_LENGTH);
+        }
+        // add records appended since the table was last updated
+        long position = offsets.coveredLength();
+        while (position < size) {
+            int recordLength = position + 4 <= size ? mapped.getInt(position) : -1;
+            if (recordLength < MIN_RECORD_LENGTH || position + 4 + recordLength > size) {
+                // incomplete record at end, as after a crash mid-append; discard it so
+                // that records appended later are not parsed as part of it
+                indexChannel.truncate(position);
+                indexLength = position;
+                mapped.extend(indexLength);
+                break;
+            }
+            addToTable(position, readKey(record(position)), 4 + recordLength);
+            position += 4 + recordLength;
+        }
+        offsets.setCoveredLength(indexLength);
+    }
+
+    private void ensureMapped(long length) throws IOException {
+        if (mapped.length() < length) {
+            // records were appended after the file was mapped
+            mapped.extend(indexLength);
+        }
+    }
+
+    private static ByteBuffer encodeHeader(long generation) {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+        header.putInt(FILE_MAGIC);
+        header.putInt(FILE_VERSION);
+        header.putLong(generation);
+        ((Buffer) header).flip();
+        return header;
+    }
+
+    /*
+     * Record layout:
+     *   int recordLength (number of bytes that follow)
+     *   short keyLength, byte[keyLength] key (UTF-8)
+     *   long size, long lastModified, long hash
+     *   int segmentCount
+     *   segmentCount * (byte marker, long headerOffset, int headerLength, int contentLength)
+     */
+    private static final int SEGMENT_RECORD_LENGTH = 1 + 8 + 4 + 4;
+    private static final int MIN_RECORD_LENGTH = 2 + 8 + 8 + 8 + 4;
+
+    private static ByteBuffer encodeRecord(String key, Entry entry) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("pathname too long for index");
+        }
+        int recordLength = MIN_RECORD_LENGTH + keyBytes.length + entry.segments.size() * SEGMENT_RECORD_LENGTH;
+        ByteBuffer record = ByteBuffer.allocate(4 + recordLength);
+        record.putInt(recordLength);
+        record.putShort((short) keyBytes.length);
+        record.put(keyBytes);
+        record.putLong(entry.size);
+        record.putLong(entry.lastModified);
+        record.putLong(entry.hash);
+        record.putInt(entry.segments.size());
+        for (JpegSegmentSpec segment : entry.segments) {
+            record.put(segment.marker);
+            record.putLong(segment.headerOffset);
+            record.putInt(Math.toIntExact(segment.headerLength()));
+            record.putInt(Math.toIntExact(segment.contentLength));
+        }
+        ((Buffer) record).flip();
+        return record;
+    }
+
+    /**
+     * Gets the content of the record at an offset, excluding its length field.
+     */
+    private ByteBuffer record(long offset) throws IOException {
+        ensureMapped(offset + 4);
+        int recordLength = mapped.getInt(offset);
+        ensureMapped(offset + 4 + recordLength);
+        return mapped.slice(offset + 4, recordLength);
+    }
+
+    private boolean hasKey(long offset, byte[] keyBytes) throws IOException {
+        if (offset < FILE_HEADER_LENGTH || offset + 4 + MIN_RECORD_LENGTH > indexLength) {
+            return false;
+        }
+        int recordLength = mapped.getInt(offset);
+        if (recordLength < MIN_RECORD_LENGTH + keyBytes.length || offset + 4 + recordLength > indexLength) {
+            return false;
+        }
+        return Arrays.equals(readKey(record(offset)), keyBytes);
+    }
+
+    private static byte[] readKey(ByteBuffer record) {
+        byte[] keyBytes = new byte[record.getShort() & 0xFFFF];
+        record.get(keyBytes);
+        return keyBytes;
+    }
+
+    private Entry readRecord(long offset) throws IOException {
+        ByteBuffer record = record(offset);
+        int keyLength = record.getShort() & 0xFFFF;
+        ((Buffer) record).position(record.position() + keyLength);
+        long size = record.getLong();
+        long lastModified = record.getLong();
+        long hash = record.getLong();
+        int count = record.getInt();
+        List<JpegSegmentSpec> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte marker = record.get();
+            long headerOffset = record.getLong();
+            int headerLength = record.getInt();
+            int contentLength = record.getInt();
+            segments.add(new JpegSegmentSpec(marker, headerOffset, headerOffset + headerLength, contentLength));
+        }
+        return new Entry(size, lastModified, hash, segments);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a key, with a final mix so that the low bits used
+     * to index the table depend on every byte.
+     */
+    private static long hashKey(byte[] keyBytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : keyBytes) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long hashContent(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[StreamReader.DEFAULT_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static class Entry {
+
+        public final long size;
+        public final long lastModified;
+        public final long hash;
+        public final List<JpegSegmentSpec> segments;
+
+        public Entry(long size, long lastModified, long hash, List<JpegSegmentSpec> segments) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.segments = segments;
+        }
+
+        public boolean matches(long size, long lastModified, long hash) {
+            return this.size == size && this.lastModified == lastModified && (hash == NO_HASH || this.hash == hash);
+        }
+
+        public List<JpegSegmentSpec> filter(MarkerSet segmentMarkers) {
+            List<JpegSegmentSpec> filtered = new ArrayList<>();
+            for (JpegSegmentSpec segment : segments) {
+                if (segmentMarkers.contains(segment.marker)) {
+                    filtered.add(segment);
+                }
+            }
+            return filtered.isEmpty() ? Collections.emptyList() : filtered;
+        }
+    }
+}
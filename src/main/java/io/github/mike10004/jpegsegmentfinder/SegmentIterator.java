@@ -0,0 +1,76 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Iterator that advances a segment cursor on demand.
+ * @param <T> element type
+ */
+class SegmentIterator<T> implements Iterator<T> {
+
+    /**
+     * Receiver of the end of the iteration.
+     */
+    interface EndHandler {
+
+        /**
+         * Invoked when the cursor has no more segments or fails.
+         * @param exception the exception, or null if the iteration completed normally
+         */
+        void ended(Exception exception);
+    }
+
+    private final SegmentCursor cursor;
+    private final Function<? super SegmentCursor, ? extends T> transform;
+    private final EndHandler endHandler;
+    private T next;
+    private boolean done;
+
+    public SegmentIterator(SegmentCursor cursor, Function<? super SegmentCursor, ? extends T> transform) {
+        this(cursor, transform, exception -> {});
+    }
+
+    public SegmentIterator(SegmentCursor cursor, Function<? super SegmentCursor, ? extends T> transform, EndHandler endHandler) {
+        this.cursor = Objects.requireNonNull(cursor);
+        this.transform = Objects.requireNonNull(transform);
+        this.endHandler = Objects.requireNonNull(endHandler);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !done) {
+            try {
+                if (cursor.next()) {
+                    next = transform.apply(cursor);
+                } else {
+                    done = true;
+                    endHandler.ended(null);
+                }
+            } catch (IOException e) {
+                done = true;
+                endHandler.ended(e);
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                done = true;
+                endHandler.ended(e);
+                throw e;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T element = next;
+        next = null;
+        return element;
+    }
+}
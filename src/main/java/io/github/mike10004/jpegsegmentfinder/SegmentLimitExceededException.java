@@ -0,0 +1,17 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+/**
+ * Exception class thrown if the maximum number of segments is exceeded.
+ * @see ScanLimits
+ */
+public class SegmentLimitExceededException extends ScanLimitExceededException {
+
+    public SegmentLimitExceededException(String message, long position) {
+        super(message, position);
+    }
+
+    @Override
+    public ScanStopReason getStopReason() {
+        return ScanStopReason.SEGMENT_LIMIT;
+    }
+}
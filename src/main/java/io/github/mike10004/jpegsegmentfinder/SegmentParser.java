@@ -0,0 +1,316 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.io.EOFException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Resumable parser that finds segments in JPEG data supplied in chunks. The parser
+ * is a state machine, so markers and length fields may be split across chunks.
+ * Matching segments are reported to a visitor as soon as their headers are complete.
+ * Segment content is never buffered; the bytes of skipped content are discarded
+ * as they are fed, or they may be skipped by the supplier of the data without
+ * being fed at all, as reported by {@link #pendingSkip()}.
+ *
+ * <p>The parser enforces the same limits as {@link SegmentCursor}. The scan
+ * deadline is measured from the first chunk fed, and is checked each time a
+ * chunk is fed, so a supplier that waits a long time between chunks is
+ * caught only when it next feeds one.
+ *
+ * <p>Instances of this class are not thread-safe.
+ */
+final class SegmentParser {
+
+    private enum State {
+        MAGIC_HIGH,
+        MAGIC_LOW,
+        SYNC,
+        MARKER,
+        LENGTH_HIGH,
+        LENGTH_LOW,
+        SKIP,
+        DONE
+    }
+
+    private final MarkerSet segmentMarkers;
+    private final SegmentVisitor visitor;
+    private final ScanLimits limits;
+    private long deadline;
+    private boolean started;
+    private State state;
+    private long position;
+    private long segmentStart;
+    private byte segmentType;
+    private int lengthHigh;
+    private long skipRemaining;
+    private boolean skippingMatchedContent;
+    /**
+     * Number of bytes passed over while searching for the current marker.
+     */
+    private long distance;
+    private int segmentsVisited;
+    private int segmentsMatched;
+    private long resyncBytes;
+
+    public SegmentParser(MarkerSet segmentMarkers, SegmentVisitor visitor) {
+        this(segmentMarkers, visitor, ScanLimits.none());
+    }
+
+    /**
+     * Constructs an instance that enforces limits.
+     * @param segmentMarkers markers of segments to be reported
+     * @param visitor the visitor
+     * @param limits limits on the work performed by the scan
+     */
+    public SegmentParser(MarkerSet segmentMarkers, SegmentVisitor visitor, ScanLimits limits) {
+        this.segmentMarkers = Objects.requireNonNull(segmentMarkers);
+        this.visitor = Objects.requireNonNull(visitor);
+        this.limits = Objects.requireNonNull(limits);
+        state = segmentMarkers.isEmpty() ? State.DONE : State.MAGIC_HIGH;
+    }
+
+    /**
+     * Consumes bytes from a buffer. All remaining bytes of the buffer are consumed
+     * unless parsing finishes, in which case the buffer's position is left immediately
+     * after the last byte that was parsed.
+     * @param chunk buffer containing the next chunk of data
+     * @throws JpegSegmentFinderException if the data is verifiably not JPEG data or is corrupt
+     * @throws ScanLimitExceededException if the scan exceeds a limit
+     */
+    public void feed(ByteBuffer chunk) throws JpegSegmentFinderException {
+        if (state == State.DONE) {
+            return;
+        }
+        if (!started) {
+            started = true;
+            if (limits.getTimeout() != null) {
+                deadline = System.nanoTime() + limits.getTimeout().toNanos();
+            }
+        }
+        checkDeadline();
+        while (state != State.DONE && chunk.hasRemaining()) {
+            switch (state) {
+                case SKIP:
+                    int n = (int) Math.min(skipRemaining, chunk.remaining());
+                    ((Buffer) chunk).position(chunk.position() + n);
+                    position += n;
+                    skipRemaining -= n;
+                    if (skipRemaining == 0) {
+                        startSegment();
+                    }
+                    break;
+                case SYNC:
+                    // scan for the 0xFF that begins a marker, within the limits
+                    int i = chunk.position();
+                    long window = Math.min(chunk.remaining(), limits.getMaxBytes() - position);
+                    if (limits.getMaxResyncBytes() != Long.MAX_VALUE) {
+                        // a marker found at the end of the window is exactly at the limit
+                        window = Math.min(window, limits.getMaxResyncBytes() - distance + 1);
+                    }
+                    checkPosition();
+                    int limit = i + (int) window;
+                    while (i < limit && chunk.get(i) != SegmentCursor.SEGMENT_IDENTIFIER) {
+                        i++;
+                    }
+                    int passed = i - chunk.position();
+                    if (i < limit) {
+                        i++;
+                        state = State.MARKER;
+                    }
+                    position += i - chunk.position();
+                    ((Buffer) chunk).position(i);
+                    distance += passed;
+                    checkResync();
+                    break;
+                default:
+                    checkPosition();
+                    position++;
+                    parse(chunk.get());
+                    break;
+            }
+        }
+    }
+
+    private void parse(byte b) {
+        switch (state) {
+            case MAGIC_HIGH:
+                lengthHigh = b & 0xFF;
+                state = State.MAGIC_LOW;
+                break;
+            case MAGIC_LOW:
+                int magicNumber = lengthHigh << 8 | (b & 0xFF);
+                if (magicNumber != 0xFFD8) {
+                    throw new JpegSegmentFinderException("JPEG data is expected to begin with 0xFFD8 (ÿØ) not 0x" + Integer.toHexString(magicNumber));
+                }
+                startSegment();
+                break;
+            case MARKER:
+                if (b == SegmentCursor.SEGMENT_IDENTIFIER) {
+                    // fill byte
+                    distance++;
+                    checkResync();
+                    break;
+                }
+                if (b == 0) {
+                    distance += 2;
+                    checkResync();
+                    state = State.SYNC;
+                    break;
+                }
+                resyncBytes += distance;
+                segmentsVisited++;
+                if (segmentsVisited > limits.getMaxSegments()) {
+                    throw new SegmentLimitExceededException("number of segments exceeds limit of " + limits.getMaxSegments(), segmentStart);
+                }
+                if (b == SegmentCursor.SEGMENT_SOS || b == SegmentCursor.MARKER_EOI) {
+                    state = State.DONE;
+                    break;
+                }
+                segmentType = b;
+                state = State.LENGTH_HIGH;
+                break;
+            case LENGTH_HIGH:
+                lengthHigh = b & 0xFF;
+                state = State.LENGTH_LOW;
+                break;
+            case LENGTH_LOW:
+                // segment length includes size bytes, so subtract two
+                int segmentLength = (lengthHigh << 8 | (b & 0xFF)) - 2;
+                if (segmentLength < 0)
+                    throw new JpegSegmentFinderException("JPEG segment size would be less than zero");
+                if (segmentLength > limits.getMaxBytes() - position) {
+                    throw new ByteLimitExceededException("segment extends beyond limit of " + limits.getMaxBytes() + " bytes", position);
+                }
+                skippingMatchedContent = segmentMarkers.contains(segmentType);
+                if (skippingMatchedContent) {
+                    segmentsMatched++;
+                    if (!visitor.visit(segmentType, segmentStart, position, segmentLength)) {
+                        state = State.DONE;
+                        break;
+                    }
+                }
+                skipRemaining = segmentLength;
+                if (segmentLength == 0) {
+                    startSegment();
+                } else {
+                    state = State.SKIP;
+                }
+                break;
+            default:
+                throw new IllegalStateException(state.toString());
+        }
+    }
+
+    private void startSegment() {
+        segmentStart = position;
+        distance = 0;
+        state = State.SYNC;
+    }
+
+    private void checkResync() {
+        if (distance > limits.getMaxResyncBytes()) {
+            throw new ResyncLimitExceededException("resync distance exceeds limit of " + limits.getMaxResyncBytes() + " bytes", position);
+        }
+    }
+
+    /**
+     * Checks that the byte at the current position may be consumed.
+     */
+    private void checkPosition() {
+        if (position >= limits.getMaxBytes()) {
+            throw new ByteLimitExceededException("scan position exceeds limit of " + limits.getMaxBytes() + " bytes", position);
+        }
+    }
+
+    private void checkDeadline() {
+        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            throw new DeadlineExceededException("scan deadline passed", position);
+        }
+    }
+
+    /**
+     * Signals the end of the data.
+     * @throws EOFException if the data ended before a start-of-scan or end-of-image
+     * marker, unless it ended within the content of a segment that was not reported
+     */
+    public void finish() throws EOFException {
+        if (state == State.DONE) {
+            return;
+        }
+        boolean truncatedUnmatched = state == State.SKIP && !skippingMatchedContent;
+        state = State.DONE;
+        if (!truncatedUnmatched) {
+            throw new EOFException("End of data reached.");
+        }
+    }
+
+    /**
+     * Tests whether parsing has finished. Parsing finishes upon reaching the
+     * start-of-scan or end-of-image marker, or when the visitor stops the scan.
+     * @return true if no more data is required
+     */
+    public boolean isDone() {
+        return state == State.DONE;
+    }
+
+    /**
+     * Returns the number of bytes of segment content that the parser is waiting to skip.
+     * @return number of bytes that may be skipped
+     */
+    public long pendingSkip() {
+        return state == State.SKIP ? skipRemaining : 0;
+    }
+
+    /**
+     * Notifies this parser that bytes were skipped by the supplier of the data
+     * rather than fed to the parser.
+     * @param n the number of bytes skipped; must not exceed {@link #pendingSkip()}
+     */
+    public void skipped(long n) {
+        if (n < 0 || n > pendingSkip()) {
+            throw new IllegalArgumentException("cannot skip " + n + " bytes; pending skip is " + pendingSkip());
+        }
+        if (n == 0) {
+            return;
+        }
+        position += n;
+        skipRemaining -= n;
+        if (skipRemaining == 0) {
+            startSegment();
+        }
+    }
+
+    /**
+     * Returns the position of the next byte to be fed, relative to the start of the data.
+     * @return the position
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Returns the number of segment markers found so far, whether or not they matched.
+     * @return the number of segments visited
+     */
+    public int segmentsVisited() {
+        return segmentsVisited;
+    }
+
+    /**
+     * Returns the number of matching segments found so far.
+     * @return the number of segments matched
+     */
+    public int segmentsMatched() {
+        return segmentsMatched;
+    }
+
+    /**
+     * Returns the number of bytes passed over while searching for segment markers,
+     * including fill bytes. In well-formed data, this is zero.
+     * @return the number of resync bytes
+     */
+    public long resyncBytes() {
+        return resyncBytes;
+    }
+}
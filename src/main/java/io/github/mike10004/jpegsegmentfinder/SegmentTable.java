@@ -0,0 +1,337 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable table of segment specifications stored in columns of primitive
+ * values. A table uses about 21 bytes per segment, compared with a list of
+ * {@link JpegSegmentSpec} objects, which adds an object header and a reference
+ * per segment. Use a table to hold the results of scanning many files.
+ *
+ * <p>A table can be written to and read from a buffer in a compact binary form.
+ * Each segment is encoded as its marker byte and three variable-length
+ * integers: the distance from the end of the previous segment to the start of
+ * its header, which is zigzag-encoded because segments found in corrupt data
+ * may overlap; the header length; and the content length.
+ */
+public final class SegmentTable {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final SegmentTable EMPTY = new SegmentTable(new byte[0], new long[0], new int[0], new long[0]);
+
+    private final byte[] markers;
+    private final long[] headerOffsets;
+    private final int[] headerLengths;
+    private final long[] contentLengths;
+
+    private SegmentTable(byte[] markers, long[] headerOffsets, int[] headerLengths, long[] contentLengths) {
+        this.markers = markers;
+        this.headerOffsets = headerOffsets;
+        this.headerLengths = headerLengths;
+        this.contentLengths = contentLengths;
+    }
+
+    /**
+     * Returns an empty table.
+     * @return an empty table
+     */
+    public static SegmentTable empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a table containing the given segments.
+     * @param segments the segments
+     * @return a new table
+     */
+    public static SegmentTable of(List<? extends JpegSegmentSpec> segments) {
+        Builder builder = new Builder(segments.size());
+        for (JpegSegmentSpec segment : segments) {
+            builder.add(segment.marker, segment.headerOffset, segment.contentOffset, segment.contentLength);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a new builder. A builder is a segment visitor, so it can be
+     * passed to a {@code visitSegments} method of {@link JpegSegmentFinder}
+     * to collect segments without creating a specification object for each.
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder(8);
+    }
+
+    /**
+     * Returns the number of segments.
+     * @return the number of segments
+     */
+    public int size() {
+        return markers.length;
+    }
+
+    /**
+     * Returns the marker of a segment.
+     * @param index segment index
+     * @return the marker
+     */
+    public byte marker(int index) {
+        return markers[index];
+    }
+
+    /**
+     * Returns the header offset of a segment.
+     * @param index segment index
+     * @return the header offset
+     */
+    public long headerOffset(int index) {
+        return headerOffsets[index];
+    }
+
+    /**
+     * Returns the content offset of a segment.
+     * @param index segment index
+     * @return the content offset
+     */
+    public long contentOffset(int index) {
+        return headerOffsets[index] + headerLengths[index];
+    }
+
+    /**
+     * Returns the content length of a segment.
+     * @param index segment index
+     * @return the content length
+     */
+    public long contentLength(int index) {
+        return contentLengths[index];
+    }
+
+    /**
+     * Creates a specification of a segment.
+     * @param index segment index
+     * @return a new segment specification
+     */
+    public JpegSegmentSpec get(int index) {
+        return new JpegSegmentSpec(markers[index], headerOffsets[index], contentOffset(index), contentLengths[index]);
+    }
+
+    /**
+     * Returns an unmodifiable list view of this table. Specifications are
+     * created as elements of the list are accessed.
+     * @return a list view
+     */
+    public List<JpegSegmentSpec> asList() {
+        return new AbstractList<JpegSegmentSpec>() {
+            @Override
+            public JpegSegmentSpec get(int index) {
+                return SegmentTable.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return SegmentTable.this.size();
+            }
+        };
+    }
+
+    /**
+     * Computes the number of bytes written by {@link #writeTo(ByteBuffer)}.
+     * @return the serialized size
+     */
+    public int serializedSize() {
+        int size = 1 + varintSize(markers.length);
+        long end = 0;
+        for (int i = 0; i < markers.length; i++) {
+            size += 1 + varintSize(zigzag(headerOffsets[i] - end)) + varintSize(headerLengths[i]) + varintSize(contentLengths[i]);
+            end = contentOffset(i) + contentLengths[i];
+        }
+        return size;
+    }
+
+    /**
+     * Writes this table to a buffer, starting at the buffer's position.
+     * @param buffer the destination buffer
+     * @throws java.nio.BufferOverflowException if the buffer has fewer than
+     * {@link #serializedSize()} bytes remaining
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put(FORMAT_VERSION);
+        putVarint(buffer, markers.length);
+        long end = 0;
+        for (int i = 0; i < markers.length; i++) {
+            buffer.put(markers[i]);
+            putVarint(buffer, zigzag(headerOffsets[i] - end));
+            putVarint(buffer, headerLengths[i]);
+            putVarint(buffer, contentLengths[i]);
+            end = contentOffset(i) + contentLengths[i];
+        }
+    }
+
+    /**
+     * Reads a table from a buffer, starting at the buffer's position. On return,
+     * the buffer is positioned after the table.
+     * @param buffer the source buffer
+     * @return a new table
+     * @throws IllegalArgumentException if the data is not a serialized table
+     * @throws java.nio.BufferUnderflowException if the data is truncated
+     */
+    public static SegmentTable readFrom(ByteBuffer buffer) {
+        byte version = buffer.get();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("unsupported segment table format " + version);
+        }
+        long count = getVarint(buffer);
+        // each segment occupies at least four bytes
+        if (count < 0 || count > buffer.remaining() / 4) {
+            throw new IllegalArgumentException("segment count " + count + " exceeds remaining data");
+        }
+        Builder builder = new Builder((int) count);
+        long end = 0;
+        for (int i = 0; i < count; i++) {
+            byte marker = buffer.get();
+            long headerOffset = end + unzigzag(getVarint(buffer));
+            long headerLength = getVarint(buffer);
+            if (headerLength < 0 || headerLength > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("header length " + headerLength + " out of range");
+            }
+            long contentOffset = headerOffset + headerLength;
+            long contentLength = getVarint(buffer);
+            if (contentLength < 0) {
+                throw new IllegalArgumentException("content length " + contentLength + " out of range");
+            }
+            builder.add(marker, headerOffset, contentOffset, contentLength);
+            end = contentOffset + contentLength;
+        }
+        return builder.build();
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed variable-length integer");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SegmentTable that = (SegmentTable) o;
+        return Arrays.equals(markers, that.markers)
+                && Arrays.equals(headerOffsets, that.headerOffsets)
+                && Arrays.equals(headerLengths, that.headerLengths)
+                && Arrays.equals(contentLengths, that.contentLengths);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(markers);
+        result = 31 * result + Arrays.hashCode(headerOffsets);
+        result = 31 * result + Arrays.hashCode(headerLengths);
+        result = 31 * result + Arrays.hashCode(contentLengths);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentTable{size=" + markers.length + '}';
+    }
+
+    /**
+     * Builder of segment tables. A builder is not thread-safe.
+     */
+    public static final class Builder implements SegmentVisitor {
+
+        private byte[] markers;
+        private long[] headerOffsets;
+        private int[] headerLengths;
+        private long[] contentLengths;
+        private int size;
+
+        private Builder(int capacity) {
+            markers = new byte[capacity];
+            headerOffsets = new long[capacity];
+            headerLengths = new int[capacity];
+            contentLengths = new long[capacity];
+        }
+
+        /**
+         * Adds a segment.
+         * @param marker segment marker byte
+         * @param headerOffset offset where the segment header begins
+         * @param contentOffset offset where the segment content begins
+         * @param contentLength length of the segment content
+         * @return this builder
+         */
+        public Builder add(byte marker, long headerOffset, long contentOffset, long contentLength) {
+            if (size == markers.length) {
+                int capacity = Math.max(8, size * 2);
+                markers = Arrays.copyOf(markers, capacity);
+                headerOffsets = Arrays.copyOf(headerOffsets, capacity);
+                headerLengths = Arrays.copyOf(headerLengths, capacity);
+                contentLengths = Arrays.copyOf(contentLengths, capacity);
+            }
+            markers[size] = marker;
+            headerOffsets[size] = headerOffset;
+            headerLengths[size] = Math.toIntExact(contentOffset - headerOffset);
+            contentLengths[size] = contentLength;
+            size++;
+            return this;
+        }
+
+        /**
+         * Adds a segment and returns true, so that scanning continues.
+         */
+        @Override
+        public boolean visit(byte marker, long headerOffset, long contentOffset, long contentLength) {
+            add(marker, headerOffset, contentOffset, contentLength);
+            return true;
+        }
+
+        /**
+         * Builds a table containing the segments added so far.
+         * @return a new table
+         */
+        public SegmentTable build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            return new SegmentTable(Arrays.copyOf(markers, size), Arrays.copyOf(headerOffsets, size),
+                    Arrays.copyOf(headerLengths, size), Arrays.copyOf(contentLengths, size));
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+/**
+ * Interface of a service that receives the specifications of segments as they
+ * are found. Segment specifications are passed as primitive values, so no
+ * objects are allocated on behalf of the visitor.
+ */
+@FunctionalInterface
+public interface SegmentVisitor {
+
+    /**
+     * Visits a segment.
+     * @param marker segment marker byte
+     * @param headerOffset offset where the segment header begins
+     * @param contentOffset offset where the segment content begins
+     * @param contentLength length of the segment content
+     * @return true if scanning should continue, false if it should stop
+     * @see JpegSegmentSpec
+     */
+    boolean visit(byte marker, long headerOffset, long contentOffset, long contentLength);
+
+}
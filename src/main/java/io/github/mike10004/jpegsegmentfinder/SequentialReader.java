@@ -76,6 +76,42 @@ abstract class SequentialReader {
      */
     public abstract boolean trySkip(long n) throws IOException;
 
+    /**
+     * Skips forward in the sequence until the next byte is equal to the given value.
+     * The matching byte is not consumed, so it is the next byte returned by {@link #getByte()}.
+     *
+     * @param value the byte value to search for
+     * @return the number of bytes skipped
+     * @throws EOFException the end of the sequence is reached before a matching byte is found.
+     * @throws IOException an error occurred reading from the underlying source.
+     */
+    public long skipUntil(byte value) throws IOException
+    {
+        return skipUntil(value, Long.MAX_VALUE);
+    }
+
+    /**
+     * Skips forward in the sequence until the next byte is equal to the given value,
+     * skipping no more than the given number of bytes. The matching byte is not
+     * consumed, so it is the next byte returned by {@link #getByte()}.
+     *
+     * @param value the byte value to search for
+     * @param maxSkip the maximum number of bytes to skip
+     * @return the number of bytes skipped, or -1 if {@code maxSkip} bytes were skipped
+     *         without finding a matching byte
+     * @throws EOFException the end of the sequence is reached before a matching byte is found.
+     * @throws IOException an error occurred reading from the underlying source.
+     */
+    public abstract long skipUntil(byte value, long maxSkip) throws IOException;
+
+    /**
+     * Skips all remaining bytes of the sequence.
+     *
+     * @return the number of bytes skipped
+     * @throws IOException an error occurred reading from the underlying source.
+     */
+    public abstract long skipToEnd() throws IOException;
+
     /**
      * Returns an estimate of the number of bytes that can be read (or skipped
      * over) from this {@link com.drew.lang.SequentialReader} without blocking by the next
@@ -94,6 +130,52 @@ abstract class SequentialReader {
      */
     public abstract int available();
 
+    /**
+     * Returns the number of bytes read from the underlying source so far. Bytes that are
+     * read from the source into a buffer are counted whether or not they are consumed.
+     * This implementation returns zero, as is correct for readers that have no
+     * underlying source to perform I/O on.
+     *
+     * @return the number of bytes read
+     */
+    public long getSourceBytesRead()
+    {
+        return 0;
+    }
+
+    /**
+     * Returns the number of read calls made on the underlying source so far.
+     * This implementation returns zero.
+     *
+     * @return the number of read calls
+     */
+    public long getSourceReadCalls()
+    {
+        return 0;
+    }
+
+    /**
+     * Returns the number of bytes of the underlying source skipped without being read so far.
+     * This implementation returns zero.
+     *
+     * @return the number of bytes skipped
+     */
+    public long getSourceBytesSkipped()
+    {
+        return 0;
+    }
+
+    /**
+     * Returns the number of skip calls made on the underlying source so far.
+     * This implementation returns zero.
+     *
+     * @return the number of skip calls
+     */
+    public long getSourceSkipCalls()
+    {
+        return 0;
+    }
+
     /**
      * Sets the endianness of this reader.
      * <ul>
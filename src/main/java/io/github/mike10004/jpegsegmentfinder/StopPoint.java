@@ -0,0 +1,20 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+/**
+ * Enumeration of points within a segment at which a scan may stop and leave
+ * the input stream positioned for the caller.
+ */
+public enum StopPoint {
+
+    /**
+     * Stop at the start of the segment header, so that the next bytes read are
+     * the 0xFF byte, the marker byte, the two-byte segment length, and then the
+     * content. Any fill bytes that precede the header are not included.
+     */
+    HEADER,
+
+    /**
+     * Stop at the start of the segment content.
+     */
+    CONTENT
+}
@@ -21,93 +21,64 @@
 
 package io.github.mike10004.jpegsegmentfinder;
 
-import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Objects;
 
 /**
+ * Reader that obtains bytes from an input stream. Bytes are read from the stream
+ * in blocks into a buffer owned by the reader, so callers need not wrap
+ * unbuffered streams. As a consequence, the stream may be read beyond the
+ * position reported by {@link #getPosition()}.
  *
  * @author Drew Noakes https://drewnoakes.com
  */
-class StreamReader extends SequentialReader
+class StreamReader extends BlockReader
 {
-    private final InputStream _stream;
+    /**
+     * Default size of the block buffer.
+     */
+    static final int DEFAULT_BUFFER_SIZE = 8192;
 
-    private long _pos;
+    private final InputStream _stream;
 
-    @Override
-    public long getPosition()
+    public StreamReader(InputStream stream)
     {
-        return _pos;
+        this(stream, DEFAULT_BUFFER_SIZE);
     }
 
     @SuppressWarnings("ConstantConditions")
-    public StreamReader(InputStream stream)
+    public StreamReader(InputStream stream, int bufferSize)
     {
+        super(bufferSize);
         if (stream == null)
             throw new NullPointerException();
 
         _stream = stream;
-        _pos = 0;
-    }
-
-    @Override
-    public byte getByte() throws IOException
-    {
-        int value = _stream.read();
-        if (value == -1)
-            throw new EOFException("End of data reached.");
-        _pos++;
-        return (byte)value;
-    }
-
-    @Override
-    public byte[] getBytes(int count) throws IOException
-    {
-        byte[] bytes = new byte[count];
-        getBytes(bytes, 0, count);
-        return bytes;
     }
 
-    @Override
-    public void getBytes(byte[] buffer, int offset, int count) throws IOException {
-        Objects.requireNonNull(buffer);
-        int totalBytesRead = 0;
-        while (totalBytesRead != count)
-        {
-            final int bytesRead = _stream.read(buffer, offset + totalBytesRead, count - totalBytesRead);
-            if (bytesRead == -1)
-                throw new EOFException("End of data reached.");
-            totalBytesRead += bytesRead;
-            assert(totalBytesRead <= count);
-        }
-        _pos += totalBytesRead;
-    }
-
-    @Override
-    public void skip(long n) throws IOException
+    /**
+     * Constructs an instance that uses the given array as its block buffer.
+     * @param stream the stream
+     * @param buffer the block buffer
+     */
+    @SuppressWarnings("ConstantConditions")
+    public StreamReader(InputStream stream, byte[] buffer)
     {
-        if (n < 0)
-            throw new IllegalArgumentException("n must be zero or greater.");
-
-        long skippedCount = skipInternal(n);
+        super(buffer);
+        if (stream == null)
+            throw new NullPointerException();
 
-        if (skippedCount != n)
-            throw new EOFException(String.format("Unable to skip. Requested %d bytes but skipped %d.", n, skippedCount));
+        _stream = stream;
     }
 
     @Override
-    public boolean trySkip(long n) throws IOException
+    protected int readSource(byte[] b, int off, int len) throws IOException
     {
-        if (n < 0)
-            throw new IllegalArgumentException("n must be zero or greater.");
-
-        return skipInternal(n) == n;
+        return _stream.read(b, off, len);
     }
 
     @Override
-    public int available() {
+    protected int sourceAvailable() {
         try {
             return _stream.available();
         } catch (IOException e) {
@@ -115,7 +86,8 @@ class StreamReader extends SequentialReader
         }
     }
 
-    private long skipInternal(long n) throws IOException
+    @Override
+    protected long skipSource(long n) throws IOException
     {
         // It seems that for some streams, such as BufferedInputStream, that skip can return
         // some smaller number than was requested. So loop until we either skip enough, or
@@ -131,7 +103,6 @@ class StreamReader extends SequentialReader
             if (skipped == 0)
                 break;
         }
-        _pos += skippedTotal;
         return skippedTotal;
     }
 }
@@ -0,0 +1,88 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import com.google.common.io.Files;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkState;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AppIdentifierTest {
+
+    @Test
+    public void findExif() throws Exception {
+        File file = new File(getClass().getResource("/image-with-exif.jpg").toURI());
+        byte[] jpeg = Files.toByteArray(file);
+        List<JpegSegmentSpec> app1 = new JpegSegmentFinder().findSegments(file.toPath(), MarkerSet.of((byte) 0xE1));
+        List<JpegSegmentSpec> expected = app1.stream()
+                .filter(spec -> new String(jpeg, (int) spec.contentOffset, 5, StandardCharsets.US_ASCII).equals("Exif\0"))
+                .collect(Collectors.toList());
+        checkState(!expected.isEmpty());
+        List<AppSegmentSpec> actual = new JpegSegmentFinder().findAppSegments(file.toPath(), EnumSet.of(AppIdentifier.EXIF));
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(AppIdentifier.EXIF, actual.get(i).identifier);
+            assertEquals(expected.get(i).toString(), toSpec(actual.get(i)).toString());
+            String byteOrder = new String(jpeg, (int) actual.get(i).payloadOffset(), 2, StandardCharsets.US_ASCII);
+            assertTrue(byteOrder, byteOrder.equals("II") || byteOrder.equals("MM"));
+        }
+    }
+
+    @Test
+    public void classify() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        segment(out, 0xE0, "JFIF\0\1\2");
+        segment(out, 0xE1, "Exif\0\0MM");
+        segment(out, 0xE1, "http://ns.adobe.com/xap/1.0/\0<x:xmpmeta/>");
+        segment(out, 0xE1, "http://ns.adobe.com/xmp/extension/\0" + "0123456789ABCDEF0123456789ABCDEF" + "chunk");
+        segment(out, 0xE2, "ICC_PROFILE\0\1\1profile");
+        segment(out, 0xE2, "MPF\0II");
+        segment(out, 0xE1, "Exi");
+        segment(out, 0xED, "Photoshop 3.0\08BIM");
+        segment(out, 0xEE, "Adobe\0d");
+        segment(out, 0xDB, "Exif\0\0");
+        out.write(0xFF);
+        out.write(0xDA);
+        out.write(0);
+        out.write(2);
+        byte[] jpeg = out.toByteArray();
+        JpegSegmentFinder finder = new JpegSegmentFinder();
+        List<AppIdentifier> all = identifiers(finder.findAppSegments(ByteBuffer.wrap(jpeg), EnumSet.allOf(AppIdentifier.class)));
+        assertEquals(Arrays.asList(AppIdentifier.JFIF, AppIdentifier.EXIF, AppIdentifier.XMP, AppIdentifier.EXTENDED_XMP,
+                AppIdentifier.ICC_PROFILE, AppIdentifier.MPF, AppIdentifier.UNKNOWN, AppIdentifier.PHOTOSHOP, AppIdentifier.ADOBE), all);
+        List<AppSegmentSpec> xmp = finder.findAppSegments(new ByteArrayInputStream(jpeg), EnumSet.of(AppIdentifier.XMP, AppIdentifier.EXTENDED_XMP));
+        assertEquals(Arrays.asList(AppIdentifier.XMP, AppIdentifier.EXTENDED_XMP), identifiers(xmp));
+        assertEquals("<x:xmpmeta/>", new String(jpeg, (int) xmp.get(0).payloadOffset(),
+                (int) (xmp.get(0).contentOffset + xmp.get(0).contentLength - xmp.get(0).payloadOffset()), StandardCharsets.US_ASCII));
+        assertEquals(Arrays.asList(AppIdentifier.ICC_PROFILE), identifiers(finder.findAppSegments(new ByteArrayInputStream(jpeg), EnumSet.of(AppIdentifier.ICC_PROFILE))));
+    }
+
+    private static List<AppIdentifier> identifiers(List<AppSegmentSpec> segments) {
+        return segments.stream().map(spec -> spec.identifier).collect(Collectors.toList());
+    }
+
+    private static JpegSegmentSpec toSpec(AppSegmentSpec spec) {
+        return new JpegSegmentSpec(spec.marker, spec.headerOffset, spec.contentOffset, spec.contentLength);
+    }
+
+    private static void segment(ByteArrayOutputStream out, int marker, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.ISO_8859_1);
+        out.write(0xFF);
+        out.write(marker);
+        out.write((bytes.length + 2) >> 8);
+        out.write(bytes.length + 2);
+        out.write(bytes, 0, bytes.length);
+    }
+}
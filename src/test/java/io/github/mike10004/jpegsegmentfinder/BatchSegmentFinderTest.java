@@ -0,0 +1,134 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import com.drew.imaging.jpeg.JpegSegmentType;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchSegmentFinderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void findSegmentsInTree() throws Exception {
+        File root = temporaryFolder.newFolder();
+        Path subdir = Files.createDirectories(root.toPath().resolve("a").resolve("b"));
+        Path exifSource = new File(getClass().getResource("/image-with-exif.jpg").toURI()).toPath();
+        Path iptcSource = new File(getClass().getResource("/image-with-iptc-caption.jpg").toURI()).toPath();
+        int numCopies = 25;
+        for (int i = 0; i < numCopies; i++) {
+            Files.copy(exifSource, root.toPath().resolve("exif-" + i + ".jpg"));
+            Files.copy(iptcSource, subdir.resolve("iptc-" + i + ".jpg"));
+        }
+        Path notJpeg = subdir.resolve("not-a-jpeg.jpg");
+        Files.write(notJpeg, "this is not a JPEG".getBytes("US-ASCII"));
+        MarkerSet markers = MarkerSet.of(JpegSegmentType.APP1.byteValue, JpegSegmentType.APPD.byteValue);
+        JpegSegmentFinder finder = new JpegSegmentFinder();
+        List<JpegSegmentSpec> exifSegments = finder.findSegments(exifSource, markers);
+        List<JpegSegmentSpec> iptcSegments = finder.findSegments(iptcSource, markers);
+        Map<Path, BatchResult> results = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            new BatchSegmentFinder(finder, executor, 3).findSegmentsInTree(root.toPath(), markers, result -> results.put(result.file, result));
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2 * numCopies + 1, results.size());
+        results.forEach((file, result) -> {
+            if (file.equals(notJpeg)) {
+                assertFalse(result.isSuccess());
+                assertTrue(result.getError() instanceof JpegSegmentFinderException);
+            } else {
+                assertTrue(result.toString(), result.isSuccess());
+                List<JpegSegmentSpec> expected = file.getFileName().toString().startsWith("exif") ? exifSegments : iptcSegments;
+                assertEquals(expected, result.getSegments());
+            }
+        });
+    }
+
+    @Test
+    public void findSegmentsInTreeWithUnreadableSubdirectory() throws Exception {
+        File root = temporaryFolder.newFolder();
+        Path exifSource = new File(getClass().getResource("/image-with-exif.jpg").toURI()).toPath();
+        Path readable = Files.copy(exifSource, root.toPath().resolve("a.jpg"));
+        Path unreadable = Files.createDirectory(root.toPath().resolve("locked"));
+        Files.copy(exifSource, unreadable.resolve("b.jpg"));
+        Path later = Files.createDirectory(root.toPath().resolve("z"));
+        Path laterFile = Files.copy(exifSource, later.resolve("c.jpg"));
+        Files.setPosixFilePermissions(unreadable, PosixFilePermissions.fromString("---------"));
+        try {
+            Assume.assumeFalse("directory permissions are not enforced for this user", Files.isReadable(unreadable));
+            Map<Path, BatchResult> results = new ConcurrentHashMap<>();
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                new BatchSegmentFinder(new JpegSegmentFinder(), executor, 2).findSegmentsInTree(root.toPath(), MarkerSet.allAppn(), result -> results.put(result.file, result));
+            } finally {
+                executor.shutdown();
+                assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            }
+            assertEquals(results.keySet().toString(), 3, results.size());
+            assertTrue(results.get(readable).isSuccess());
+            assertTrue(results.get(laterFile).isSuccess());
+            assertFalse(results.get(unreadable).isSuccess());
+            assertTrue(results.get(unreadable).getError() instanceof AccessDeniedException);
+        } finally {
+            Files.setPosixFilePermissions(unreadable, PosixFilePermissions.fromString("rwx------"));
+        }
+    }
+
+    @Test
+    public void findSegmentsWithUnboundedExecutor() throws Exception {
+        Path source = new File(getClass().getResource("/image-with-exif.jpg").toURI()).toPath();
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            files.add(source);
+        }
+        int maxInFlight = 3;
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxObserved = new AtomicInteger();
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            new BatchSegmentFinder(new JpegSegmentFinder(), executor, maxInFlight).findSegments(files, MarkerSet.allAppn(), result -> {
+                // the sink runs in the scan task, so tasks overlap while it sleeps
+                int n = inFlight.incrementAndGet();
+                maxObserved.accumulateAndGet(n, Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                count.incrementAndGet();
+            });
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+        assertEquals(files.size(), count.get());
+        assertTrue("max in flight " + maxObserved.get(), maxObserved.get() <= maxInFlight);
+        assertTrue("max in flight " + maxObserved.get(), maxObserved.get() > 1);
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ByteScanningTest {
+
+    @Test
+    public void indexOf() {
+        Random random = new Random(0x5eed);
+        byte[] bytes = new byte[100];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (int trial = 0; trial < 1000; trial++) {
+            for (int i = 0; i < bytes.length; i++) {
+                // values adjacent to 0xFF exercise the borrow propagation of the word-at-a-time test
+                bytes[i] = (byte) (0xFD + random.nextInt(2));
+            }
+            int numTargets = random.nextInt(3);
+            for (int t = 0; t < numTargets; t++) {
+                bytes[random.nextInt(bytes.length)] = (byte) 0xFF;
+            }
+            int from = random.nextInt(bytes.length);
+            int to = from + random.nextInt(bytes.length - from + 1);
+            assertEquals("trial " + trial, naiveIndexOf(bytes, from, to, (byte) 0xFF), ByteScanning.indexOf(buffer, from, to, (byte) 0xFF));
+        }
+    }
+
+    @Test
+    public void indexOf_zero() {
+        byte[] bytes = {1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0};
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(9, ByteScanning.indexOf(buffer, 0, bytes.length, (byte) 0));
+        assertEquals(-1, ByteScanning.indexOf(buffer, 0, 9, (byte) 0));
+    }
+
+    private static int naiveIndexOf(byte[] bytes, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
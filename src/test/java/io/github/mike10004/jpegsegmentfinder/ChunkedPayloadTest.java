@@ -0,0 +1,110 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChunkedPayloadTest {
+
+    private static final String GUID = "0123456789ABCDEF0123456789ABCDEF";
+
+    @Test
+    public void iccProfile() throws Exception {
+        ByteArrayOutputStream out = start();
+        segment(out, 0xE2, "ICC_PROFILE\0\2\3", "second-");
+        segment(out, 0xE2, "MPF\0", "II");
+        segment(out, 0xE2, "ICC_PROFILE\0\1\3", "first-");
+        segment(out, 0xE2, "ICC_PROFILE\0\3\3", "third");
+        List<JpegSegmentSlice> segments = find(end(out), 0xE2);
+        ChunkedPayload profile = ChunkedPayload.iccProfile(segments);
+        assertEquals("first-second-third", readChannel(profile));
+        assertEquals(3, profile.chunks().size());
+        assertEquals(18, profile.length());
+        assertTrue(profile.chunks().get(0).isReadOnly());
+        try {
+            ChunkedPayload.iccProfile(segments.subList(0, 3));
+            fail("should have thrown");
+        } catch (JpegSegmentFinderException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("missing"));
+        }
+        assertNull(ChunkedPayload.iccProfile(segments.subList(1, 2)));
+    }
+
+    @Test
+    public void extendedXmp() throws Exception {
+        String packet = "<x:xmpmeta>extended</x:xmpmeta>";
+        ByteArrayOutputStream out = start();
+        segment(out, 0xE1, "http://ns.adobe.com/xap/1.0/\0", "<x:xmpmeta/>");
+        segment(out, 0xE1, extendedHeader(GUID, packet.length(), 11), packet.substring(11));
+        segment(out, 0xE1, extendedHeader(GUID, packet.length(), 0), packet.substring(0, 11));
+        segment(out, 0xE1, extendedHeader(GUID.toLowerCase(), 3, 0), "xyz");
+        List<JpegSegmentSlice> segments = find(end(out), 0xE1);
+        assertEquals(packet, readChannel(ChunkedPayload.extendedXmp(segments, GUID)));
+        assertEquals("xyz", readChannel(ChunkedPayload.extendedXmp(segments, GUID.toLowerCase())));
+        try {
+            ChunkedPayload.extendedXmp(segments, null);
+            fail("should have thrown");
+        } catch (JpegSegmentFinderException ignore) {
+        }
+        try {
+            ChunkedPayload.extendedXmp(segments.subList(0, 2), GUID);
+            fail("should have thrown");
+        } catch (JpegSegmentFinderException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("does not follow"));
+        }
+    }
+
+    private static String readChannel(ChunkedPayload payload) throws Exception {
+        ByteBuffer dst = ByteBuffer.allocate(5);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ReadableByteChannel channel = payload.channel()) {
+            while (channel.read(dst) != -1) {
+                out.write(dst.array(), 0, dst.position());
+                dst.clear();
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    private static String extendedHeader(String guid, int fullLength, int offset) {
+        ByteBuffer numbers = ByteBuffer.allocate(8).putInt(fullLength).putInt(offset);
+        return "http://ns.adobe.com/xmp/extension/\0" + guid + new String(numbers.array(), StandardCharsets.ISO_8859_1);
+    }
+
+    private static List<JpegSegmentSlice> find(byte[] jpeg, int marker) throws Exception {
+        return new JpegSegmentFinder().findSegments(ByteBuffer.wrap(jpeg), MarkerSet.of((byte) marker));
+    }
+
+    private static ByteArrayOutputStream start() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        return out;
+    }
+
+    private static byte[] end(ByteArrayOutputStream out) {
+        out.write(0xFF);
+        out.write(0xDA);
+        out.write(0);
+        out.write(2);
+        return out.toByteArray();
+    }
+
+    private static void segment(ByteArrayOutputStream out, int marker, String header, String data) {
+        byte[] bytes = (header + data).getBytes(StandardCharsets.ISO_8859_1);
+        out.write(0xFF);
+        out.write(marker);
+        out.write((bytes.length + 2) >> 8);
+        out.write(bytes.length + 2);
+        out.write(bytes, 0, bytes.length);
+    }
+}
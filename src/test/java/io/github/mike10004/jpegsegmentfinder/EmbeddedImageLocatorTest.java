@@ -0,0 +1,108 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifThumbnailDirectory;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class EmbeddedImageLocatorTest {
+
+    @Test
+    public void exifThumbnailsOfTestImages() throws Exception {
+        for (String resource : new String[]{"/image-with-exif.jpg", "/image-with-iptc-caption.jpg"}) {
+            File file = new File(getClass().getResource(resource).toURI());
+            Metadata metadata = ImageMetadataReader.readMetadata(file);
+            ExifThumbnailDirectory directory = metadata.getFirstDirectoryOfType(ExifThumbnailDirectory.class);
+            boolean expected = directory != null && directory.containsTag(ExifThumbnailDirectory.TAG_THUMBNAIL_LENGTH);
+            ByteBuffer jpeg;
+            try (FileChannel channel = FileChannel.open(file.toPath())) {
+                jpeg = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            EmbeddedImage thumbnail = null;
+            for (JpegSegmentSlice app1 : new JpegSegmentFinder().findSegments(jpeg, MarkerSet.of((byte) 0xE1))) {
+                EmbeddedImage found = EmbeddedImageLocator.exifThumbnail(app1);
+                if (found != null) {
+                    thumbnail = found;
+                }
+            }
+            assertEquals(resource, expected, thumbnail != null);
+            if (thumbnail != null) {
+                assertEquals(directory.getLong(ExifThumbnailDirectory.TAG_THUMBNAIL_LENGTH), thumbnail.length);
+                ByteBuffer view = thumbnail.view(jpeg);
+                assertEquals((byte) 0xFF, view.get(0));
+                assertEquals((byte) 0xD8, view.get(1));
+            }
+        }
+    }
+
+    @Test
+    public void syntheticExifAndMpf() throws Exception {
+        byte[] thumbnail = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xDB, 0, 3, 7, (byte) 0xFF, (byte) 0xD9};
+        ByteBuffer exif = ByteBuffer.allocate(6 + 8 + 18 + 30 + thumbnail.length).order(ByteOrder.LITTLE_ENDIAN);
+        exif.put("Exif\0\0".getBytes("US-ASCII"));
+        exif.put((byte) 'I').put((byte) 'I').putShort((short) 0x2A).putInt(8);
+        // IFD0 with one entry, followed by IFD1 at offset 26
+        exif.putShort((short) 1).putShort((short) 0x0112).putShort((short) 3).putInt(1).putInt(1).putInt(26);
+        exif.putShort((short) 2);
+        exif.putShort((short) 0x0201).putShort((short) 4).putInt(1).putInt(56);
+        exif.putShort((short) 0x0202).putShort((short) 4).putInt(1).putInt(thumbnail.length);
+        exif.putInt(0);
+        exif.put(thumbnail);
+        ByteBuffer mpf = ByteBuffer.allocate(4 + 8 + 18 + 32).order(ByteOrder.BIG_ENDIAN);
+        mpf.put("MPF\0".getBytes("US-ASCII"));
+        mpf.put((byte) 'M').put((byte) 'M').putShort((short) 0x2A).putInt(8);
+        mpf.putShort((short) 1).putShort((short) 0xB002).putShort((short) 7).putInt(32).putInt(26);
+        mpf.putInt(0);
+        int mpfStart = mpf.position();
+        mpf.putInt(0x20030000).putInt(0).putInt(0).putInt(0);
+        mpf.putInt(0x00020002).putInt(thumbnail.length).putInt(0).putInt(0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        segment(out, 0xE1, exif.array());
+        int mpfHeader = out.size();
+        segment(out, 0xE2, mpf.array());
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xDA, 0, 2, 1, 2, (byte) 0xFF, (byte) 0xD9});
+        int primaryLength = out.size();
+        out.write(thumbnail);
+        byte[] bytes = out.toByteArray();
+        // patch the sizes and the offset of the second image, which is relative to the MPF TIFF header
+        ByteBuffer jpeg = ByteBuffer.wrap(bytes);
+        int tiffBase = mpfHeader + 4 + 4;
+        jpeg.putInt(mpfHeader + 4 + mpfStart + 4, primaryLength);
+        jpeg.putInt(mpfHeader + 4 + mpfStart + 16 + 8, primaryLength - tiffBase);
+
+        List<JpegSegmentSlice> app1 = new JpegSegmentFinder().findSegments(jpeg, MarkerSet.of((byte) 0xE1));
+        EmbeddedImage exifThumbnail = EmbeddedImageLocator.exifThumbnail(app1.get(0));
+        assertEquals(new EmbeddedImage(EmbeddedImage.Kind.EXIF_THUMBNAIL, 0, 0, 2 + 4 + 6 + 56, thumbnail.length), exifThumbnail);
+        assertEquals(ByteBuffer.wrap(thumbnail), exifThumbnail.view(jpeg));
+
+        List<JpegSegmentSlice> app2 = new JpegSegmentFinder().findSegments(jpeg, MarkerSet.of((byte) 0xE2));
+        List<EmbeddedImage> images = EmbeddedImageLocator.mpfImages(app2.get(0));
+        assertEquals(2, images.size());
+        assertEquals(new EmbeddedImage(EmbeddedImage.Kind.MPF_IMAGE, 0, 0x20030000, 0, primaryLength), images.get(0));
+        assertEquals(new EmbeddedImage(EmbeddedImage.Kind.MPF_IMAGE, 1, 0x00020002, primaryLength, thumbnail.length), images.get(1));
+        assertEquals(ByteBuffer.wrap(thumbnail), images.get(1).view(jpeg));
+        assertNull(EmbeddedImageLocator.exifThumbnail(app2.get(0)));
+        assertEquals(0, EmbeddedImageLocator.mpfImages(app1.get(0)).size());
+    }
+
+    private static void segment(ByteArrayOutputStream out, int marker, byte[] content) {
+        out.write(0xFF);
+        out.write(marker);
+        out.write((content.length + 2) >> 8);
+        out.write(content.length + 2);
+        out.write(content, 0, content.length);
+    }
+}
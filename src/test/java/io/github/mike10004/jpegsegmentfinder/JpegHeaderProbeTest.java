@@ -0,0 +1,79 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.jfif.JfifDirectory;
+import com.drew.metadata.jpeg.JpegComponent;
+import com.drew.metadata.jpeg.JpegDirectory;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JpegHeaderProbeTest {
+
+    @Test
+    public void probeTestImages() throws Exception {
+        for (String resource : new String[]{"/image-with-exif.jpg", "/image-with-iptc-caption.jpg"}) {
+            File file = new File(getClass().getResource(resource).toURI());
+            Metadata metadata = ImageMetadataReader.readMetadata(file);
+            JpegDirectory directory = metadata.getFirstDirectoryOfType(JpegDirectory.class);
+            JpegHeader header;
+            try (InputStream in = new FileInputStream(file)) {
+                header = new JpegHeaderProbe().probe(in);
+            }
+            assertEquals(resource, directory.getImageWidth(), header.width);
+            assertEquals(resource, directory.getImageHeight(), header.height);
+            assertEquals(resource, directory.getInt(JpegDirectory.TAG_DATA_PRECISION), header.precision);
+            assertEquals(resource, directory.getNumberOfComponents(), header.components.size());
+            for (int i = 0; i < header.components.size(); i++) {
+                JpegComponent expected = directory.getComponent(i);
+                JpegHeader.Component actual = header.components.get(i);
+                assertEquals(expected.getComponentId(), actual.id);
+                assertEquals(expected.getHorizontalSamplingFactor(), actual.horizontalSampling);
+                assertEquals(expected.getVerticalSamplingFactor(), actual.verticalSampling);
+                assertEquals(expected.getQuantizationTableNumber(), actual.quantizationTable);
+            }
+            assertEquals(resource, metadata.containsDirectoryOfType(JfifDirectory.class), header.jfif);
+            assertEquals(resource, metadata.containsDirectoryOfType(ExifIFD0Directory.class), header.exif);
+            assertEquals(header.toString(), new JpegHeaderProbe().probe(file.toPath()).toString());
+        }
+    }
+
+    @Test
+    public void progressiveWithAdobeTransform() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xD8});
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xEE, 0, 14, 'A', 'd', 'o', 'b', 'e', 0, 100, 0, 0, 0, 0, 2});
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xC2, 0, 8 + 3 * 4, 8, 0x01, 0x00, 0x02, 0x00, 4,
+                1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1, 4, 0x22, 0});
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xDA, 0, 2});
+        byte[] jpeg = out.toByteArray();
+        JpegHeader header = new JpegHeaderProbe().probe(ByteBuffer.wrap(jpeg));
+        assertTrue(header.isProgressive());
+        assertFalse(header.isBaseline());
+        assertFalse(header.isArithmetic());
+        assertFalse(header.isLossless());
+        assertEquals(512, header.width);
+        assertEquals(256, header.height);
+        assertEquals(4, header.components.size());
+        assertEquals(2, header.components.get(3).horizontalSampling);
+        assertEquals(2, header.adobeTransform);
+        assertFalse(header.jfif);
+        try {
+            new JpegHeaderProbe().probe(new ByteArrayInputStream(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xDA, 0, 2}));
+            fail("should have thrown");
+        } catch (JpegSegmentFinderException ignore) {
+        }
+    }
+}
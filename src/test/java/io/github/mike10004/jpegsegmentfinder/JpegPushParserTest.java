@@ -0,0 +1,79 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import com.google.common.io.Files;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkState;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JpegPushParserTest {
+
+    @Test
+    public void feedChunks() throws Exception {
+        MarkerSet markers = MarkerSet.allAppn().union(MarkerSet.tables());
+        Random random = new Random(0x5E65);
+        for (String resource : new String[]{"/image-with-exif.jpg", "/image-with-iptc-caption.jpg"}) {
+            byte[] jpeg = Files.toByteArray(new File(getClass().getResource(resource).toURI()));
+            List<JpegSegmentSpec> expected = new JpegSegmentFinder().findSegments(new File(getClass().getResource(resource).toURI()).toPath(), markers);
+            checkState(!expected.isEmpty());
+            for (int maxChunk : new int[]{1, 3, 7, 4096}) {
+                List<JpegSegmentSpec> actual = new ArrayList<>();
+                JpegPushParser parser = JpegPushParser.emitting(markers, actual::add);
+                int offset = 0;
+                while (offset < jpeg.length && !parser.isDone()) {
+                    int n = Math.min(jpeg.length - offset, 1 + random.nextInt(maxChunk));
+                    parser.feed(ByteBuffer.wrap(Arrays.copyOfRange(jpeg, offset, offset + n)));
+                    offset += n;
+                }
+                parser.finish();
+                assertTrue(parser.isDone());
+                assertEquals(resource + " chunks of up to " + maxChunk, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void skipContentWithoutFeeding() throws Exception {
+        byte[] jpeg = Files.toByteArray(new File(getClass().getResource("/image-with-iptc-caption.jpg").toURI()));
+        MarkerSet markers = MarkerSet.allAppn();
+        List<JpegSegmentSpec> actual = new ArrayList<>();
+        JpegPushParser parser = JpegPushParser.emitting(markers, actual::add);
+        int fed = 0;
+        while (!parser.isDone()) {
+            long skip = parser.pendingSkip();
+            if (skip > 0) {
+                parser.skipped(skip);
+            } else {
+                parser.feed(ByteBuffer.wrap(jpeg, (int) parser.position(), 1));
+                fed++;
+            }
+        }
+        List<JpegSegmentSpec> expected = new JpegSegmentFinder().findSegments(ByteBuffer.wrap(jpeg), markers).stream()
+                .map(s -> new JpegSegmentSpec(s.marker, s.headerOffset, s.contentOffset, s.contentLength))
+                .collect(Collectors.toList());
+        assertEquals(expected, actual);
+        assertTrue("fed " + fed, fed < 1024);
+    }
+
+    @Test
+    public void finish_truncatedHeader() throws Exception {
+        JpegPushParser parser = JpegPushParser.emitting(MarkerSet.allAppn(), segment -> {});
+        parser.feed(ByteBuffer.wrap(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE1, 0x00}));
+        try {
+            parser.finish();
+            fail("expected exception");
+        } catch (EOFException ignore) {
+        }
+    }
+}
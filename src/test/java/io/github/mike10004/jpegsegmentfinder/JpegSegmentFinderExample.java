@@ -6,6 +6,8 @@ import org.apache.commons.lang3.StringUtils;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.Collections;
@@ -29,6 +31,14 @@ public class JpegSegmentFinderExample {
         // ...analyze those segments bytes as you please...
         String segmentHex = BaseEncoding.base16().encode(segmentBytes);
         System.out.format("%d bytes of APPD data: %s%n", segmentBytes.length, StringUtils.abbreviate(segmentHex, 64));
+        // Or map the file into memory and get views of the segment content without copying
+        ByteBuffer jpeg;
+        try (FileChannel channel = FileChannel.open(jpegFile.toPath())) {
+            jpeg = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        List<JpegSegmentSlice> slices = finder.findSegments(jpeg, Collections.singleton((byte) 0xED));
+        ByteBuffer segmentContent = slices.get(0).content();
+        System.out.format("%d bytes of APPD data in mapped buffer%n", segmentContent.remaining());
     }
 
 }
@@ -11,29 +11,57 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.BaseEncoding;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
+import com.google.common.primitives.Bytes;
 import org.apache.commons.io.input.CountingInputStream;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkState;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class JpegSegmentFinderTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private static final boolean dumpMeta = true;
     private static final boolean verbose = false;
 
@@ -110,6 +138,353 @@ public class JpegSegmentFinderTest {
         assertNotEquals("expect some exif segments", Collections.emptyList(), segments);
     }
 
+    @Test
+    public void findSegments_markerSet() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-iptc-caption.jpg").toURI());
+        MarkerSet markers = MarkerSet.allAppn().union(MarkerSet.tables());
+        List<JpegSegmentSpec> segments = new JpegSegmentFinder().findSegments(imageFile.toPath(), markers);
+        Set<Byte> foundMarkers = segments.stream().map(spec -> spec.marker).collect(Collectors.toSet());
+        assertEquals(ImmutableSet.of(JpegSegmentType.APP0.byteValue, JpegSegmentType.APPD.byteValue, JpegSegmentType.DQT.byteValue, JpegSegmentType.DHT.byteValue), foundMarkers);
+    }
+
+    @Test
+    public void visitSegments() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-iptc-caption.jpg").toURI());
+        MarkerSet markers = MarkerSet.allAppn().union(MarkerSet.tables());
+        JpegSegmentFinder finder = new JpegSegmentFinder();
+        List<JpegSegmentSpec> expected = finder.findSegments(imageFile.toPath(), markers);
+        checkState(expected.size() > 2);
+        List<JpegSegmentSpec> visited = new ArrayList<>();
+        finder.visitSegments(imageFile.toPath(), markers, (marker, headerOffset, contentOffset, contentLength) -> {
+            visited.add(new JpegSegmentSpec(marker, headerOffset, contentOffset, contentLength));
+            return true;
+        });
+        assertEquals(expected, visited);
+        visited.clear();
+        try (InputStream in = new FileInputStream(imageFile)) {
+            finder.visitSegments(in, markers, (marker, headerOffset, contentOffset, contentLength) -> {
+                visited.add(new JpegSegmentSpec(marker, headerOffset, contentOffset, contentLength));
+                return visited.size() < 2;
+            });
+        }
+        assertEquals("visitor stops scan", expected.subList(0, 2), visited);
+    }
+
+    @Test
+    public void streamSegments_firstOccurrence() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-exif.jpg").toURI());
+        JpegSegmentFinder finder = new JpegSegmentFinder();
+        MarkerSet markers = MarkerSet.of(JpegSegmentType.APP1.byteValue, JpegSegmentType.DQT.byteValue);
+        List<JpegSegmentSpec> all = finder.findSegments(imageFile.toPath(), markers);
+        checkState(all.stream().filter(spec -> spec.marker == JpegSegmentType.APP1.byteValue).count() == 2);
+        List<JpegSegmentSpec> firsts;
+        try (Stream<JpegSegmentSpec> stream = finder.streamSegments(imageFile.toPath(), markers, OccurrencePolicy.FIRST)) {
+            firsts = stream.collect(Collectors.toList());
+        }
+        List<JpegSegmentSpec> expected = ImmutableList.of(all.get(0), all.stream().filter(spec -> spec.marker == JpegSegmentType.DQT.byteValue).findFirst().get());
+        assertEquals(expected, firsts);
+        try (InputStream in = new FileInputStream(imageFile)) {
+            assertEquals(all, ImmutableList.copyOf(finder.iterateSegments(in, markers, OccurrencePolicy.ALL)));
+        }
+    }
+
+    @Test
+    public void iterateSegments_stopsReadingEarly() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-iptc-caption.jpg").toURI());
+        long bytesRead;
+        JpegSegmentSpec app0;
+        try (FileChannel fileChannel = FileChannel.open(imageFile.toPath())) {
+            CountingChannel channel = new CountingChannel(fileChannel);
+            Iterator<JpegSegmentSpec> segments = new JpegSegmentFinder().iterateSegments(channel, MarkerSet.of(JpegSegmentType.APP0.byteValue), OccurrencePolicy.FIRST);
+            app0 = segments.next();
+            assertFalse(segments.hasNext());
+            bytesRead = channel.byteCount;
+        }
+        assertEquals(2, app0.headerOffset);
+        assertTrue("bytes read: " + bytesRead, bytesRead <= ChannelReader.DEFAULT_BUFFER_SIZE);
+    }
+
+    @Test
+    public void findSegmentsThenStop() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-iptc-caption.jpg").toURI());
+        byte[] jpeg = Files.toByteArray(imageFile);
+        JpegSegmentFinder finder = new JpegSegmentFinder();
+        MarkerSet markers = MarkerSet.of(JpegSegmentType.APP0.byteValue, JpegSegmentType.APPD.byteValue);
+        List<JpegSegmentSpec> expected = ImmutableList.copyOf(finder.iterateSegments(new ByteArrayInputStream(jpeg), markers, OccurrencePolicy.FIRST));
+        checkState(expected.size() == 2);
+        JpegSegmentSpec iptc = expected.get(1);
+        for (StopPoint stopPoint : StopPoint.values()) {
+            try (InputStream in = new FileInputStream(imageFile)) {
+                PositionedStream result = finder.findSegmentsThenStop(in, markers, stopPoint);
+                assertEquals(stopPoint.name(), expected, result.segments);
+                assertTrue(result.complete);
+                long expectedPosition = stopPoint == StopPoint.CONTENT ? iptc.contentOffset : iptc.contentOffset - 4;
+                assertEquals(stopPoint.name(), expectedPosition, result.position);
+                byte[] actual = new byte[(int) (iptc.contentOffset + iptc.contentLength - result.position)];
+                new DataInputStream(result.stream).readFully(actual);
+                assertArrayEquals(stopPoint.name(), Arrays.copyOfRange(jpeg, (int) result.position, (int) (iptc.contentOffset + iptc.contentLength)), actual);
+            }
+        }
+    }
+
+    @Test
+    public void findSegmentsThenStop_incomplete() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-iptc-caption.jpg").toURI());
+        byte[] jpeg = Files.toByteArray(imageFile);
+        MarkerSet markers = MarkerSet.of(JpegSegmentType.APP0.byteValue, JpegSegmentType.APPF.byteValue);
+        PositionedStream result = new JpegSegmentFinder().findSegmentsThenStop(new ByteArrayInputStream(jpeg), markers, StopPoint.CONTENT);
+        assertFalse(result.complete);
+        assertEquals(1, result.segments.size());
+        assertEquals(jpeg.length - result.position, ByteStreams.toByteArray(result.stream).length);
+    }
+
+    @Test
+    public void findSegmentsAsync() throws Exception {
+        JpegSegmentFinder finder = new JpegSegmentFinder();
+        MarkerSet markers = MarkerSet.allAppn().union(MarkerSet.tables());
+        for (String resource : new String[]{"/image-with-exif.jpg", "/image-with-iptc-caption.jpg"}) {
+            Path imageFile = new File(getClass().getResource(resource).toURI()).toPath();
+            List<JpegSegmentSpec> expected = finder.findSegments(imageFile, markers);
+            checkState(!expected.isEmpty());
+            assertEquals(resource, expected, finder.findSegmentsAsync(imageFile, markers).get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void findSegmentsAsync_notJpeg() throws Exception {
+        File file = temporaryFolder.newFile("not-jpeg.jpg");
+        Files.write("not a jpeg".getBytes(StandardCharsets.US_ASCII), file);
+        try {
+            new JpegSegmentFinder().findSegmentsAsync(file.toPath(), MarkerSet.allAppn()).get(5, TimeUnit.SECONDS);
+            fail("expected exception");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof JpegSegmentFinderException);
+        }
+    }
+
+    @Test
+    public void findLayout() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-iptc-caption.jpg").toURI());
+        byte[] trailer = "appended data".getBytes(StandardCharsets.US_ASCII);
+        File fileWithTrailer = temporaryFolder.newFile("trailer.jpg");
+        Files.write(Bytes.concat(Files.toByteArray(imageFile), trailer), fileWithTrailer);
+        MarkerSet markers = MarkerSet.of(JpegSegmentType.APPD.byteValue, (byte) 0xDA, (byte) 0xD9);
+        JpegSegmentFinder finder = new JpegSegmentFinder();
+        JpegLayout layout = finder.findLayout(fileWithTrailer.toPath(), markers);
+        assertEquals(imageFile.length() - 2, layout.endOfImageOffset);
+        assertEquals(imageFile.length(), layout.trailingOffset);
+        assertEquals(trailer.length, layout.trailingLength);
+        List<JpegSegmentSpec> scans = layout.scans();
+        assertEquals(1, scans.size());
+        JpegSegmentSpec scan = scans.get(0);
+        assertEquals(layout.endOfImageOffset, scan.contentOffset + scan.contentLength);
+        assertEquals((byte) 0xD9, layout.segments.get(layout.segments.size() - 1).marker);
+        assertEquals(finder.findSegments(imageFile.toPath(), MarkerSet.of(JpegSegmentType.APPD.byteValue)), layout.segments.subList(0, 1));
+        try (InputStream in = new FileInputStream(fileWithTrailer)) {
+            assertEquals(layout.toString(), finder.findLayout(in, markers).toString());
+        }
+        assertEquals(layout.toString(), finder.findLayout(ByteBuffer.wrap(Files.toByteArray(fileWithTrailer)), markers).toString());
+    }
+
+    @Test
+    public void findLayout_progressive() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xD8});
+        // SOS, 2 bytes of parameters, then entropy-coded data with a stuffed zero and a restart marker
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xDA, 0x00, 0x04, 0x01, 0x02});
+        out.write(new byte[]{0x11, (byte) 0xFF, 0x00, 0x22, (byte) 0xFF, (byte) 0xD3, 0x33});
+        // DHT between scans
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xC4, 0x00, 0x03, 0x7F});
+        // second scan
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xDA, 0x00, 0x02});
+        out.write(new byte[]{0x44, (byte) 0xFF, (byte) 0xFF, 0x00, 0x55});
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xD9});
+        byte[] jpeg = out.toByteArray();
+        MarkerSet markers = MarkerSet.of((byte) 0xDA, (byte) 0xC4);
+        JpegLayout layout = new JpegSegmentFinder().findLayout(new ByteArrayInputStream(jpeg), markers);
+        assertEquals(ImmutableList.of(
+                new JpegSegmentSpec((byte) 0xDA, 2, 6, 9),
+                new JpegSegmentSpec((byte) 0xC4, 15, 19, 1),
+                new JpegSegmentSpec((byte) 0xDA, 20, 24, 5)), layout.segments);
+        assertEquals(29, layout.endOfImageOffset);
+        assertFalse(layout.hasTrailingData());
+    }
+
+    @Test
+    public void findLayout_truncated() throws Exception {
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xDA, 0x00, 0x02, 0x01, 0x02, 0x03};
+        JpegLayout layout = new JpegSegmentFinder().findLayout(ByteBuffer.wrap(jpeg), MarkerSet.of((byte) 0xDA));
+        assertEquals(ImmutableList.of(new JpegSegmentSpec((byte) 0xDA, 2, 6, 3)), layout.segments);
+        assertFalse(layout.hasEndOfImage());
+    }
+
+    @Test
+    public void findSegments_path() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-iptc-caption.jpg").toURI());
+        Set<Byte> markers = ImmutableSet.of(JpegSegmentType.APP0.byteValue, JpegSegmentType.APPD.byteValue, JpegSegmentType.DQT.byteValue);
+        JpegSegmentFinder finder = new JpegSegmentFinder();
+        List<JpegSegmentSpec> expected;
+        try (InputStream in = new FileInputStream(imageFile)) {
+            expected = finder.findSegments(in, markers);
+        }
+        checkState(!expected.isEmpty());
+        assertEquals(expected, finder.findSegments(imageFile.toPath(), markers));
+    }
+
+    @Test
+    public void findSegments_buffer() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-iptc-caption.jpg").toURI());
+        Set<Byte> markers = ImmutableSet.of(JpegSegmentType.APP0.byteValue, JpegSegmentType.APPD.byteValue);
+        JpegSegmentFinder finder = new JpegSegmentFinder();
+        List<JpegSegmentSpec> expected = finder.findSegments(imageFile.toPath(), markers);
+        byte[] fileBytes = Files.toByteArray(imageFile);
+        // put some junk before the JPEG data to check that offsets are relative to buffer position
+        byte[] padded = new byte[fileBytes.length + 7];
+        System.arraycopy(fileBytes, 0, padded, 7, fileBytes.length);
+        ByteBuffer buffer = ByteBuffer.wrap(padded);
+        buffer.position(7);
+        List<JpegSegmentSlice> slices = finder.findSegments(buffer, markers);
+        assertEquals("position", 7, buffer.position());
+        assertEquals(expected.size(), slices.size());
+        for (int i = 0; i < expected.size(); i++) {
+            JpegSegmentSpec spec = expected.get(i);
+            JpegSegmentSlice slice = slices.get(i);
+            assertEquals(spec.toString(), slice.toString());
+            ByteBuffer content = slice.content();
+            assertTrue("read-only", content.isReadOnly());
+            byte[] contentBytes = new byte[content.remaining()];
+            content.get(contentBytes);
+            byte[] expectedContent = Files.asByteSource(imageFile).slice(spec.contentOffset, spec.contentLength).read();
+            assertArrayEquals(expectedContent, contentBytes);
+            assertEquals(spec.fullLength(), slice.fullSegment().remaining());
+        }
+    }
+
+    @Test
+    public void findSegments_channelSkipsWithoutReading() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-iptc-caption.jpg").toURI());
+        Set<Byte> markers = ImmutableSet.of(JpegSegmentType.APPD.byteValue);
+        List<JpegSegmentSpec> segments;
+        long bytesRead;
+        try (FileChannel fileChannel = FileChannel.open(imageFile.toPath())) {
+            CountingChannel channel = new CountingChannel(fileChannel);
+            segments = new JpegSegmentFinder().findSegments(channel, markers);
+            bytesRead = channel.byteCount;
+        }
+        if (verbose) System.out.format("read %d bytes from %d-byte file%n", bytesRead, imageFile.length());
+        assertEquals(1, segments.size());
+        assertTrue("expect to read much less than whole file", bytesRead < imageFile.length() / 10);
+    }
+
+    @Test
+    public void findSegments_resyncOverJunk() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xD8});
+        // APP0 with 16 bytes of content
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xE0, 0x00, 0x12});
+        out.write(new byte[16]);
+        // 20000 bytes of junk that spans several blocks, then fill bytes and a stuffed zero
+        for (int i = 0; i < 20000; i++) {
+            out.write(i % 0xFF);
+        }
+        out.write(new byte[]{(byte) 0xFF, 0x00, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF});
+        // APPD with 3 bytes of content
+        out.write(new byte[]{(byte) 0xED, 0x00, 0x05, 1, 2, 3});
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xDA, 0x00, 0x02});
+        byte[] jpeg = out.toByteArray();
+        Set<Byte> markers = ImmutableSet.of((byte) 0xE0, (byte) 0xED);
+        List<JpegSegmentSpec> expected = ImmutableList.of(
+                new JpegSegmentSpec((byte) 0xE0, 2, 6, 16),
+                new JpegSegmentSpec((byte) 0xED, 22, 20030, 3));
+        JpegSegmentFinder finder = new JpegSegmentFinder();
+        assertEquals(expected, finder.findSegments(new ByteArrayInputStream(jpeg), markers));
+        assertEquals(expected.toString(), finder.findSegments(ByteBuffer.wrap(jpeg), markers).toString());
+        File file = temporaryFolder.newFile("resync.jpg");
+        Files.write(jpeg, file);
+        assertEquals(expected, finder.findSegments(file.toPath(), markers));
+        assertEquals(expected, finder.findSegmentsAsync(file.toPath(), MarkerSet.copyOf(markers)).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void findSegments_unbufferedStreamReadsInBlocks() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-exif.jpg").toURI());
+        Set<Byte> markers = ImmutableSet.of(JpegSegmentType.APP1.byteValue);
+        int[] readCalls = {0};
+        List<JpegSegmentSpec> segments;
+        try (InputStream in = new FilterInputStream(new FileInputStream(imageFile)) {
+            @Override
+            public int read() throws IOException {
+                readCalls[0]++;
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                readCalls[0]++;
+                return super.read(b, off, len);
+            }
+        }) {
+            segments = new JpegSegmentFinder().findSegments(in, markers);
+        }
+        assertEquals(2, segments.size());
+        assertTrue("read calls: " + readCalls[0], readCalls[0] <= 2);
+    }
+
+    private static class CountingChannel implements SeekableByteChannel {
+
+        private final SeekableByteChannel delegate;
+        public long byteCount;
+
+        public CountingChannel(SeekableByteChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            int n = delegate.read(dst);
+            if (n > 0) {
+                byteCount += n;
+            }
+            return n;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return delegate.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+
     private static int countErrors(Metadata md) {
         return ImmutableList.copyOf(md.getDirectories()).stream().mapToInt(Directory::getErrorCount).sum();
     }
@@ -123,4 +498,30 @@ public class JpegSegmentFinderTest {
     public void example() throws Exception {
         JpegSegmentFinderExample.main(new String[0]);
     }
+
+    @Test
+    public void sharedPooledFinder() throws Exception {
+        File jpegFile = new File(getClass().getResource("/image-with-exif.jpg").toURI());
+        byte[] jpeg = Files.toByteArray(jpegFile);
+        MarkerSet markers = MarkerSet.allAppn();
+        List<JpegSegmentSpec> expected = new JpegSegmentFinder().findSegments(jpegFile.toPath(), markers);
+        JpegSegmentFinder finder = JpegSegmentFinder.builder().bufferPoolCapacity(4).build();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<JpegSegmentSpec>>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                boolean stream = i % 2 == 0;
+                results.add(executor.submit(() -> stream
+                        ? finder.findSegments(new ByteArrayInputStream(jpeg), markers)
+                        : finder.findSegments(jpegFile.toPath(), markers)));
+            }
+            for (Future<List<JpegSegmentSpec>> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        int idle = finder.idleBuffers(StreamReader.DEFAULT_BUFFER_SIZE);
+        assertTrue("idle " + idle, idle >= 1 && idle <= 4);
+    }
 }
\ No newline at end of file
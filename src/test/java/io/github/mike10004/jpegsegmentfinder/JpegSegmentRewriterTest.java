@@ -0,0 +1,99 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.imaging.jpeg.JpegSegmentType;
+import com.drew.metadata.Directory;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.iptc.IptcDirectory;
+import com.google.common.collect.ImmutableList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkState;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JpegSegmentRewriterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void dropIptc() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-iptc-caption.jpg").toURI());
+        checkState(ImageMetadataReader.readMetadata(imageFile).getFirstDirectoryOfType(IptcDirectory.class) != null);
+        MarkerSet iptcMarkers = MarkerSet.of(JpegSegmentType.APPD.byteValue);
+        List<JpegSegmentSpec> iptcSegments = new JpegSegmentFinder().findSegments(imageFile.toPath(), iptcMarkers);
+        File cleanFile = temporaryFolder.newFile("iptc-free.jpg");
+        long written = JpegSegmentRewriter.dropping(iptcMarkers).rewrite(imageFile.toPath(), cleanFile.toPath());
+        long droppedLength = iptcSegments.stream().mapToLong(JpegSegmentSpec::fullLength).sum();
+        assertEquals(imageFile.length() - droppedLength, written);
+        assertEquals(written, cleanFile.length());
+        Metadata metadata = ImageMetadataReader.readMetadata(cleanFile);
+        assertEquals("errors", 0, countErrors(metadata));
+        assertNull(metadata.getFirstDirectoryOfType(IptcDirectory.class));
+        assertEquals(Collections.emptyList(), new JpegSegmentFinder().findSegments(cleanFile.toPath(), iptcMarkers));
+    }
+
+    @Test
+    public void dropByPredicate() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-exif.jpg").toURI());
+        checkState(ImageMetadataReader.readMetadata(imageFile).getFirstDirectoryOfType(ExifIFD0Directory.class) != null);
+        File cleanFile = temporaryFolder.newFile("exif-free.jpg");
+        JpegSegmentRewriter.dropping(segment -> segment.marker == JpegSegmentType.APP1.byteValue).rewrite(imageFile.toPath(), cleanFile.toPath());
+        Metadata metadata = ImageMetadataReader.readMetadata(cleanFile);
+        assertEquals("errors", 0, countErrors(metadata));
+        assertNull(metadata.getFirstDirectoryOfType(ExifIFD0Directory.class));
+    }
+
+    @Test
+    public void rewriteInPlace() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-iptc-caption.jpg").toURI());
+        MarkerSet iptcMarkers = MarkerSet.of(JpegSegmentType.APPD.byteValue);
+        File copy = temporaryFolder.newFile("in-place.jpg");
+        Files.copy(imageFile.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Path sameFile = copy.toPath().getParent().resolve(".").resolve(copy.getName());
+        long written = JpegSegmentRewriter.dropping(iptcMarkers).rewrite(copy.toPath(), sameFile);
+        assertTrue(written > 0);
+        assertEquals(written, copy.length());
+        assertEquals(Collections.emptyList(), new JpegSegmentFinder().findSegments(copy.toPath(), iptcMarkers));
+        assertEquals("errors", 0, countErrors(ImageMetadataReader.readMetadata(copy)));
+        File[] siblings = copy.getParentFile().listFiles();
+        assertEquals("temporary file removed", 1, siblings == null ? 0 : siblings.length);
+    }
+
+    @Test
+    public void rewriteFailureLeavesTargetIntact() throws Exception {
+        File notJpeg = temporaryFolder.newFile("not-a-jpeg.jpg");
+        Files.write(notJpeg.toPath(), "this is not a JPEG".getBytes(StandardCharsets.US_ASCII));
+        File targetDir = temporaryFolder.newFolder();
+        Path target = targetDir.toPath().resolve("existing.jpg");
+        byte[] original = "original content".getBytes(StandardCharsets.US_ASCII);
+        Files.write(target, original);
+        try {
+            JpegSegmentRewriter.dropping(MarkerSet.allAppn()).rewrite(notJpeg.toPath(), target);
+            fail("rewrite should fail");
+        } catch (JpegSegmentFinderException expected) {
+        }
+        assertArrayEquals(original, Files.readAllBytes(target));
+        File[] siblings = targetDir.listFiles();
+        assertEquals("no temporary file left", 1, siblings == null ? 0 : siblings.length);
+    }
+
+    private static int countErrors(Metadata md) {
+        return ImmutableList.copyOf(md.getDirectories()).stream().mapToInt(Directory::getErrorCount).sum();
+    }
+}
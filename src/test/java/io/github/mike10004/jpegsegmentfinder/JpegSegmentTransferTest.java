@@ -0,0 +1,90 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import com.google.common.io.Files;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkState;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class JpegSegmentTransferTest {
+
+    @Test
+    public void transfer() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-exif.jpg").toURI());
+        List<JpegSegmentSpec> segments = new JpegSegmentFinder().findSegments(imageFile.toPath(), MarkerSet.allAppn());
+        checkState(segments.size() >= 2);
+        byte[] fileBytes = Files.toByteArray(imageFile);
+        ByteArrayOutputStream expectedContents = new ByteArrayOutputStream();
+        ByteArrayOutputStream expectedSegments = new ByteArrayOutputStream();
+        for (JpegSegmentSpec segment : segments) {
+            expectedContents.write(fileBytes, (int) segment.contentOffset, (int) segment.contentLength);
+            expectedSegments.write(fileBytes, (int) segment.headerOffset, (int) segment.fullLength());
+        }
+        try (FileChannel source = FileChannel.open(imageFile.toPath())) {
+            ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            long n = JpegSegmentTransfer.transferContents(source, segments, Channels.newChannel(contents));
+            assertArrayEquals(expectedContents.toByteArray(), contents.toByteArray());
+            assertEquals(contents.size(), n);
+            ByteArrayOutputStream fullSegments = new ByteArrayOutputStream();
+            JpegSegmentTransfer.transferSegments(source, segments, Channels.newChannel(fullSegments));
+            assertArrayEquals(expectedSegments.toByteArray(), fullSegments.toByteArray());
+            ByteBuffer[] buffers = new ByteBuffer[segments.size()];
+            for (int i = 0; i < buffers.length; i++) {
+                // extra room checks that reads stop at the segment end
+                buffers[i] = ByteBuffer.allocate((int) segments.get(i).contentLength + 10);
+            }
+            JpegSegmentTransfer.readContents(source, segments, buffers);
+            for (int i = 0; i < buffers.length; i++) {
+                JpegSegmentSpec segment = segments.get(i);
+                assertEquals(segment.contentLength, buffers[i].position());
+                byte[] actual = new byte[(int) segment.contentLength];
+                System.arraycopy(buffers[i].array(), 0, actual, 0, actual.length);
+                byte[] expected = new byte[actual.length];
+                System.arraycopy(fileBytes, (int) segment.contentOffset, expected, 0, expected.length);
+                assertArrayEquals(expected, actual);
+            }
+            assertEquals("source position", 0, source.position());
+        }
+    }
+
+    @Test
+    public void transferToChannelThatAcceptsNothing() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-exif.jpg").toURI());
+        List<JpegSegmentSpec> segments = new JpegSegmentFinder().findSegments(imageFile.toPath(), MarkerSet.allAppn());
+        // behaves like a non-blocking channel whose send buffer is full
+        WritableByteChannel full = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                return 0;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try (FileChannel source = FileChannel.open(imageFile.toPath())) {
+            JpegSegmentTransfer.transferSegment(source, segments.get(0), full);
+            fail("transfer should not succeed");
+        } catch (IOException e) {
+            assertFalse("not end of file: " + e, e instanceof EOFException);
+        }
+    }
+}
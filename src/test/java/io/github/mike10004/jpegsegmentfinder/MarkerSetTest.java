@@ -0,0 +1,56 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MarkerSetTest {
+
+    @Test
+    public void contains() {
+        Set<Byte> markers = ImmutableSet.of((byte) 0x00, (byte) 0x3F, (byte) 0x40, (byte) 0x7F, (byte) 0x80, (byte) 0xE1, (byte) 0xFF);
+        MarkerSet markerSet = MarkerSet.copyOf(markers);
+        for (int m = 0; m < 256; m++) {
+            assertEquals(String.format("0x%02X", m), markers.contains((byte) m), markerSet.contains((byte) m));
+        }
+        assertEquals(markers.size(), markerSet.size());
+        assertEquals(MarkerSet.of((byte) 0x00, (byte) 0x3F, (byte) 0x40, (byte) 0x7F, (byte) 0x80, (byte) 0xE1, (byte) 0xFF), markerSet);
+    }
+
+    @Test
+    public void groups() {
+        assertEquals(16, MarkerSet.allAppn().size());
+        assertTrue(MarkerSet.allAppn().contains((byte) 0xE0));
+        assertTrue(MarkerSet.allAppn().contains((byte) 0xEF));
+        assertFalse(MarkerSet.allAppn().contains((byte) 0xF0));
+        assertEquals(13, MarkerSet.allSofn().size());
+        assertFalse(MarkerSet.allSofn().contains((byte) 0xC4));
+        assertTrue(MarkerSet.tables().contains((byte) 0xC4));
+        assertTrue(MarkerSet.tables().contains((byte) 0xDB));
+        assertEquals(MarkerSet.tables(), MarkerSet.dqt().union(MarkerSet.dht()));
+        assertEquals(MarkerSet.dqt(), MarkerSet.tables().minus(MarkerSet.dht()));
+        assertEquals(256, MarkerSet.all().size());
+        assertTrue(MarkerSet.none().isEmpty());
+        assertFalse(MarkerSet.com().isEmpty());
+    }
+
+    @Test
+    public void toString_() {
+        assertEquals("MarkerSet{0xDB, 0xE1}", MarkerSet.of((byte) 0xE1, (byte) 0xDB).toString());
+    }
+
+    @Test
+    public void all() {
+        Set<Byte> markers = new HashSet<>();
+        for (int m = 0; m < 256; m++) {
+            markers.add((byte) m);
+        }
+        assertEquals(MarkerSet.all(), MarkerSet.copyOf(markers));
+    }
+}
@@ -0,0 +1,146 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import com.drew.imaging.jpeg.JpegSegmentType;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkState;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RangeSourceTest {
+
+    @Test
+    public void http_oneRoundTrip() throws Exception {
+        MarkerSet markers = MarkerSet.allAppn().union(MarkerSet.tables());
+        for (String resource : new String[]{"/image-with-exif.jpg", "/image-with-iptc-caption.jpg"}) {
+            byte[] jpeg = Files.toByteArray(new File(getClass().getResource(resource).toURI()));
+            List<String> expected = new JpegSegmentFinder().findSegments(ByteBuffer.wrap(jpeg), markers)
+                    .stream().map(JpegSegmentSpec::toString).collect(Collectors.toList());
+            checkState(!expected.isEmpty());
+            AtomicInteger requests = new AtomicInteger();
+            HttpServer server = startServer(jpeg, requests);
+            try {
+                URL url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), server.getAddress().getPort(), "/image.jpg");
+                List<JpegSegmentSpec> actual = new JpegSegmentFinder().findSegments(new HttpRangeSource(url), markers);
+                assertEquals(resource, expected, actual.stream().map(JpegSegmentSpec::toString).collect(Collectors.toList()));
+            } finally {
+                server.stop(0);
+            }
+            assertEquals(resource + " requests", 1, requests.get());
+        }
+    }
+
+    @Test
+    public void fetchesMoreOnlyWhenHeaderChainLeavesInitialRange() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xD8});
+        writeSegment(out, 0xE1, 0xFFFF - 2);
+        writeSegment(out, 0xE2, 0xFFFF - 2);
+        writeSegment(out, 0xED, 100);
+        writeSegment(out, 0xDA, 10);
+        out.write(new byte[256 * 1024]);
+        byte[] jpeg = out.toByteArray();
+        CountingSource source = new CountingSource(jpeg);
+        List<JpegSegmentSpec> actual = new JpegSegmentFinder().findSegments(source, MarkerSet.allAppn());
+        List<String> expected = new JpegSegmentFinder().findSegments(ByteBuffer.wrap(jpeg), MarkerSet.allAppn())
+                .stream().map(JpegSegmentSpec::toString).collect(Collectors.toList());
+        assertEquals(expected, actual.stream().map(JpegSegmentSpec::toString).collect(Collectors.toList()));
+        assertEquals(3, actual.size());
+        assertTrue("reads: " + source.reads, source.reads.get() <= 3);
+        assertTrue("bytes: " + source.bytes, source.bytes.get() < jpeg.length / 2);
+    }
+
+    private static void writeSegment(ByteArrayOutputStream out, int marker, int contentLength) {
+        out.write(0xFF);
+        out.write(marker);
+        out.write((contentLength + 2) >> 8);
+        out.write((contentLength + 2) & 0xFF);
+        byte[] content = new byte[contentLength];
+        Arrays.fill(content, (byte) 0x2A);
+        out.write(content, 0, content.length);
+    }
+
+    private static class CountingSource implements RangeSource {
+
+        private final byte[] data;
+        public final AtomicInteger reads = new AtomicInteger();
+        public final AtomicInteger bytes = new AtomicInteger();
+
+        public CountingSource(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public ByteBuffer read(long offset, int length) {
+            reads.incrementAndGet();
+            int from = (int) Math.min(offset, data.length);
+            int to = (int) Math.min(offset + length, data.length);
+            bytes.addAndGet(to - from);
+            return ByteBuffer.wrap(Arrays.copyOfRange(data, from, to));
+        }
+
+        @Override
+        public long size() {
+            return data.length;
+        }
+    }
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("^bytes=(\\d+)-(\\d+)$");
+
+    private static HttpServer startServer(byte[] content, AtomicInteger requests) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            try {
+                serve(exchange, content);
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static void serve(HttpExchange exchange, byte[] content) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range == null) {
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content);
+            }
+            return;
+        }
+        Matcher m = RANGE_PATTERN.matcher(range);
+        checkState(m.find(), "unsupported range %s", range);
+        int first = Integer.parseInt(m.group(1));
+        if (first >= content.length) {
+            exchange.getResponseHeaders().set("Content-Range", "bytes */" + content.length);
+            exchange.sendResponseHeaders(416, -1);
+            return;
+        }
+        int last = Math.min(Integer.parseInt(m.group(2)), content.length - 1);
+        exchange.getResponseHeaders().set("Content-Range", String.format("bytes %d-%d/%d", first, last, content.length));
+        exchange.sendResponseHeaders(206, last - first + 1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content, first, last - first + 1);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScanLimitsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void resyncLimit() throws Exception {
+        byte[] junk = new byte[256 * 1024];
+        junk[0] = (byte) 0xFF;
+        junk[1] = (byte) 0xD8;
+        Arrays.fill(junk, 2, junk.length, (byte) 0x5A);
+        JpegSegmentFinder finder = new JpegSegmentFinder(null, ScanLimits.builder().maxResyncBytes(1000).build());
+        try {
+            finder.findSegments(new ByteArrayInputStream(junk), MarkerSet.allAppn());
+            fail("should have thrown");
+        } catch (ResyncLimitExceededException e) {
+            assertTrue("position " + e.getPosition(), e.getPosition() <= 2 + 1001);
+        }
+        // a marker exactly at the limit is found
+        junk[2 + 1000] = (byte) 0xFF;
+        junk[2 + 1001] = (byte) 0xD9;
+        ScanReport report = finder.findSegmentsLeniently(ByteBuffer.wrap(junk), MarkerSet.allAppn());
+        assertEquals(ScanStopReason.END_OF_DATA, report.stopReason);
+    }
+
+    @Test
+    public void segmentAndByteLimits() throws Exception {
+        byte[] jpeg = manySegments(100);
+        MarkerSet markers = MarkerSet.of((byte) 0xE1);
+        assertEquals(100, new JpegSegmentFinder().findSegments(new ByteArrayInputStream(jpeg), markers).size());
+        JpegSegmentFinder segmentLimited = new JpegSegmentFinder(null, ScanLimits.builder().maxSegments(10).build());
+        try {
+            segmentLimited.findSegments(ByteBuffer.wrap(jpeg), markers);
+            fail("should have thrown");
+        } catch (SegmentLimitExceededException e) {
+            assertEquals(ScanStopReason.SEGMENT_LIMIT, e.getStopReason());
+        }
+        JpegSegmentFinder byteLimited = new JpegSegmentFinder(null, ScanLimits.builder().maxBytes(200).build());
+        try {
+            byteLimited.findSegments(new ByteArrayInputStream(jpeg), markers);
+            fail("should have thrown");
+        } catch (ByteLimitExceededException e) {
+            assertTrue("position " + e.getPosition(), e.getPosition() <= 200);
+        }
+    }
+
+    @Test
+    public void lenient() throws Exception {
+        byte[] jpeg = manySegments(100);
+        JpegSegmentFinder finder = new JpegSegmentFinder(null, ScanLimits.builder().maxSegments(10).build());
+        ScanReport report = finder.findSegmentsLeniently(new ByteArrayInputStream(jpeg), MarkerSet.of((byte) 0xE1));
+        assertEquals(ScanStopReason.SEGMENT_LIMIT, report.stopReason);
+        assertEquals(10, report.segments.size());
+        assertEquals(false, report.isComplete());
+        report = finder.findSegmentsLeniently(new ByteArrayInputStream(Arrays.copyOf(jpeg, 50)), MarkerSet.of((byte) 0xE1));
+        assertEquals(ScanStopReason.END_OF_DATA, report.stopReason);
+        report = finder.findSegmentsLeniently(new ByteArrayInputStream("not a jpeg".getBytes()), MarkerSet.of((byte) 0xE1));
+        assertEquals(ScanStopReason.CORRUPT_DATA, report.stopReason);
+        File file = new File(getClass().getResource("/image-with-exif.jpg").toURI());
+        report = new JpegSegmentFinder().findSegmentsLeniently(file.toPath(), MarkerSet.allAppn());
+        assertEquals(ScanStopReason.START_OF_SCAN, report.stopReason);
+        assertNull(report.detail);
+        assertEquals(new JpegSegmentFinder().findSegments(file.toPath(), MarkerSet.allAppn()), report.segments);
+    }
+
+    @Test
+    public void pushParserLimits() throws Exception {
+        byte[] jpeg = manySegments(100);
+        MarkerSet markers = MarkerSet.of((byte) 0xE1);
+        try {
+            feedInChunks(new JpegPushParser(markers, (marker, headerOffset, contentOffset, contentLength) -> true,
+                    ScanLimits.builder().maxSegments(10).build()), jpeg);
+            fail("should have thrown");
+        } catch (SegmentLimitExceededException e) {
+            assertEquals(2 + 10 * 8, e.getPosition());
+        }
+        try {
+            feedInChunks(new JpegPushParser(markers, (marker, headerOffset, contentOffset, contentLength) -> true,
+                    ScanLimits.builder().maxBytes(200).build()), jpeg);
+            fail("should have thrown");
+        } catch (ByteLimitExceededException e) {
+            assertTrue("position " + e.getPosition(), e.getPosition() <= 200);
+        }
+        byte[] junk = new byte[4096];
+        junk[0] = (byte) 0xFF;
+        junk[1] = (byte) 0xD8;
+        Arrays.fill(junk, 2, junk.length, (byte) 0x5A);
+        junk[2 + 1000] = (byte) 0xFF;
+        junk[2 + 1001] = (byte) 0xD9;
+        // a marker exactly at the limit is found
+        JpegPushParser parser = new JpegPushParser(markers, (marker, headerOffset, contentOffset, contentLength) -> true,
+                ScanLimits.builder().maxResyncBytes(1000).build());
+        feedInChunks(parser, junk);
+        assertTrue(parser.isDone());
+        try {
+            feedInChunks(new JpegPushParser(markers, (marker, headerOffset, contentOffset, contentLength) -> true,
+                    ScanLimits.builder().maxResyncBytes(999).build()), junk);
+            fail("should have thrown");
+        } catch (ResyncLimitExceededException e) {
+            assertTrue("position " + e.getPosition(), e.getPosition() <= 2 + 1000);
+        }
+    }
+
+    private static void feedInChunks(JpegPushParser parser, byte[] data) {
+        for (int i = 0; i < data.length && !parser.isDone(); i += 7) {
+            parser.feed(ByteBuffer.wrap(data, i, Math.min(7, data.length - i)));
+        }
+    }
+
+    @Test
+    public void asyncLimits() throws Exception {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), manySegments(100));
+        JpegSegmentFinder finder = new JpegSegmentFinder(null, ScanLimits.builder().maxSegments(10).build());
+        try {
+            finder.findSegmentsAsync(file.toPath(), MarkerSet.of((byte) 0xE1)).get();
+            fail("should have thrown");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().toString(), e.getCause() instanceof SegmentLimitExceededException);
+        }
+    }
+
+    @Test
+    public void rewriterLimits() throws Exception {
+        File source = temporaryFolder.newFile();
+        Files.write(source.toPath(), manySegments(100));
+        File target = temporaryFolder.newFile();
+        JpegSegmentRewriter rewriter = JpegSegmentRewriter.dropping(MarkerSet.of((byte) 0xE1))
+                .withLimits(ScanLimits.builder().maxBytes(200).build());
+        try {
+            rewriter.rewrite(source.toPath(), target.toPath());
+            fail("should have thrown");
+        } catch (ByteLimitExceededException e) {
+            assertEquals(0, target.length());
+        }
+    }
+
+    private static byte[] manySegments(int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        for (int i = 0; i < count; i++) {
+            out.write(0xFF);
+            out.write(0xE1);
+            out.write(0);
+            out.write(6);
+            out.write(i);
+            out.write(i);
+            out.write(i);
+            out.write(i);
+        }
+        out.write(0xFF);
+        out.write(0xDA);
+        out.write(0);
+        out.write(2);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,153 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import com.drew.imaging.jpeg.JpegSegmentType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScanListenerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void statistics() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-iptc-caption.jpg").toURI());
+        MarkerSet markers = MarkerSet.of(JpegSegmentType.APPD.byteValue);
+        RecordingListener listener = new RecordingListener();
+        JpegSegmentFinder finder = new JpegSegmentFinder(listener);
+        List<JpegSegmentSpec> segments;
+        try (InputStream in = new FileInputStream(imageFile)) {
+            segments = finder.findSegments(in, markers);
+        }
+        finder.findSegments(imageFile.toPath(), markers);
+        assertEquals(2, listener.completed.size());
+        for (ScanStatistics statistics : listener.completed) {
+            assertEquals(statistics.toString(), segments.size(), statistics.segmentsMatched);
+            assertTrue(statistics.toString(), statistics.segmentsVisited > statistics.segmentsMatched);
+            assertEquals(statistics.toString(), 0, statistics.resyncBytes);
+            assertTrue(statistics.toString(), statistics.bytesRead + statistics.bytesSkipped < imageFile.length());
+        }
+        ScanStatistics streamStatistics = listener.completed.get(0);
+        assertTrue(streamStatistics.toString(), streamStatistics.readCalls <= 1 + streamStatistics.bytesRead / StreamReader.DEFAULT_BUFFER_SIZE + streamStatistics.skipCalls);
+        ScanStatistics channelStatistics = listener.completed.get(1);
+        assertTrue(channelStatistics.toString(), channelStatistics.bytesSkipped > 0);
+    }
+
+    @Test
+    public void resyncBytesAndFailure() throws Exception {
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, 'j', 'u', 'n', 'k', (byte) 0xFF, (byte) 0xFF, (byte) 0xE1, 0x00, 0x03, 0x01, (byte) 0xFF, (byte) 0xDA};
+        RecordingListener listener = new RecordingListener();
+        JpegSegmentFinder finder = new JpegSegmentFinder(listener);
+        finder.findSegments(new ByteArrayInputStream(jpeg), MarkerSet.allAppn());
+        ScanStatistics statistics = listener.completed.get(0);
+        assertEquals(statistics.toString(), 5, statistics.resyncBytes);
+        assertEquals(statistics.toString(), 2, statistics.segmentsVisited);
+        assertEquals(statistics.toString(), 1, statistics.segmentsMatched);
+        try {
+            finder.findSegments(new ByteArrayInputStream("not a jpeg".getBytes(StandardCharsets.US_ASCII)), MarkerSet.allAppn());
+            fail("expected exception");
+        } catch (JpegSegmentFinderException ignore) {
+        }
+        assertEquals(1, listener.failed.size());
+    }
+
+    @Test
+    public void asyncStatistics() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-iptc-caption.jpg").toURI());
+        MarkerSet markers = MarkerSet.of(JpegSegmentType.APPD.byteValue);
+        RecordingListener listener = new RecordingListener();
+        JpegSegmentFinder finder = new JpegSegmentFinder(listener);
+        finder.findSegments(imageFile.toPath(), markers);
+        List<JpegSegmentSpec> segments = finder.findSegmentsAsync(imageFile.toPath(), markers).get();
+        assertEquals(2, listener.completed.size());
+        ScanStatistics expected = listener.completed.get(0);
+        ScanStatistics statistics = listener.completed.get(1);
+        assertEquals(statistics.toString(), segments.size(), statistics.segmentsMatched);
+        assertEquals(statistics.toString(), expected.segmentsVisited, statistics.segmentsVisited);
+        assertEquals(statistics.toString(), 0, statistics.resyncBytes);
+        assertTrue(statistics.toString(), statistics.bytesSkipped > 0);
+        assertTrue(statistics.toString(), statistics.bytesRead + statistics.bytesSkipped < imageFile.length());
+    }
+
+    @Test
+    public void asyncResyncBytesAndFailure() throws Exception {
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, 'j', 'u', 'n', 'k', (byte) 0xFF, (byte) 0xFF, (byte) 0xE1, 0x00, 0x03, 0x01, (byte) 0xFF, (byte) 0xDA};
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), jpeg);
+        RecordingListener listener = new RecordingListener();
+        JpegSegmentFinder finder = new JpegSegmentFinder(listener);
+        finder.findSegmentsAsync(file.toPath(), MarkerSet.allAppn()).get();
+        ScanStatistics statistics = listener.completed.get(0);
+        assertEquals(statistics.toString(), 5, statistics.resyncBytes);
+        assertEquals(statistics.toString(), 2, statistics.segmentsVisited);
+        assertEquals(statistics.toString(), 1, statistics.segmentsMatched);
+        Files.write(file.toPath(), "not a jpeg".getBytes(StandardCharsets.US_ASCII));
+        try {
+            finder.findSegmentsAsync(file.toPath(), MarkerSet.allAppn()).get();
+            fail("expected exception");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().toString(), e.getCause() instanceof JpegSegmentFinderException);
+        }
+        assertEquals(1, listener.failed.size());
+    }
+
+    @Test
+    public void iteratorsAndStreams() throws Exception {
+        File imageFile = new File(getClass().getResource("/image-with-iptc-caption.jpg").toURI());
+        RecordingListener listener = new RecordingListener();
+        JpegSegmentFinder finder = new JpegSegmentFinder(listener);
+        List<JpegSegmentSpec> segments = new ArrayList<>();
+        try (InputStream in = new FileInputStream(imageFile)) {
+            finder.iterateSegments(in, MarkerSet.allAppn(), OccurrencePolicy.ALL).forEachRemaining(segments::add);
+        }
+        assertEquals(1, listener.completed.size());
+        assertEquals(segments.size(), listener.completed.get(0).segmentsMatched);
+        try (Stream<JpegSegmentSpec> stream = finder.streamSegments(imageFile.toPath(), MarkerSet.allAppn(), OccurrencePolicy.ALL)) {
+            assertEquals(segments.size(), stream.count());
+        }
+        assertEquals(2, listener.completed.size());
+        // an abandoned iteration is not reported
+        try (Stream<JpegSegmentSpec> stream = finder.streamSegments(imageFile.toPath(), MarkerSet.allAppn(), OccurrencePolicy.ALL)) {
+            assertTrue(stream.findFirst().isPresent());
+        }
+        assertEquals(2, listener.completed.size());
+        try {
+            finder.iterateSegments(new ByteArrayInputStream("not a jpeg".getBytes(StandardCharsets.US_ASCII)), MarkerSet.allAppn(), OccurrencePolicy.ALL).hasNext();
+            fail("expected exception");
+        } catch (JpegSegmentFinderException ignore) {
+        }
+        assertEquals(1, listener.failed.size());
+    }
+
+    private static class RecordingListener implements ScanListener {
+
+        public final List<ScanStatistics> completed = new ArrayList<>();
+        public final List<ScanStatistics> failed = new ArrayList<>();
+
+        @Override
+        public void scanCompleted(ScanStatistics statistics) {
+            completed.add(statistics);
+        }
+
+        @Override
+        public void scanFailed(ScanStatistics statistics, Exception exception) {
+            failed.add(statistics);
+        }
+    }
+}
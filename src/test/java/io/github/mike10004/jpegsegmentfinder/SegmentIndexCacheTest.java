@@ -0,0 +1,169 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import com.drew.imaging.jpeg.JpegSegmentType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentIndexCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void inMemory() throws Exception {
+        Path imageFile = copyResource("/image-with-iptc-caption.jpg");
+        CountingFinder finder = new CountingFinder();
+        MarkerSet markers = MarkerSet.of(JpegSegmentType.APPD.byteValue);
+        List<JpegSegmentSpec> expected = new JpegSegmentFinder().findSegments(imageFile, markers);
+        assertFalse(expected.isEmpty());
+        try (SegmentIndexCache cache = SegmentIndexCache.inMemory(finder, 10)) {
+            assertEquals(expected, cache.findSegments(imageFile, markers));
+            assertEquals(expected, cache.findSegments(imageFile, markers));
+            assertEquals(new JpegSegmentFinder().findSegments(imageFile, MarkerSet.allAppn()), cache.findSegments(imageFile, MarkerSet.allAppn()));
+            assertEquals("scans", 1, finder.scans.get());
+            Files.setLastModifiedTime(imageFile, FileTime.fromMillis(Files.getLastModifiedTime(imageFile).toMillis() - 60000));
+            assertEquals(expected, cache.findSegments(imageFile, markers));
+            assertEquals("scans after modification", 2, finder.scans.get());
+        }
+    }
+
+    @Test
+    public void persistent() throws Exception {
+        Path imageFile = copyResource("/image-with-iptc-caption.jpg");
+        Path otherFile = copyResource("/image-with-exif.jpg");
+        Path indexFile = temporaryFolder.getRoot().toPath().resolve("segments.idx");
+        MarkerSet markers = MarkerSet.allAppn();
+        CountingFinder finder = new CountingFinder();
+        try (SegmentIndexCache cache = SegmentIndexCache.persistent(finder, 10, indexFile)) {
+            cache.findSegments(imageFile, markers);
+            cache.findSegments(otherFile, markers);
+        }
+        assertEquals("scans", 2, finder.scans.get());
+        finder = new CountingFinder();
+        try (SegmentIndexCache cache = SegmentIndexCache.persistent(finder, 1, indexFile)) {
+            assertEquals(new JpegSegmentFinder().findSegments(imageFile, markers), cache.findSegments(imageFile, markers));
+            assertEquals(new JpegSegmentFinder().findSegments(otherFile, markers), cache.findSegments(otherFile, markers));
+            assertEquals(new JpegSegmentFinder().findSegments(imageFile, markers), cache.findSegments(imageFile, markers));
+            assertEquals("scans after reopen", 0, finder.scans.get());
+            Files.copy(otherFile, imageFile, StandardCopyOption.REPLACE_EXISTING);
+            assertEquals(new JpegSegmentFinder().findSegments(otherFile, markers), cache.findSegments(imageFile, markers));
+            assertEquals("scans after replacement", 1, finder.scans.get());
+        }
+        finder = new CountingFinder();
+        try (SegmentIndexCache cache = SegmentIndexCache.persistent(finder, 10, indexFile)) {
+            assertEquals(new JpegSegmentFinder().findSegments(otherFile, markers), cache.findSegments(imageFile, markers));
+            assertEquals("scans after second reopen", 0, finder.scans.get());
+        }
+    }
+
+    @Test
+    public void persistentAfterIncompleteRecord() throws Exception {
+        Path imageFile = copyResource("/image-with-iptc-caption.jpg");
+        Path otherFile = copyResource("/image-with-exif.jpg");
+        Path indexFile = temporaryFolder.getRoot().toPath().resolve("segments.idx");
+        MarkerSet markers = MarkerSet.allAppn();
+        try (SegmentIndexCache cache = SegmentIndexCache.persistent(new JpegSegmentFinder(), 10, indexFile)) {
+            cache.findSegments(imageFile, markers);
+        }
+        // a record cut short by a crash: its length fits once another record is appended
+        ByteBuffer partial = ByteBuffer.allocate(14);
+        partial.putInt(20);
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ((Buffer) partial).flip();
+            channel.write(partial);
+        }
+        try (SegmentIndexCache cache = SegmentIndexCache.persistent(new JpegSegmentFinder(), 10, indexFile)) {
+            cache.findSegments(otherFile, markers);
+        }
+        CountingFinder finder = new CountingFinder();
+        try (SegmentIndexCache cache = SegmentIndexCache.persistent(finder, 10, indexFile)) {
+            assertEquals(new JpegSegmentFinder().findSegments(imageFile, markers), cache.findSegments(imageFile, markers));
+            assertEquals(new JpegSegmentFinder().findSegments(otherFile, markers), cache.findSegments(otherFile, markers));
+            assertEquals("scans after reopen", 0, finder.scans.get());
+        }
+    }
+
+    @Test
+    public void persistentManyEntriesWithCompaction() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            Path file = dir.toPath().resolve(i + ".jpg");
+            int contentLength = i % 50;
+            byte[] jpeg = new byte[6 + contentLength + 4];
+            System.arraycopy(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE1, 0, (byte) (2 + contentLength)}, 0, jpeg, 0, 6);
+            System.arraycopy(new byte[]{(byte) 0xFF, (byte) 0xDA, 0, 2}, 0, jpeg, 6 + contentLength, 4);
+            Files.write(file, jpeg);
+            files.add(file);
+        }
+        Path indexFile = temporaryFolder.getRoot().toPath().resolve("segments.idx");
+        Path tableFile = indexFile.resolveSibling("segments.idx.slots");
+        MarkerSet markers = MarkerSet.all();
+        int chunkSize = 64; // small enough that records and slots straddle chunks
+        try (SegmentIndexCache cache = new SegmentIndexCache(new JpegSegmentFinder(), 10, indexFile, false, chunkSize)) {
+            for (Path file : files) {
+                cache.findSegments(file, markers);
+            }
+        }
+        CountingFinder finder = new CountingFinder();
+        try (SegmentIndexCache cache = new SegmentIndexCache(finder, 10, indexFile, false, chunkSize)) {
+            for (Path file : files) {
+                assertEquals(new JpegSegmentFinder().findSegments(file, markers), cache.findSegments(file, markers));
+            }
+            assertEquals("scans after reopen", 0, finder.scans.get());
+            for (Path file : files) {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - 60000));
+                cache.findSegments(file, markers);
+            }
+            assertEquals("scans after modification", files.size(), finder.scans.get());
+            long uncompacted = Files.size(indexFile);
+            cache.compact();
+            assertTrue("compacted size", Files.size(indexFile) < uncompacted * 2 / 3);
+        }
+        Files.delete(tableFile);
+        finder = new CountingFinder();
+        try (SegmentIndexCache cache = new SegmentIndexCache(finder, 10, indexFile, false, chunkSize)) {
+            for (Path file : files) {
+                assertEquals(new JpegSegmentFinder().findSegments(file, markers), cache.findSegments(file, markers));
+            }
+            assertEquals("scans after rebuilding table", 0, finder.scans.get());
+        }
+    }
+
+    private Path copyResource(String resourcePath) throws Exception {
+        File source = new File(getClass().getResource(resourcePath).toURI());
+        File target = temporaryFolder.newFile();
+        Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return target.toPath();
+    }
+
+    private static class CountingFinder extends JpegSegmentFinder {
+
+        public final AtomicInteger scans = new AtomicInteger();
+
+        @Override
+        public List<JpegSegmentSpec> findSegments(Path jpegFile, MarkerSet segmentMarkers) throws JpegSegmentFinderException, IOException {
+            scans.incrementAndGet();
+            return super.findSegments(jpegFile, segmentMarkers);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.mike10004.jpegsegmentfinder;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkState;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SegmentTableTest {
+
+    @Test
+    public void visitAndSerialize() throws Exception {
+        File file = new File(getClass().getResource("/image-with-iptc-caption.jpg").toURI());
+        MarkerSet markers = MarkerSet.all();
+        List<JpegSegmentSpec> expected = new JpegSegmentFinder().findSegments(file.toPath(), markers);
+        checkState(expected.size() > 2);
+        SegmentTable.Builder builder = SegmentTable.builder();
+        try (InputStream in = new FileInputStream(file)) {
+            new JpegSegmentFinder().visitSegments(in, markers, builder);
+        }
+        SegmentTable table = builder.build();
+        assertEquals(expected, table.asList());
+        assertEquals(SegmentTable.of(expected), table);
+        for (int i = 0; i < table.size(); i++) {
+            assertEquals(expected.get(i).contentOffset, table.contentOffset(i));
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(table.serializedSize() + 3);
+        buffer.put((byte) 7);
+        table.writeTo(buffer);
+        assertEquals(1 + table.serializedSize(), buffer.position());
+        assertTrue("size " + table.serializedSize(), table.serializedSize() < 8 * table.size());
+        buffer.flip();
+        buffer.get();
+        assertEquals(table, SegmentTable.readFrom(buffer));
+        assertEquals(1 + table.serializedSize(), buffer.position());
+    }
+
+    @Test
+    public void roundTripUnusualValues() {
+        SegmentTable table = SegmentTable.of(Arrays.asList(
+                new JpegSegmentSpec((byte) 0xE1, 1L << 40, (1L << 40) + 4, 0),
+                new JpegSegmentSpec((byte) 0xDA, 10, 14, Long.MAX_VALUE - 14),
+                new JpegSegmentSpec((byte) 0xD9, 5, 7, 0)));
+        ByteBuffer buffer = ByteBuffer.allocate(table.serializedSize());
+        table.writeTo(buffer);
+        buffer.flip();
+        assertEquals(table.asList(), SegmentTable.readFrom(buffer).asList());
+        assertEquals(SegmentTable.empty(), SegmentTable.readFrom(serialize(SegmentTable.empty())));
+        ByteBuffer corrupt = serialize(table);
+        corrupt.put(0, (byte) 9);
+        try {
+            SegmentTable.readFrom(corrupt);
+            fail("should have thrown");
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+
+    private static ByteBuffer serialize(SegmentTable table) {
+        ByteBuffer buffer = ByteBuffer.allocate(table.serializedSize());
+        table.writeTo(buffer);
+        buffer.flip();
+        return buffer;
+    }
+}